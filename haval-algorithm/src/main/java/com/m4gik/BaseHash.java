@@ -1,11 +1,28 @@
 package com.m4gik;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
 /**
  * A base abstract class to facilitate hash implementations.
  * 
  * @author Michał Szczygieł <michal.szczygiel@wp.pl>
  */
 public abstract class BaseHash implements IMessageDigest {
+    /**
+     * The default size in bytes of a window mapped when hashing a file. Java
+     * cannot unmap a window explicitly: a window which was hashed is released
+     * only once the garbage collector reclaims it. Hashing a 50 GB file thus
+     * leaves up to 800 windows, and their address space, mapped until the
+     * next collection. This is harmless in a 64-bit process, but a much
+     * smaller window multiplies the mappings, which the operating system may
+     * limit.
+     */
+    public static final int DEFAULT_MAPPING_WINDOW = 64 * 1024 * 1024;
+
     /** The hash (inner) block size in bytes. */
     protected int blockSize;
 
@@ -15,6 +32,9 @@ public abstract class BaseHash implements IMessageDigest {
     /** Number of bytes processed so far. */
     protected long count;
 
+    /** The instrumentation counters of this instance, resolved lazily. */
+    HashMetrics.Counters counters;
+
     /** The hash (output) size in bytes. */
     protected int hashSize;
 
@@ -45,6 +65,20 @@ public abstract class BaseHash implements IMessageDigest {
         resetContext();
     }
 
+    /**
+     * Returns the number of blocks transformed to digest a message of the
+     * given length, padding included, as reported by {@link HashMetrics}.
+     * This implementation assumes the padding fits in one block; subclasses
+     * should override it when it may take more.
+     * 
+     * @param bytes
+     *            the number of bytes of the message.
+     * @return the number of blocks transformed.
+     */
+    protected long blockCount(long bytes) {
+        return bytes / blockSize + 1;
+    }
+
     public int blockSize() {
         return blockSize;
     }
@@ -83,13 +117,52 @@ public abstract class BaseHash implements IMessageDigest {
     public abstract Object clone();
 
     public byte[] digest() {
-        byte[] tail = padBuffer(); // pad remaining bytes in buffer
-        update(tail, 0, tail.length); // last transform of a message
-        byte[] result = getResult(); // make a result out of context
+        byte[] result = new byte[hashSize];
+        digest(result, 0);
+
+        return result;
+    }
+
+    public int digest(byte[] out, int offset) {
+        if (out == null || offset < 0 || offset > out.length - hashSize) {
+            throw new IllegalArgumentException(
+                    "out cannot hold the digest at the given offset");
+        }
+
+        if (HashMetrics.enabled) {
+            return digestInstrumented(out, offset);
+        }
+
+        padInBuffer(); // pad remaining bytes and make the last transform
+        getResult(out, offset); // make a result out of context
 
         reset(); // reset this instance for future re-use
 
-        return result;
+        return hashSize;
+    }
+
+    /**
+     * Completes the hash operation like {@link #digest(byte[], int)}, and
+     * records it with {@link HashMetrics}. It is kept apart so that the
+     * uninstrumented path stays as small as it was.
+     * 
+     * @param out
+     *            the array which receives the digest.
+     * @param offset
+     *            the index in <code>out</code> of the first byte of the digest.
+     * @return the number of bytes written.
+     */
+    private int digestInstrumented(byte[] out, int offset) {
+        long bytes = count;
+        Object event = HashMetrics.begin();
+
+        padInBuffer();
+        getResult(out, offset);
+        HashMetrics.record(this, event, bytes, blockCount(bytes));
+
+        reset();
+
+        return hashSize;
     }
 
     /**
@@ -99,6 +172,32 @@ public abstract class BaseHash implements IMessageDigest {
      */
     protected abstract byte[] getResult();
 
+    /**
+     * Writes the result constructed from the contents of the current context
+     * into the given array. This implementation copies the array returned by
+     * {@link #getResult()}; subclasses should override it to write the result
+     * without allocating.
+     * 
+     * @param out
+     *            the array which receives the result.
+     * @param offset
+     *            the index in <code>out</code> of the first byte of the result.
+     */
+    protected void getResult(byte[] out, int offset) {
+        System.arraycopy(getResult(), 0, out, offset, hashSize);
+    }
+
+    /**
+     * Returns the number of rounds of the transform, as reported by
+     * {@link HashMetrics}. This implementation returns <code>0</code>, for
+     * hashes whose number of rounds is not a parameter.
+     * 
+     * @return the number of rounds, or <code>0</code>.
+     */
+    protected int getRounds() {
+        return 0;
+    }
+
     public int hashSize() {
         checkHashSize(hashSize);
         return hashSize;
@@ -118,6 +217,17 @@ public abstract class BaseHash implements IMessageDigest {
      */
     protected abstract byte[] padBuffer();
 
+    /**
+     * Pads the remaining bytes in the buffer and transforms the last block(s)
+     * of the message. This implementation processes the array returned by
+     * {@link #padBuffer()}; subclasses should override it to write the
+     * padding straight into the buffer.
+     */
+    protected void padInBuffer() {
+        byte[] tail = padBuffer(); // pad remaining bytes in buffer
+        update(tail, 0, tail.length); // last transform of a message
+    }
+
     public void reset() { // reset this instance for future re-use
         count = 0L;
         for (int i = 0; i < blockSize;) {
@@ -142,6 +252,27 @@ public abstract class BaseHash implements IMessageDigest {
      */
     protected abstract void transform(byte[] in, int offset);
 
+    /**
+     * The block digest transformation of a block held in a buffer. The
+     * position of the buffer is not changed. This implementation copies the
+     * block into the internal buffer, which is empty whenever a whole block is
+     * transformed from the input, and transforms it from there; subclasses
+     * should override it to read the block in place.
+     * 
+     * @param in
+     *            the buffer holding the <i>blockSize</i> long block to digest.
+     * @param offset
+     *            the absolute index where the block is located within the
+     *            buffer.
+     */
+    protected void transform(ByteBuffer in, int offset) {
+        for (int i = 0; i < blockSize; i++) {
+            buffer[i] = in.get(offset + i);
+        }
+
+        transform(buffer, 0);
+    }
+
     public void update(byte b) {
         // compute number of bytes still unhashed; ie. present in buffer
         int i = (int) (count % blockSize);
@@ -176,4 +307,93 @@ public abstract class BaseHash implements IMessageDigest {
             System.arraycopy(b, offset + i, buffer, n, len - i);
         }
     }
+
+    public void update(ByteBuffer b) {
+        if (b.hasArray()) {
+            int len = b.remaining();
+            update(b.array(), b.arrayOffset() + b.position(), len);
+            b.position(b.position() + len);
+            return;
+        }
+
+        int n = (int) (count % blockSize);
+        int len = b.remaining();
+        count += len;
+
+        if (n > 0) {
+            int partLen = Math.min(blockSize - n, len);
+            b.get(buffer, n, partLen);
+            len -= partLen;
+            if (n + partLen < blockSize) {
+                return;
+            }
+
+            transform(buffer, 0);
+        }
+
+        int position = b.position();
+        for (; len >= blockSize; len -= blockSize) {
+            transform(b, position);
+            position += blockSize;
+        }
+
+        b.position(position);
+        b.get(buffer, 0, len);
+    }
+
+    /**
+     * Continues a message digest operation with the content of the given file
+     * channel, from its current position to its end, using mapping windows of
+     * {@link #DEFAULT_MAPPING_WINDOW} bytes.
+     * 
+     * @param channel
+     *            the channel of the file to digest.
+     * @throws IOException
+     *             if the file cannot be mapped.
+     * @see #update(FileChannel, int)
+     */
+    public void update(FileChannel channel) throws IOException {
+        update(channel, DEFAULT_MAPPING_WINDOW);
+    }
+
+    /**
+     * Continues a message digest operation with the content of the given file
+     * channel, from its current position to its end. The file is mapped into
+     * memory one window at a time and every window is read in place and only
+     * once, from its beginning to its end, so that the operating system sees
+     * a purely sequential access and may read ahead; the heap usage does not
+     * depend on the size of the file. A window size which is a multiple of the
+     * block size keeps all block transforms inside the mapping. No reference
+     * to a window is kept once it was hashed, but it stays mapped until it is
+     * garbage collected, as explained at {@link #DEFAULT_MAPPING_WINDOW}. The
+     * position of the channel is moved to its end.
+     * 
+     * @param channel
+     *            the channel of the file to digest.
+     * @param windowSize
+     *            the number of bytes mapped at once.
+     * @throws IOException
+     *             if the file cannot be mapped.
+     * @throws IllegalArgumentException
+     *             if the window size is not positive.
+     */
+    public void update(FileChannel channel, int windowSize) throws IOException {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException(
+                    "windowSize cannot less or equal to zero");
+        }
+
+        long position = channel.position();
+        long size = channel.size();
+        while (position < size) {
+            long length = Math.min(windowSize, size - position);
+            MappedByteBuffer window = channel.map(
+                    FileChannel.MapMode.READ_ONLY, position, length);
+            window.order(ByteOrder.nativeOrder());
+            update(window);
+            position += length;
+        }
+
+        channel.position(position);
+    }
 }
\ No newline at end of file
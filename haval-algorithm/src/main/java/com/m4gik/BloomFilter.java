@@ -0,0 +1,544 @@
+package com.m4gik;
+
+import static com.m4gik.HavalAttributes.HAVAL_256_BIT;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter whose probe positions all come from a single 256-bit
+ * {@link Haval} digest of the key, with its bits kept in atomic arrays. It
+ * is meant for skipping lookups of keys which are certainly absent from a
+ * large store: {@link #mightContain(byte[])} never returns <code>false</code>
+ * for a key which was put, and returns <code>true</code> for a key which was
+ * not with about the false positive probability the filter was sized for.
+ * <p>
+ * The filter is sized from the expected number of keys <i>n</i> and the
+ * false positive probability <i>p</i>: it takes
+ * <i>m = -n ln p / (ln 2)<sup>2</sup></i> bits, rounded up to whole
+ * <code>long</code> words, and <i>k = m / n ln 2</i> probes per key. The
+ * <i>k</i> positions of a key are derived by enhanced double hashing from the
+ * first two 64-bit words of its digest, which are independent and uniformly
+ * distributed, so the key is hashed only once whatever <i>k</i> is. A filter
+ * for a billion keys at 1% takes about 9.6 billion bits, so positions are
+ * <code>long</code> values, and the words are kept in pages of
+ * {@link AtomicLongArray}s of at most 1 GB each.
+ * <p>
+ * Keys are added and tested concurrently without locks: a bit is set with a
+ * compare-and-swap of its word, and tested with a volatile read, so a key put
+ * by a thread is seen by every thread once {@link #put(byte[])} returned.
+ * Keys are hashed with an instance of the calling thread, reused from key to
+ * key, as are the arrays receiving the digests; the bulk methods amortize the
+ * remaining per-call work over a list of keys.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class BloomFilter {
+
+    /**
+     * The maximum number of bits of a filter: 2<sup>43</sup>, 1 TB.
+     */
+    public static final long MAX_BITS = 1L << 43;
+
+    /**
+     * The maximum number of probes per key.
+     */
+    private static final int MAX_HASHES = 64;
+
+    /**
+     * The binary logarithm of the number of words of a page, 1 GB.
+     */
+    private static final int PAGE_SHIFT = 27;
+
+    /**
+     * The arrays receiving the digests of the keys of every thread.
+     */
+    private static final ThreadLocal<byte[]> SCRATCH =
+            new ThreadLocal<byte[]>() {
+                @Override
+                protected byte[] initialValue() {
+                    return new byte[HAVAL_256_BIT];
+                }
+            };
+
+    /**
+     * This method checks that an array holds a 256-bit digest at an offset.
+     * 
+     * @param digest
+     *            the array to check.
+     * @param offset
+     *            the offset to check.
+     * @throws IllegalArgumentException
+     */
+    private static void checkDigest(byte[] digest, int offset)
+            throws IllegalArgumentException {
+        if (digest == null || offset < 0
+                || offset > digest.length - HAVAL_256_BIT) {
+            throw new IllegalArgumentException(
+                    "digest cannot be null and must hold 32 bytes at offset");
+        }
+    }
+
+    /**
+     * This method checks proper sizing parameters.
+     * 
+     * @param expectedInsertions
+     *            the number of keys to check.
+     * @param fpp
+     *            the false positive probability to check.
+     * @throws IllegalArgumentException
+     */
+    private static void checkSizing(long expectedInsertions, double fpp)
+            throws IllegalArgumentException {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException(
+                    "expectedInsertions cannot less or equal to zero");
+        }
+        if (!(fpp > 0.0 && fpp < 1.0)) {
+            throw new IllegalArgumentException(
+                    "fpp must be between zero and one exclusive");
+        }
+    }
+
+    /**
+     * Returns the number of bits of a filter sized for the designated number
+     * of keys and false positive probability.
+     * 
+     * @param expectedInsertions
+     *            the expected number of keys.
+     * @param fpp
+     *            the desired false positive probability.
+     * @return the number of bits, a multiple of 64.
+     * @throws IllegalArgumentException
+     *             if the parameters are invalid or the filter would take more
+     *             than {@link #MAX_BITS} bits.
+     */
+    static long optimalNumOfBits(long expectedInsertions, double fpp) {
+        checkSizing(expectedInsertions, fpp);
+        double bits = Math.ceil(-expectedInsertions * Math.log(fpp)
+                / (Math.log(2) * Math.log(2)));
+        if (bits > MAX_BITS) {
+            throw new IllegalArgumentException("too many bits");
+        }
+
+        return Math.max(64L, ((long) bits + 63L) & ~63L);
+    }
+
+    /**
+     * Returns the number of probes per key of a filter of the designated
+     * number of bits and keys.
+     * 
+     * @param expectedInsertions
+     *            the expected number of keys.
+     * @param bits
+     *            the number of bits of the filter.
+     * @return the number of probes, between 1 and 64.
+     */
+    static int optimalNumOfHashes(long expectedInsertions, long bits) {
+        long hashes = Math.round((double) bits / expectedInsertions
+                * Math.log(2));
+
+        return (int) Math.max(1L, Math.min(MAX_HASHES, hashes));
+    }
+
+    /**
+     * Reads a little-endian word of a digest.
+     * 
+     * @param digest
+     *            the digest.
+     * @param offset
+     *            the index of the first byte of the word.
+     * @return the word.
+     */
+    private static long word(byte[] digest, int offset) {
+        long word = 0L;
+        for (int i = 7; i >= 0; i--) {
+            word = word << 8 | digest[offset + i] & 0xFFL;
+        }
+
+        return word;
+    }
+
+    /**
+     * The number of bits.
+     */
+    private final long bits;
+
+    /**
+     * The number of probes per key.
+     */
+    private final int hashes;
+
+    /**
+     * The pages of words.
+     */
+    private final AtomicLongArray[] pages;
+
+    /**
+     * The number of rounds of the digests of the keys.
+     */
+    private final int rounds;
+
+    /**
+     * Constructs an empty filter for the designated number of keys and false
+     * positive probability, hashing the keys with 3 rounds.
+     * 
+     * @param expectedInsertions
+     *            the expected number of keys.
+     * @param fpp
+     *            the desired false positive probability once that many keys
+     *            were put.
+     * @throws IllegalArgumentException
+     *             if the number of keys is not positive, if the probability is
+     *             not between zero and one exclusive, or if the filter would
+     *             take more than {@link #MAX_BITS} bits.
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        this(expectedInsertions, fpp, HavalAttributes.HAVAL_3_ROUND);
+    }
+
+    /**
+     * Constructs an empty filter for the designated number of keys and false
+     * positive probability, hashing the keys with the designated number of
+     * rounds.
+     * 
+     * @param expectedInsertions
+     *            the expected number of keys.
+     * @param fpp
+     *            the desired false positive probability once that many keys
+     *            were put.
+     * @param rounds
+     *            the number of rounds to apply when hashing the keys.
+     * @throws IllegalArgumentException
+     *             if the number of keys is not positive, if the probability is
+     *             not between zero and one exclusive, if the filter would take
+     *             more than {@link #MAX_BITS} bits, or if the number of rounds
+     *             is invalid.
+     */
+    public BloomFilter(long expectedInsertions, double fpp, int rounds) {
+        Haval.checkParameters(HAVAL_256_BIT, rounds);
+        this.bits = optimalNumOfBits(expectedInsertions, fpp);
+        this.hashes = optimalNumOfHashes(expectedInsertions, bits);
+        this.rounds = rounds;
+
+        long words = bits >>> 6;
+        long pageWords = 1L << PAGE_SHIFT;
+        this.pages = new AtomicLongArray[(int) ((words + pageWords - 1)
+                >>> PAGE_SHIFT)];
+        for (int i = 0; i < pages.length; i++) {
+            long size = Math.min(pageWords, words - (long) i * pageWords);
+            pages[i] = new AtomicLongArray((int) size);
+        }
+    }
+
+    /**
+     * Returns the number of bits set. The bits are counted one word after the
+     * other, while other threads may be setting more.
+     * 
+     * @return the number of bits set.
+     */
+    public long cardinality() {
+        long count = 0L;
+        for (AtomicLongArray page : pages) {
+            for (int i = 0; i < page.length(); i++) {
+                count += Long.bitCount(page.get(i));
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Clears all the bits. Keys put by other threads meanwhile may be lost.
+     */
+    public void clear() {
+        for (AtomicLongArray page : pages) {
+            for (int i = 0; i < page.length(); i++) {
+                page.set(i, 0L);
+            }
+        }
+    }
+
+    /**
+     * Computes the 256-bit digest of a key with the instance of the calling
+     * thread.
+     * 
+     * @param key
+     *            the array holding the key.
+     * @param offset
+     *            the index of the first byte of the key.
+     * @param length
+     *            the number of bytes of the key.
+     * @return the array of the calling thread holding the digest.
+     */
+    private byte[] digest(byte[] key, int offset, int length) {
+        if (key == null || offset < 0 || length < 0
+                || offset > key.length - length) {
+            throw new IllegalArgumentException(
+                    "key cannot be null and must hold the designated bytes");
+        }
+
+        Haval haval = Haval.threadInstance(HAVAL_256_BIT, rounds);
+        haval.update(key, offset, length);
+        byte[] digest = SCRATCH.get();
+        haval.digest(digest, 0);
+
+        return digest;
+    }
+
+    /**
+     * Returns the probability that {@link #mightContain(byte[])} returns
+     * <code>true</code> for a key which was not put, given the bits set now.
+     * 
+     * @return the current false positive probability.
+     */
+    public double expectedFpp() {
+        return Math.pow((double) cardinality() / bits, hashes);
+    }
+
+    /**
+     * Returns the number of bits of this filter.
+     * 
+     * @return the number of bits.
+     */
+    public long getBitSize() {
+        return bits;
+    }
+
+    /**
+     * Returns the number of bits probed for every key.
+     * 
+     * @return the number of probes.
+     */
+    public int getHashCount() {
+        return hashes;
+    }
+
+    /**
+     * Returns the number of rounds of the digests of the keys.
+     * 
+     * @return the rounds
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Returns the index of the word holding a bit in its page.
+     * 
+     * @param bit
+     *            the index of the bit.
+     * @return the index of its word in {@link #page(long)}.
+     */
+    private static int index(long bit) {
+        return (int) ((bit >>> 6) & (1L << PAGE_SHIFT) - 1);
+    }
+
+    /**
+     * Returns whether a key might have been put in this filter.
+     * 
+     * @param key
+     *            the key.
+     * @return <code>false</code> if the key was certainly not put.
+     * @throws IllegalArgumentException
+     *             if the key is null.
+     */
+    public boolean mightContain(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key cannot be null");
+        }
+
+        return mightContainDigest(digest(key, 0, key.length), 0);
+    }
+
+    /**
+     * Returns whether a key, held in part of an array, might have been put in
+     * this filter.
+     * 
+     * @param key
+     *            the array holding the key.
+     * @param offset
+     *            the index of the first byte of the key.
+     * @param length
+     *            the number of bytes of the key.
+     * @return <code>false</code> if the key was certainly not put.
+     * @throws IllegalArgumentException
+     *             if the key is null or does not hold the designated bytes.
+     */
+    public boolean mightContain(byte[] key, int offset, int length) {
+        return mightContainDigest(digest(key, offset, length), 0);
+    }
+
+    /**
+     * Returns, for every key of a list, whether it might have been put in
+     * this filter.
+     * 
+     * @param keys
+     *            the keys.
+     * @return the results, in the same order as the keys.
+     * @throws IllegalArgumentException
+     *             if the list or any of its keys is null.
+     */
+    public boolean[] mightContainAll(List<byte[]> keys) {
+        if (keys == null) {
+            throw new IllegalArgumentException("keys cannot be null");
+        }
+
+        boolean[] result = new boolean[keys.size()];
+        int i = 0;
+        for (byte[] key : keys) {
+            if (key == null) {
+                throw new IllegalArgumentException("key cannot be null");
+            }
+            result[i++] = mightContainDigest(digest(key, 0, key.length), 0);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns whether a key might have been put in this filter, given its
+     * 256-bit {@link Haval} digest with the rounds of this filter, such as an
+     * output of {@link Haval#hashAll(List, int, int)}.
+     * 
+     * @param digest
+     *            the array holding the digest of the key.
+     * @param offset
+     *            the index of the first byte of the digest.
+     * @return <code>false</code> if the key was certainly not put.
+     * @throws IllegalArgumentException
+     *             if the array does not hold a 256-bit digest at the offset.
+     */
+    public boolean mightContainDigest(byte[] digest, int offset) {
+        checkDigest(digest, offset);
+        long h1 = word(digest, offset);
+        long h2 = word(digest, offset + 8);
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 & Long.MAX_VALUE) % bits;
+            long word = page(bit).get(index(bit));
+            if ((word & 1L << bit) == 0L) {
+                return false;
+            }
+            h1 += h2;
+            h2 += i;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the page of the word holding a bit.
+     * 
+     * @param bit
+     *            the index of the bit.
+     * @return the page of its word.
+     */
+    private AtomicLongArray page(long bit) {
+        return pages[(int) (bit >>> (6 + PAGE_SHIFT))];
+    }
+
+    /**
+     * Puts a key in this filter.
+     * 
+     * @param key
+     *            the key.
+     * @return <code>true</code> if a bit changed, so the key was certainly
+     *         not put before; <code>false</code> if it might have been.
+     * @throws IllegalArgumentException
+     *             if the key is null.
+     */
+    public boolean put(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key cannot be null");
+        }
+
+        return putDigest(digest(key, 0, key.length), 0);
+    }
+
+    /**
+     * Puts a key, held in part of an array, in this filter.
+     * 
+     * @param key
+     *            the array holding the key.
+     * @param offset
+     *            the index of the first byte of the key.
+     * @param length
+     *            the number of bytes of the key.
+     * @return <code>true</code> if a bit changed, so the key was certainly
+     *         not put before; <code>false</code> if it might have been.
+     * @throws IllegalArgumentException
+     *             if the key is null or does not hold the designated bytes.
+     */
+    public boolean put(byte[] key, int offset, int length) {
+        return putDigest(digest(key, offset, length), 0);
+    }
+
+    /**
+     * Puts every key of a list in this filter.
+     * 
+     * @param keys
+     *            the keys.
+     * @return the number of keys which changed a bit, so were certainly not
+     *         put before.
+     * @throws IllegalArgumentException
+     *             if the list or any of its keys is null; the keys before the
+     *             null one are put.
+     */
+    public int putAll(List<byte[]> keys) {
+        if (keys == null) {
+            throw new IllegalArgumentException("keys cannot be null");
+        }
+
+        int changed = 0;
+        for (byte[] key : keys) {
+            if (key == null) {
+                throw new IllegalArgumentException("key cannot be null");
+            }
+            if (putDigest(digest(key, 0, key.length), 0)) {
+                changed++;
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Puts a key in this filter, given its 256-bit {@link Haval} digest with
+     * the rounds of this filter, such as an output of
+     * {@link Haval#hashAll(List, int, int)}.
+     * 
+     * @param digest
+     *            the array holding the digest of the key.
+     * @param offset
+     *            the index of the first byte of the digest.
+     * @return <code>true</code> if a bit changed, so the key was certainly
+     *         not put before; <code>false</code> if it might have been.
+     * @throws IllegalArgumentException
+     *             if the array does not hold a 256-bit digest at the offset.
+     */
+    public boolean putDigest(byte[] digest, int offset) {
+        checkDigest(digest, offset);
+        long h1 = word(digest, offset);
+        long h2 = word(digest, offset + 8);
+        boolean changed = false;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 & Long.MAX_VALUE) % bits;
+            AtomicLongArray page = page(bit);
+            int index = index(bit);
+            long mask = 1L << bit;
+            long word;
+            do {
+                word = page.get(index);
+                if ((word & mask) != 0L) {
+                    break;
+                }
+            } while (!page.compareAndSet(index, word, word | mask));
+            changed |= (word & mask) == 0L;
+            h1 += h2;
+            h2 += i;
+        }
+
+        return changed;
+    }
+}
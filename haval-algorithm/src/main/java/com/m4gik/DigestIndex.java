@@ -0,0 +1,792 @@
+package com.m4gik;
+
+import static com.m4gik.HavalAttributes.HAVAL_128_BIT;
+import static com.m4gik.HavalAttributes.HAVAL_160_BIT;
+import static com.m4gik.HavalAttributes.HAVAL_192_BIT;
+import static com.m4gik.HavalAttributes.HAVAL_224_BIT;
+import static com.m4gik.HavalAttributes.HAVAL_256_BIT;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A map from {@link Haval} digests of one output size to <code>long</code>
+ * values, kept outside of the heap. It is meant for deduplicating a large
+ * number of objects by their fingerprints: an entry takes the digest rounded
+ * up to whole <code>long</code> words plus the value, 24 bytes for a 128-bit
+ * digest, in slots of direct buffers which the garbage collector never scans.
+ * <p>
+ * The slots form an open-addressing table with linear probing, indexed by the
+ * leading bytes of the digest, which are already uniformly distributed. The
+ * table doubles once it is three quarters full, and is split into pages of at
+ * most 1 GB so it can outgrow the limit of a single buffer. A slot whose
+ * digest words are all zero is empty, so the all-zero digest is kept aside in
+ * a field. Removed entries are filled by shifting back the entries which
+ * follow them, without tombstones.
+ * <p>
+ * Digests are taken as arrays with an offset, so the output of
+ * {@link Haval#digest()}, of {@link Haval#digest(byte[], int)} or of
+ * {@link Haval#hashAll(java.util.List, int, int)} is used as it is. Writes are
+ * serialized, while reads run concurrently with each other and with writes:
+ * they read optimistically and only take the read lock when a write got in
+ * their way. The memory of the buffers is released by the garbage collector
+ * once the table outgrows them.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class DigestIndex {
+
+    /**
+     * The initial number of slots of an index.
+     */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The maximum number of bytes of a page.
+     */
+    private static final int MAX_PAGE_BYTES = 1 << 30;
+
+    /**
+     * Returns the number of slots for the designated number of entries.
+     * 
+     * @param entries
+     *            the number of entries.
+     * @return the smallest power of two which holds the entries within the
+     *         maximum load, and at least {@link #DEFAULT_CAPACITY}.
+     */
+    private static long capacityFor(long entries) {
+        long slots = Math.max(DEFAULT_CAPACITY, entries + entries / 3 + 1);
+        if (slots > 1L << 40) {
+            throw new IllegalArgumentException("too many entries");
+        }
+
+        return Long.highestOneBit(slots - 1) << 1;
+    }
+
+    /**
+     * This method checks proper digest size.
+     * 
+     * @param size
+     *            the size to check.
+     * @throws IllegalArgumentException
+     */
+    private static void checkDigestSize(int size)
+            throws IllegalArgumentException {
+        if (size != HAVAL_128_BIT && size != HAVAL_160_BIT
+                && size != HAVAL_192_BIT && size != HAVAL_224_BIT
+                && size != HAVAL_256_BIT) {
+            throw new IllegalArgumentException("Invalid HAVAL output size");
+        }
+    }
+
+    /**
+     * Returns the home slot of a digest, from its first word.
+     * 
+     * @param word
+     *            the first word of the digest.
+     * @param mask
+     *            the number of slots of the table minus one.
+     * @return the slot where the probing for the digest starts.
+     */
+    private static long home(long word, long mask) {
+        long h = word * 0x9E3779B97F4A7C15L;
+
+        return (h ^ h >>> 32) & mask;
+    }
+
+    /**
+     * The number of bytes of a digest.
+     */
+    private final int digestSize;
+
+    /**
+     * Whether the all-zero digest is in this index.
+     */
+    private boolean hasZeroKey;
+
+    /**
+     * The lock which serializes writes and validates optimistic reads.
+     */
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * The number of entries.
+     */
+    private volatile long size;
+
+    /**
+     * The slots of the entries, except the all-zero digest.
+     */
+    private Table table;
+
+    /**
+     * The number of words of the digest in a slot.
+     */
+    private final int words;
+
+    /**
+     * The value of the all-zero digest.
+     */
+    private long zeroValue;
+
+    /**
+     * Constructs an empty index of digests of the designated size.
+     * 
+     * @param digestSize
+     *            the output size in bytes of the digests.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid.
+     */
+    public DigestIndex(int digestSize) {
+        this(digestSize, 0L);
+    }
+
+    /**
+     * Constructs an empty index of digests of the designated size, which holds
+     * the designated number of entries without growing.
+     * 
+     * @param digestSize
+     *            the output size in bytes of the digests.
+     * @param expectedEntries
+     *            the number of entries expected.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid, or if the
+     *             number of entries is negative or too large.
+     */
+    public DigestIndex(int digestSize, long expectedEntries) {
+        checkDigestSize(digestSize);
+        if (expectedEntries < 0) {
+            throw new IllegalArgumentException(
+                    "expectedEntries cannot be negative");
+        }
+
+        this.digestSize = digestSize;
+        this.words = (digestSize + 7) / 8;
+        this.table = new Table(capacityFor(expectedEntries), words);
+    }
+
+    /**
+     * Checks that a digest of the size of this index lies in the given array
+     * at the given offset.
+     * 
+     * @param digest
+     *            the array of the digest.
+     * @param offset
+     *            the index of the first byte of the digest.
+     * @throws IllegalArgumentException
+     *             if the digest does not lie within the array.
+     */
+    private void checkDigest(byte[] digest, int offset) {
+        if (digest == null || offset < 0
+                || offset > digest.length - digestSize) {
+            throw new IllegalArgumentException(
+                    "digest does not hold a digest at the given offset");
+        }
+    }
+
+    /**
+     * Checks that the given array is a digest of the size of this index.
+     * 
+     * @param digest
+     *            the array to check.
+     * @throws IllegalArgumentException
+     *             if the array is null or of another length.
+     */
+    private void checkLength(byte[] digest) {
+        if (digest == null || digest.length != digestSize) {
+            throw new IllegalArgumentException("digest must be of "
+                    + digestSize + " bytes");
+        }
+    }
+
+    /**
+     * Removes all entries and shrinks the table back to its smallest size.
+     */
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            table = new Table(DEFAULT_CAPACITY, words);
+            hasZeroKey = false;
+            size = 0L;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns whether the given digest is in this index.
+     * 
+     * @param digest
+     *            the digest, exactly of the size of this index.
+     * @return <code>true</code> if the digest is in this index.
+     * @throws IllegalArgumentException
+     *             if the digest is null or of another size.
+     */
+    public boolean contains(byte[] digest) {
+        checkLength(digest);
+
+        return contains(digest, 0);
+    }
+
+    /**
+     * Returns whether the digest found in the given array at the given offset
+     * is in this index.
+     * 
+     * @param digest
+     *            the array of the digest.
+     * @param offset
+     *            the index of the first byte of the digest.
+     * @return <code>true</code> if the digest is in this index.
+     * @throws IllegalArgumentException
+     *             if the digest does not lie within the array.
+     */
+    public boolean contains(byte[] digest, int offset) {
+        checkDigest(digest, offset);
+
+        long stamp = lock.tryOptimisticRead();
+        boolean found = find(table, digest, offset) != Table.ABSENT;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                found = find(table, digest, offset) != Table.ABSENT;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Returns the slot of a digest.
+     * 
+     * @param t
+     *            the table to search.
+     * @param digest
+     *            the array of the digest.
+     * @param offset
+     *            the index of the first byte of the digest.
+     * @return the slot of the digest, {@link Table#ZERO} for the all-zero
+     *         digest if present, or {@link Table#ABSENT}.
+     */
+    private long find(Table t, byte[] digest, int offset) {
+        long first = word(digest, offset, 0);
+        if (first == 0L && isZero(digest, offset)) {
+            return hasZeroKey ? Table.ZERO : Table.ABSENT;
+        }
+
+        long slot = home(first, t.mask);
+        for (long probes = 0; probes <= t.mask; probes++) {
+            long stored = t.word(slot, 0);
+            if (stored == first && t.matches(slot, digest, offset, this)) {
+                return slot;
+            }
+            if (stored == 0L && t.isEmpty(slot)) {
+                break;
+            }
+            slot = (slot + 1) & t.mask;
+        }
+
+        return Table.ABSENT;
+    }
+
+    /**
+     * Returns the value of the given digest.
+     * 
+     * @param digest
+     *            the digest, exactly of the size of this index.
+     * @param missingValue
+     *            the value returned if the digest is not in this index.
+     * @return the value of the digest, or <code>missingValue</code>.
+     * @throws IllegalArgumentException
+     *             if the digest is null or of another size.
+     */
+    public long get(byte[] digest, long missingValue) {
+        checkLength(digest);
+
+        return get(digest, 0, missingValue);
+    }
+
+    /**
+     * Returns the value of the digest found in the given array at the given
+     * offset.
+     * 
+     * @param digest
+     *            the array of the digest.
+     * @param offset
+     *            the index of the first byte of the digest.
+     * @param missingValue
+     *            the value returned if the digest is not in this index.
+     * @return the value of the digest, or <code>missingValue</code>.
+     * @throws IllegalArgumentException
+     *             if the digest does not lie within the array.
+     */
+    public long get(byte[] digest, int offset, long missingValue) {
+        checkDigest(digest, offset);
+
+        long stamp = lock.tryOptimisticRead();
+        long value = read(digest, offset, missingValue);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                value = read(digest, offset, missingValue);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Returns the number of slots of the table.
+     * 
+     * @return the capacity of this index.
+     */
+    public long getCapacity() {
+        long stamp = lock.readLock();
+        try {
+            return table.mask + 1;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the output size of the digests.
+     * 
+     * @return the output size in bytes.
+     */
+    public int getDigestSize() {
+        return digestSize;
+    }
+
+    /**
+     * Returns the number of entries.
+     * 
+     * @return the number of digests in this index.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes taken by the table outside of the heap.
+     * 
+     * @return the memory usage in bytes.
+     */
+    public long getUsedBytes() {
+        long stamp = lock.readLock();
+        try {
+            return (table.mask + 1) * table.stride;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Doubles the number of slots and moves every entry to its slot in the
+     * new table.
+     */
+    private void grow() {
+        Table old = table;
+        Table grown = new Table(2 * (old.mask + 1), words);
+        for (long slot = 0; slot <= old.mask; slot++) {
+            if (!old.isEmpty(slot)) {
+                long target = home(old.word(slot, 0), grown.mask);
+                while (!grown.isEmpty(target)) {
+                    target = (target + 1) & grown.mask;
+                }
+                grown.copy(target, old, slot);
+            }
+        }
+
+        table = grown;
+    }
+
+    /**
+     * Returns whether a digest is all zero.
+     * 
+     * @param digest
+     *            the array of the digest.
+     * @param offset
+     *            the index of the first byte of the digest.
+     * @return <code>true</code> if every byte of the digest is zero.
+     */
+    private boolean isZero(byte[] digest, int offset) {
+        for (int i = offset; i < offset + digestSize; i++) {
+            if (digest[i] != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Maps the given digest to the given value, replacing any previous value.
+     * 
+     * @param digest
+     *            the digest, exactly of the size of this index.
+     * @param value
+     *            the value of the digest.
+     * @return <code>true</code> if the digest was not in this index.
+     * @throws IllegalArgumentException
+     *             if the digest is null or of another size.
+     */
+    public boolean put(byte[] digest, long value) {
+        checkLength(digest);
+
+        return put(digest, 0, value);
+    }
+
+    /**
+     * Maps the digest found in the given array at the given offset to the
+     * given value, replacing any previous value.
+     * 
+     * @param digest
+     *            the array of the digest.
+     * @param offset
+     *            the index of the first byte of the digest.
+     * @param value
+     *            the value of the digest.
+     * @return <code>true</code> if the digest was not in this index.
+     * @throws IllegalArgumentException
+     *             if the digest does not lie within the array.
+     */
+    public boolean put(byte[] digest, int offset, long value) {
+        return write(digest, offset, value, true);
+    }
+
+    /**
+     * Maps the given digest to the given value, unless the digest is already
+     * in this index.
+     * 
+     * @param digest
+     *            the digest, exactly of the size of this index.
+     * @param value
+     *            the value of the digest.
+     * @return <code>true</code> if the digest was not in this index, and so
+     *         was added.
+     * @throws IllegalArgumentException
+     *             if the digest is null or of another size.
+     */
+    public boolean putIfAbsent(byte[] digest, long value) {
+        checkLength(digest);
+
+        return putIfAbsent(digest, 0, value);
+    }
+
+    /**
+     * Maps the digest found in the given array at the given offset to the
+     * given value, unless the digest is already in this index.
+     * 
+     * @param digest
+     *            the array of the digest.
+     * @param offset
+     *            the index of the first byte of the digest.
+     * @param value
+     *            the value of the digest.
+     * @return <code>true</code> if the digest was not in this index, and so
+     *         was added.
+     * @throws IllegalArgumentException
+     *             if the digest does not lie within the array.
+     */
+    public boolean putIfAbsent(byte[] digest, int offset, long value) {
+        return write(digest, offset, value, false);
+    }
+
+    /**
+     * Returns the value of a digest, without any locking.
+     * 
+     * @param digest
+     *            the array of the digest.
+     * @param offset
+     *            the index of the first byte of the digest.
+     * @param missingValue
+     *            the value returned if the digest is not in this index.
+     * @return the value of the digest, or <code>missingValue</code>.
+     */
+    private long read(byte[] digest, int offset, long missingValue) {
+        Table t = table;
+        long slot = find(t, digest, offset);
+        if (slot == Table.ZERO) {
+            return zeroValue;
+        }
+
+        return slot == Table.ABSENT ? missingValue : t.word(slot, words);
+    }
+
+    /**
+     * Removes the given digest from this index.
+     * 
+     * @param digest
+     *            the digest, exactly of the size of this index.
+     * @return <code>true</code> if the digest was in this index.
+     * @throws IllegalArgumentException
+     *             if the digest is null or of another size.
+     */
+    public boolean remove(byte[] digest) {
+        checkLength(digest);
+
+        return remove(digest, 0);
+    }
+
+    /**
+     * Removes the digest found in the given array at the given offset from
+     * this index. The entries which follow it in the table are shifted back,
+     * so that no probing stops short of them.
+     * 
+     * @param digest
+     *            the array of the digest.
+     * @param offset
+     *            the index of the first byte of the digest.
+     * @return <code>true</code> if the digest was in this index.
+     * @throws IllegalArgumentException
+     *             if the digest does not lie within the array.
+     */
+    public boolean remove(byte[] digest, int offset) {
+        checkDigest(digest, offset);
+
+        long stamp = lock.writeLock();
+        try {
+            long slot = find(table, digest, offset);
+            if (slot == Table.ABSENT) {
+                return false;
+            }
+            if (slot == Table.ZERO) {
+                hasZeroKey = false;
+            } else {
+                shiftBack(slot);
+            }
+            size--;
+
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Empties a slot and moves back the entries of the same probe sequences
+     * which follow it.
+     * 
+     * @param slot
+     *            the slot to empty.
+     */
+    private void shiftBack(long slot) {
+        Table t = table;
+        long last = slot;
+        long next = (slot + 1) & t.mask;
+        while (!t.isEmpty(next)) {
+            long home = home(t.word(next, 0), t.mask);
+            if (last <= next ? last >= home || home > next : last >= home
+                    && home > next) {
+                t.copy(last, t, next);
+                last = next;
+            }
+            next = (next + 1) & t.mask;
+        }
+
+        t.clear(last);
+    }
+
+    /**
+     * Returns a word of a digest: eight of its bytes, big-endian, completed
+     * with zero bytes past the end of the digest.
+     * 
+     * @param digest
+     *            the array of the digest.
+     * @param offset
+     *            the index of the first byte of the digest.
+     * @param index
+     *            the index of the word.
+     * @return the word.
+     */
+    private long word(byte[] digest, int offset, int index) {
+        int start = offset + 8 * index;
+        int end = Math.min(start + 8, offset + digestSize);
+        long word = 0L;
+        for (int i = start; i < end; i++) {
+            word = word << 8 | (digest[i] & 0xFFL);
+        }
+
+        return word << 8 * (start + 8 - end);
+    }
+
+    /**
+     * Adds or replaces an entry.
+     * 
+     * @param digest
+     *            the array of the digest.
+     * @param offset
+     *            the index of the first byte of the digest.
+     * @param value
+     *            the value of the digest.
+     * @param replace
+     *            whether the value of a digest already present is replaced.
+     * @return <code>true</code> if the digest was not in this index.
+     */
+    private boolean write(byte[] digest, int offset, long value,
+            boolean replace) {
+        checkDigest(digest, offset);
+
+        long stamp = lock.writeLock();
+        try {
+            long slot = find(table, digest, offset);
+            if (slot == Table.ZERO) {
+                if (replace) {
+                    zeroValue = value;
+                }
+                return false;
+            }
+            if (slot != Table.ABSENT) {
+                if (replace) {
+                    table.putWord(slot, words, value);
+                }
+                return false;
+            }
+
+            long first = word(digest, offset, 0);
+            if (first == 0L && isZero(digest, offset)) {
+                hasZeroKey = true;
+                zeroValue = value;
+            } else {
+                if (size - (hasZeroKey ? 1 : 0) >= table.maxFill) {
+                    grow();
+                }
+
+                Table t = table;
+                slot = home(first, t.mask);
+                while (!t.isEmpty(slot)) {
+                    slot = (slot + 1) & t.mask;
+                }
+                t.putWord(slot, words, value);
+                for (int i = words - 1; i >= 0; i--) {
+                    t.putWord(slot, i, word(digest, offset, i));
+                }
+            }
+            size++;
+
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * The slots of an index, in pages of direct buffers. A slot holds the
+     * words of a digest followed by its value; a slot whose digest words are
+     * all zero is empty.
+     */
+    private static final class Table {
+
+        /**
+         * The slot returned for a digest which is not in the index.
+         */
+        private static final long ABSENT = -1L;
+
+        /**
+         * The slot returned for the all-zero digest, kept outside of the
+         * table.
+         */
+        private static final long ZERO = -2L;
+
+        /**
+         * The number of slots of the table minus one.
+         */
+        private final long mask;
+
+        /**
+         * The number of entries above which the table grows.
+         */
+        private final long maxFill;
+
+        /**
+         * The number of slots of a page minus one.
+         */
+        private final long pageMask;
+
+        /**
+         * The pages of slots.
+         */
+        private final ByteBuffer[] pages;
+
+        /**
+         * The base 2 logarithm of the number of slots of a page.
+         */
+        private final int pageShift;
+
+        /**
+         * The number of bytes of a slot.
+         */
+        private final int stride;
+
+        /**
+         * The number of words of the digest in a slot.
+         */
+        private final int words;
+
+        private Table(long capacity, int words) {
+            this.words = words;
+            this.stride = 8 * (words + 1);
+            this.mask = capacity - 1;
+            this.maxFill = capacity - capacity / 4;
+
+            long pageSlots = Math.min(capacity,
+                    Integer.highestOneBit(MAX_PAGE_BYTES / stride));
+            this.pageShift = Long.numberOfTrailingZeros(pageSlots);
+            this.pageMask = pageSlots - 1;
+            this.pages = new ByteBuffer[(int) (capacity / pageSlots)];
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = ByteBuffer.allocateDirect((int) pageSlots * stride)
+                        .order(ByteOrder.nativeOrder());
+            }
+        }
+
+        private void clear(long slot) {
+            for (int i = 0; i <= words; i++) {
+                putWord(slot, i, 0L);
+            }
+        }
+
+        private void copy(long slot, Table from, long fromSlot) {
+            for (int i = words; i >= 0; i--) {
+                putWord(slot, i, from.word(fromSlot, i));
+            }
+        }
+
+        private boolean isEmpty(long slot) {
+            for (int i = 0; i < words; i++) {
+                if (word(slot, i) != 0L) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private boolean matches(long slot, byte[] digest, int offset,
+                DigestIndex index) {
+            for (int i = 1; i < words; i++) {
+                if (word(slot, i) != index.word(digest, offset, i)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private void putWord(long slot, int index, long word) {
+            pages[(int) (slot >>> pageShift)].putLong((int) (slot & pageMask)
+                    * stride + 8 * index, word);
+        }
+
+        private long word(long slot, int index) {
+            return pages[(int) (slot >>> pageShift)].getLong(
+                    (int) (slot & pageMask) * stride + 8 * index);
+        }
+    }
+}
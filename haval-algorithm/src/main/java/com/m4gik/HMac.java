@@ -0,0 +1,253 @@
+package com.m4gik;
+
+import java.nio.ByteBuffer;
+
+import com.m4gik.util.Util;
+
+/**
+ * The HMAC keyed message authentication code (RFC 2104) over any
+ * {@link IMessageDigest}, and so over {@link Haval} of every output size and
+ * number of rounds.
+ * <p>
+ * The key is padded to the block size of the underlying digest and the two
+ * blocks <code>K ^ ipad</code> and <code>K ^ opad</code> are transformed only
+ * once, when the instance is constructed. The resulting intermediate states
+ * are kept, and every message starts from a copy of them, which saves the two
+ * block transforms of the key for each authenticated message. Over
+ * {@link Haval}, the copies are made into two working instances allocated
+ * once, so authenticating a message allocates nothing but its result; other
+ * digests are cloned for every message.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class HMac implements IMessageDigest {
+
+    /**
+     * The name prefix of this message authentication code.
+     */
+    public static final String HMAC_NAME_PREFIX = "hmac-";
+
+    /**
+     * The value XORed with the key for the inner digest.
+     */
+    private static final byte IPAD = 0x36;
+
+    /**
+     * The value XORed with the key for the outer digest.
+     */
+    private static final byte OPAD = 0x5C;
+
+    /**
+     * Creates the HMAC of given input bytes with the designated key over
+     * {@link Haval} of the designated output size and number of rounds.
+     * 
+     * @param key
+     *            the secret key.
+     * @param input
+     *            the value to authenticate.
+     * @param size
+     *            the output size in bytes of the underlying {@link Haval}.
+     * @param rounds
+     *            the number of rounds of the underlying {@link Haval}.
+     * @throws IllegalArgumentException
+     *             if the key is null, if the designated output size is invalid,
+     *             or if the number of rounds is invalid.
+     * @return the message authentication code as hexadecimal digits.
+     */
+    public static String mac(byte[] key, byte[] input, int size, int rounds) {
+        HMac hmac = new HMac(new Haval(size, rounds), key);
+        hmac.update(input);
+
+        return Util.toHex(hmac.digest(), false);
+    }
+
+    /**
+     * Copies a keyed state into a working instance.
+     * 
+     * @param target
+     *            the working instance.
+     * @param keyed
+     *            the keyed state to copy.
+     * @return the working instance holding the keyed state: the target
+     *         itself over {@link Haval}, a clone of the keyed state otherwise.
+     */
+    private static IMessageDigest restore(IMessageDigest target,
+            IMessageDigest keyed) {
+        if (target.getClass() == Haval.class
+                && keyed.getClass() == Haval.class) {
+            ((Haval) target).copyState((Haval) keyed);
+            return target;
+        }
+
+        return (IMessageDigest) keyed.clone();
+    }
+
+    /**
+     * The digest of the message being authenticated.
+     */
+    private IMessageDigest inner;
+
+    /**
+     * The array which receives the inner hash value of every message.
+     */
+    private final byte[] innerHash;
+
+    /**
+     * The state of the underlying digest after the block
+     * <code>K ^ ipad</code>; never updated.
+     */
+    private final IMessageDigest innerKeyed;
+
+    /**
+     * The working instance of the outer digest.
+     */
+    private IMessageDigest outer;
+
+    /**
+     * The state of the underlying digest after the block
+     * <code>K ^ opad</code>; never updated.
+     */
+    private final IMessageDigest outerKeyed;
+
+    /**
+     * Constructs the HMAC of the given digest with the designated key. The
+     * digest is reset and belongs to this instance from now on.
+     * 
+     * @param digest
+     *            the underlying digest.
+     * @param key
+     *            the secret key.
+     * @throws IllegalArgumentException
+     *             if the digest or the key is null.
+     */
+    public HMac(IMessageDigest digest, byte[] key) {
+        if (digest == null || key == null) {
+            throw new IllegalArgumentException(
+                    "digest and key cannot be null");
+        }
+
+        digest.reset();
+        int blockSize = digest.blockSize();
+        if (key.length > blockSize) {
+            digest.update(key);
+            key = digest.digest();
+        }
+
+        byte[] pad = new byte[blockSize];
+        IMessageDigest outerKeyed = (IMessageDigest) digest.clone();
+        for (int i = 0; i < blockSize; i++) {
+            pad[i] = (byte) ((i < key.length ? key[i] : 0) ^ IPAD);
+        }
+        digest.update(pad);
+        for (int i = 0; i < blockSize; i++) {
+            pad[i] = (byte) ((i < key.length ? key[i] : 0) ^ OPAD);
+        }
+        outerKeyed.update(pad);
+
+        this.innerKeyed = digest;
+        this.outerKeyed = outerKeyed;
+        this.inner = (IMessageDigest) digest.clone();
+        this.outer = (IMessageDigest) outerKeyed.clone();
+        this.innerHash = new byte[digest.hashSize()];
+    }
+
+    /**
+     * Constructor for cloning purposes, which shares the keyed states.
+     * 
+     * @param originalInstance
+     *            the instance to clone.
+     */
+    private HMac(HMac originalInstance) {
+        this.innerKeyed = originalInstance.innerKeyed;
+        this.outerKeyed = originalInstance.outerKeyed;
+        this.inner = (IMessageDigest) originalInstance.inner.clone();
+        this.outer = (IMessageDigest) outerKeyed.clone();
+        this.innerHash = new byte[originalInstance.innerHash.length];
+    }
+
+    public int blockSize() {
+        return innerKeyed.blockSize();
+    }
+
+    /**
+     * Returns a clone copy of this instance, with the same key and the same
+     * message processed so far. The keyed states are shared, as they are never
+     * updated.
+     * 
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public Object clone() {
+        return new HMac(this);
+    }
+
+    /**
+     * Completes the message authentication code and starts a new message with
+     * the same key.
+     * 
+     * @see com.m4gik.IMessageDigest#digest()
+     */
+    public byte[] digest() {
+        byte[] result = new byte[hashSize()];
+        digest(result, 0);
+
+        return result;
+    }
+
+    /**
+     * Completes the message authentication code into the given array and
+     * starts a new message with the same key.
+     * 
+     * @see com.m4gik.IMessageDigest#digest(byte[], int)
+     */
+    public int digest(byte[] out, int offset) {
+        int size = hashSize();
+        if (out == null || offset < 0 || offset > out.length - size) {
+            throw new IllegalArgumentException(
+                    "out cannot hold the digest at the given offset");
+        }
+
+        inner.digest(innerHash, 0);
+        outer = restore(outer, outerKeyed);
+        outer.update(innerHash);
+        outer.digest(out, offset);
+
+        reset();
+
+        return size;
+    }
+
+    public int hashSize() {
+        return innerKeyed.hashSize();
+    }
+
+    public String name() {
+        return HMAC_NAME_PREFIX + innerKeyed.name();
+    }
+
+    /**
+     * Discards the message processed so far, keeping the key.
+     * 
+     * @see com.m4gik.IMessageDigest#reset()
+     */
+    public void reset() {
+        inner = restore(inner, innerKeyed);
+    }
+
+    public void update(byte b) {
+        inner.update(b);
+    }
+
+    public void update(byte[] in) {
+        inner.update(in);
+    }
+
+    public void update(byte[] in, int offset, int length) {
+        inner.update(in, offset, length);
+    }
+
+    public void update(ByteBuffer in) {
+        inner.update(in);
+    }
+}
@@ -0,0 +1,82 @@
+package com.m4gik;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Flight Recorder event of a digest completed by a {@link BaseHash},
+ * while {@link HashMetrics} is enabled. Its duration is the one of the
+ * completion of the digest: the padding, the last transforms and the
+ * output. This class is only loaded when the runtime has Flight Recorder.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+@Category("Hashing")
+@Description("A message digest completed by a hash")
+@Label("Hash Digest")
+@Name("com.m4gik.HashDigest")
+@StackTrace(false)
+final class HashDigestEvent extends Event {
+
+    /**
+     * Ends an event started by {@link #start()} and commits it.
+     * 
+     * @param event
+     *            the event to end.
+     * @param algorithm
+     *            the name of the algorithm.
+     * @param rounds
+     *            the number of rounds of the algorithm.
+     * @param bytes
+     *            the number of bytes of the message.
+     * @param blocks
+     *            the number of blocks transformed.
+     */
+    static void end(Object event, String algorithm, int rounds, long bytes,
+            long blocks) {
+        HashDigestEvent digest = (HashDigestEvent) event;
+        digest.end();
+        if (digest.shouldCommit()) {
+            digest.algorithm = algorithm;
+            digest.rounds = rounds;
+            digest.bytes = bytes;
+            digest.blocks = blocks;
+            digest.commit();
+        }
+    }
+
+    /**
+     * Starts an event, if the event is recorded.
+     * 
+     * @return the started event, or <code>null</code>.
+     */
+    static Object start() {
+        HashDigestEvent event = new HashDigestEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+
+        return event;
+    }
+
+    @Label("Algorithm")
+    String algorithm;
+
+    @Label("Blocks")
+    long blocks;
+
+    @DataAmount
+    @Label("Bytes")
+    long bytes;
+
+    @Label("Rounds")
+    int rounds;
+}
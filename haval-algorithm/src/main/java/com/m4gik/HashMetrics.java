@@ -0,0 +1,287 @@
+package com.m4gik;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional instrumentation of the hashes derived from {@link BaseHash}: for
+ * every algorithm, output size and number of rounds, the number of bytes
+ * hashed, of blocks transformed, padding included, and of digests completed,
+ * plus a {@link jdk.jfr.Event JFR event} for every digest when the runtime
+ * has Flight Recorder.
+ * <p>
+ * The instrumentation is disabled by default, and is enabled with
+ * {@link #setEnabled(boolean)} or with the system property
+ * {@value #ENABLED_PROPERTY} set to <code>true</code>. Everything is recorded
+ * when a digest is completed, so the updates cost the same whether it is
+ * enabled or not, and a disabled instrumentation costs one volatile read per
+ * digest. Counters are {@link LongAdder}s, so threads hashing at the same
+ * time do not contend on them. Messages abandoned with
+ * {@link BaseHash#reset()} are not counted.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public final class HashMetrics {
+
+    /**
+     * The system property which enables the instrumentation at startup.
+     */
+    public static final String ENABLED_PROPERTY = "com.m4gik.hashMetrics";
+
+    /**
+     * The counters of every algorithm, output size and number of rounds.
+     */
+    private static final ConcurrentMap<String, Counters> COUNTERS =
+            new ConcurrentHashMap<String, Counters>();
+
+    /**
+     * Whether digests are recorded.
+     */
+    static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    /**
+     * Whether the runtime has Flight Recorder events.
+     */
+    private static final boolean JFR = jfrAvailable();
+
+    /**
+     * Starts the event of a digest.
+     * 
+     * @return the event, or <code>null</code> if the runtime has no Flight
+     *         Recorder or the event is not recorded.
+     */
+    static Object begin() {
+        return JFR ? HashDigestEvent.start() : null;
+    }
+
+    /**
+     * Returns the counters of a hash, resolving them only when the hash has
+     * none yet or its number of rounds changed.
+     * 
+     * @param hash
+     *            the hash whose counters are returned.
+     * @return the counters of the hash.
+     */
+    private static Counters countersOf(BaseHash hash) {
+        int rounds = hash.getRounds();
+        Counters counters = hash.counters;
+        if (counters != null && counters.rounds == rounds) {
+            return counters;
+        }
+
+        String algorithm = hash.name() + "-" + hash.hashSize() * 8
+                + (rounds > 0 ? "/" + rounds : "");
+        counters = COUNTERS.get(algorithm);
+        if (counters == null) {
+            Counters created = new Counters(algorithm, rounds);
+            counters = COUNTERS.putIfAbsent(algorithm, created);
+            counters = counters == null ? created : counters;
+        }
+        hash.counters = counters;
+
+        return counters;
+    }
+
+    /**
+     * Returns whether the instrumentation is enabled.
+     * 
+     * @return <code>true</code> if digests are recorded.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns whether the runtime has Flight Recorder events.
+     * 
+     * @return <code>true</code> if the class <code>jdk.jfr.Event</code>
+     *         exists.
+     */
+    private static boolean jfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Records a completed digest.
+     * 
+     * @param hash
+     *            the hash which completed the digest.
+     * @param event
+     *            the event returned by {@link #begin()}.
+     * @param bytes
+     *            the number of bytes of the message.
+     * @param blocks
+     *            the number of blocks transformed, padding included.
+     */
+    static void record(BaseHash hash, Object event, long bytes, long blocks) {
+        Counters counters = countersOf(hash);
+        counters.bytes.add(bytes);
+        counters.blocks.add(blocks);
+        counters.digests.increment();
+        if (event != null) {
+            HashDigestEvent.end(event, counters.algorithm, counters.rounds,
+                    bytes, blocks);
+        }
+    }
+
+    /**
+     * Sets all counters back to zero.
+     */
+    public static void reset() {
+        for (Counters counters : COUNTERS.values()) {
+            counters.bytes.reset();
+            counters.blocks.reset();
+            counters.digests.reset();
+        }
+    }
+
+    /**
+     * Enables or disables the instrumentation. The counters keep their
+     * values.
+     * 
+     * @param enabled
+     *            whether digests are recorded from now on.
+     */
+    public static void setEnabled(boolean enabled) {
+        HashMetrics.enabled = enabled;
+    }
+
+    /**
+     * Returns the current values of the counters of every algorithm, output
+     * size and number of rounds which completed a digest, sorted by name.
+     * The values of a snapshot are read one after the other, while other
+     * threads may be hashing.
+     * 
+     * @return the snapshots of the counters.
+     */
+    public static List<Snapshot> snapshot() {
+        List<Snapshot> result = new ArrayList<Snapshot>();
+        for (Counters counters : COUNTERS.values()) {
+            result.add(new Snapshot(counters.algorithm, counters.bytes.sum(),
+                    counters.blocks.sum(), counters.digests.sum()));
+        }
+        Collections.sort(result);
+
+        return result;
+    }
+
+    /**
+     * Trivial constructor to enforce Singleton pattern.
+     */
+    private HashMetrics() {
+        super();
+    }
+
+    /**
+     * The counters of an algorithm, output size and number of rounds.
+     */
+    static final class Counters {
+
+        private final String algorithm;
+
+        private final LongAdder blocks = new LongAdder();
+
+        private final LongAdder bytes = new LongAdder();
+
+        private final LongAdder digests = new LongAdder();
+
+        private final int rounds;
+
+        private Counters(String algorithm, int rounds) {
+            this.algorithm = algorithm;
+            this.rounds = rounds;
+        }
+    }
+
+    /**
+     * The values of the counters of an algorithm, output size and number of
+     * rounds at a point in time.
+     */
+    public static final class Snapshot implements Comparable<Snapshot> {
+
+        /**
+         * The name of the algorithm, such as <code>haval-256/5</code>.
+         */
+        private final String algorithm;
+
+        /**
+         * The number of blocks transformed.
+         */
+        private final long blocks;
+
+        /**
+         * The number of bytes hashed.
+         */
+        private final long bytes;
+
+        /**
+         * The number of digests completed.
+         */
+        private final long digests;
+
+        private Snapshot(String algorithm, long bytes, long blocks,
+                long digests) {
+            this.algorithm = algorithm;
+            this.bytes = bytes;
+            this.blocks = blocks;
+            this.digests = digests;
+        }
+
+        public int compareTo(Snapshot other) {
+            return algorithm.compareTo(other.algorithm);
+        }
+
+        /**
+         * Returns the name of the algorithm, with its output size in bits and
+         * its number of rounds, such as <code>haval-256/5</code>.
+         * 
+         * @return the name of the algorithm.
+         */
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        /**
+         * Returns the number of blocks transformed, padding included.
+         * 
+         * @return the number of blocks.
+         */
+        public long getBlocks() {
+            return blocks;
+        }
+
+        /**
+         * Returns the number of bytes of the messages digested.
+         * 
+         * @return the number of bytes.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the number of digests completed.
+         * 
+         * @return the number of digests.
+         */
+        public long getDigests() {
+            return digests;
+        }
+
+        @Override
+        public String toString() {
+            return algorithm + ": " + digests + " digests, " + bytes
+                    + " bytes, " + blocks + " blocks";
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.m4gik;
 
 import static com.m4gik.HavalAttributes.BLOCK_SIZE;
-import static com.m4gik.HavalAttributes.CONSTANTS;
 import static com.m4gik.HavalAttributes.HAVAL_128_BIT;
 import static com.m4gik.HavalAttributes.HAVAL_160_BIT;
 import static com.m4gik.HavalAttributes.HAVAL_192_BIT;
@@ -11,24 +10,21 @@ import static com.m4gik.HavalAttributes.HAVAL_3_ROUND;
 import static com.m4gik.HavalAttributes.HAVAL_4_ROUND;
 import static com.m4gik.HavalAttributes.HAVAL_5_ROUND;
 import static com.m4gik.HavalAttributes.HAVAL_NAME;
+import static com.m4gik.HavalAttributes.HAVAL_STATE_VERSION;
 import static com.m4gik.HavalAttributes.HAVAL_VERSION;
-import static com.m4gik.HavalAttributes.INDEX_0;
-import static com.m4gik.HavalAttributes.INDEX_1;
-import static com.m4gik.HavalAttributes.INDEX_2;
-import static com.m4gik.HavalAttributes.INDEX_3;
-import static com.m4gik.HavalAttributes.INDEX_4;
-import static com.m4gik.HavalAttributes.INDEX_5;
-import static com.m4gik.HavalAttributes.INDEX_6;
-import static com.m4gik.HavalAttributes.INDEX_7;
-import static com.m4gik.HavalAttributes.WORD_PROCESSING_ORDER_1;
-import static com.m4gik.HavalAttributes.WORD_PROCESSING_ORDER_2;
-import static com.m4gik.HavalAttributes.WORD_PROCESSING_ORDER_3;
-import static com.m4gik.HavalAttributes.WORD_PROCESSING_ORDER_4;
-import static com.m4gik.HavalAttributes.WORD_PROCESSING_ORDER_5;
-
-import java.util.Arrays;
-import java.util.Collections;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32;
 
 import javax.crypto.IllegalBlockSizeException;
 
@@ -38,12 +34,39 @@ import com.m4gik.util.Util;
  * The Haval (One-Way Hashing Algorithm) message-digest algorithm is a variable
  * output length, with variable number of rounds. By default, this
  * implementation allows Haval to be used as a drop-in replacement for md5.
+ * <p>
+ * An instance is meant to be used by one thread at a time and does no locking
+ * of its own. The static helpers use an instance kept for the calling thread,
+ * so they are safe to call from any number of threads and do not allocate a
+ * new instance on every call.
  * 
  * @author Michał Szczygieł <michal.szczygiel@wp.pl>
  * 
  */
 public class Haval extends BaseHash {
 
+    /**
+     * The default number of bytes hashed by one task of {@link #hashAll}.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * The number of bytes of an exported state before the buffered bytes:
+     * the magic, the version, the output size, the number of rounds, the
+     * count and the eight chaining words.
+     */
+    private static final int STATE_HEADER_SIZE = 2 + 1 + 1 + 1 + 8 + 32;
+
+    /**
+     * The first two bytes of an exported state, <code>"HV"</code>.
+     */
+    private static final short STATE_MAGIC = 0x4856;
+
+    /**
+     * The number of bytes of the checksum ending an exported state.
+     */
+    private static final int STATE_TRAILER_SIZE = 4;
+
     /**
      * Creates the {@link Haval} hash value for given input bytes with two
      * argument using {@link HavalAttributes.#HAVAL_128_BIT} as the value for
@@ -87,18 +110,382 @@ public class Haval extends BaseHash {
      * @return hash value for {@link Haval} algorithm.
      */
     public static String hash(byte[] input, int size, int rounds) {
-        return Util.toString(new Haval(input, size, rounds).digest())
-                .toLowerCase();
+        checkHavalInput(input);
+        Haval haval = threadInstance(size, rounds);
+        haval.update(input);
+
+        return Util.toHex(haval.digest(), false);
+    }
+
+    /**
+     * Creates the {@link Haval} hash values of all designated output sizes for
+     * given input bytes, reading the input only once.
+     * 
+     * @param input
+     *            the value from which obtain the hashes.
+     * @param sizes
+     *            the output sizes in bytes of the requested hashes.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @throws IllegalArgumentException
+     *             if the sizes are null, if any of the designated output sizes
+     *             is invalid, or if the number of rounds is invalid.
+     * @return hash values for {@link Haval} algorithm, in the same order as
+     *         <code>sizes</code>.
+     * 
+     * @see #digestAll(int...)
+     */
+    public static String[] hash(byte[] input, int[] sizes, int rounds) {
+        checkHavalInput(input);
+        checkHavalOutputSizes(sizes);
+        Haval haval = threadInstance(HAVAL_128_BIT, rounds);
+        byte[][] digests;
+        try {
+            haval.update(input);
+            digests = haval.digestAll(sizes);
+        } catch (RuntimeException e) {
+            haval.reset();
+            throw e;
+        }
+
+        String[] result = new String[digests.length];
+        for (int i = 0; i < digests.length; i++) {
+            result[i] = Util.toHex(digests[i], false);
+        }
+
+        return result;
+    }
+
+    /**
+     * Computes the {@link Haval} digests of the remaining bytes of every given
+     * buffer on the common {@link ForkJoinPool}, with chunks of
+     * {@link #DEFAULT_CHUNK_SIZE} bytes. The positions of the buffers are not
+     * changed.
+     * 
+     * @param inputs
+     *            the buffers from which obtain the digests.
+     * @param size
+     *            the output size in bytes of the digests.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @return the digests one after another, the digest of
+     *         <code>inputs[i]</code> at index <code>i * size</code>.
+     * @throws IllegalArgumentException
+     *             if the buffers or any of them is null, if the designated
+     *             output size is invalid, or if the number of rounds is
+     *             invalid.
+     * @see #hashAll(ByteBuffer[], int, int, ForkJoinPool, int)
+     */
+    public static byte[] hashAll(ByteBuffer[] inputs, int size, int rounds) {
+        return hashAll(inputs, size, rounds, ForkJoinPool.commonPool(),
+                DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Computes the {@link Haval} digests of the remaining bytes of every given
+     * buffer on the designated pool. The buffers may be backed by arrays or
+     * allocated outside of the heap, and their positions are not changed.
+     * 
+     * @param inputs
+     *            the buffers from which obtain the digests.
+     * @param size
+     *            the output size in bytes of the digests.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @param pool
+     *            the pool which computes the digests.
+     * @param chunkSize
+     *            the number of bytes hashed by one task.
+     * @return the digests one after another, the digest of
+     *         <code>inputs[i]</code> at index <code>i * size</code>.
+     * @throws IllegalArgumentException
+     *             if the buffers or any of them is null, if the designated
+     *             output size is invalid, if the number of rounds is invalid,
+     *             if the pool is null or if the chunk size is not positive.
+     * @see #hashAll(List, int, int, ForkJoinPool, int)
+     */
+    public static byte[] hashAll(ByteBuffer[] inputs, int size, int rounds,
+            ForkJoinPool pool, int chunkSize) {
+        if (inputs == null) {
+            throw new IllegalArgumentException("inputs cannot be null");
+        }
+
+        return hashAll(new HashAllTask(null, inputs, size, rounds),
+                inputs.length, pool, chunkSize);
+    }
+
+    /**
+     * Computes the {@link Haval} digests of all given inputs on the common
+     * {@link ForkJoinPool}, with chunks of {@link #DEFAULT_CHUNK_SIZE} bytes.
+     * 
+     * @param inputs
+     *            the values from which obtain the digests.
+     * @param size
+     *            the output size in bytes of the digests.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @return the digests one after another, the digest of the input
+     *         <code>i</code> at index <code>i * size</code>.
+     * @throws IllegalArgumentException
+     *             if the inputs or any of them is null, if the designated
+     *             output size is invalid, or if the number of rounds is
+     *             invalid.
+     * @see #hashAll(List, int, int, ForkJoinPool, int)
+     */
+    public static byte[] hashAll(List<byte[]> inputs, int size, int rounds) {
+        return hashAll(inputs, size, rounds, ForkJoinPool.commonPool(),
+                DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Computes the {@link Haval} digests of all given inputs on the designated
+     * pool. Consecutive inputs are grouped into tasks of about
+     * <code>chunkSize</code> bytes, every input counting for at least one
+     * block, so that a task of tiny inputs still hashes enough bytes to
+     * outweigh its scheduling. Each task uses the instance of its worker
+     * thread and writes its digests straight into the result, without any
+     * allocation per input. The last task runs on the calling thread, so a
+     * batch of a single task never goes through the pool.
+     * 
+     * @param inputs
+     *            the values from which obtain the digests.
+     * @param size
+     *            the output size in bytes of the digests.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @param pool
+     *            the pool which computes the digests.
+     * @param chunkSize
+     *            the number of bytes hashed by one task.
+     * @return the digests one after another, the digest of the input
+     *         <code>i</code> at index <code>i * size</code>.
+     * @throws IllegalArgumentException
+     *             if the inputs or any of them is null, if the designated
+     *             output size is invalid, if the number of rounds is invalid,
+     *             if the pool is null or if the chunk size is not positive.
+     */
+    public static byte[] hashAll(List<byte[]> inputs, int size, int rounds,
+            ForkJoinPool pool, int chunkSize) {
+        if (inputs == null) {
+            throw new IllegalArgumentException("inputs cannot be null");
+        }
+
+        List<byte[]> list = inputs instanceof RandomAccess ? inputs
+                : new ArrayList<byte[]>(inputs);
+
+        return hashAll(new HashAllTask(list, null, size, rounds), list.size(),
+                pool, chunkSize);
+    }
+
+    /**
+     * Splits a batch into tasks and computes them.
+     * 
+     * @param batch
+     *            the task of the whole batch.
+     * @param count
+     *            the number of inputs of the batch.
+     * @param pool
+     *            the pool which computes the tasks.
+     * @param chunkSize
+     *            the number of bytes hashed by one task.
+     * @return the digests of the batch.
+     */
+    private static byte[] hashAll(HashAllTask batch, int count,
+            ForkJoinPool pool, int chunkSize) {
+        checkHavalOutputSize(batch.size);
+        checkHavalRounds(batch.rounds);
+        if (pool == null) {
+            throw new IllegalArgumentException("pool cannot be null");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException(
+                    "chunkSize cannot less or equal to zero");
+        }
+        if ((long) count * batch.size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many inputs");
+        }
+
+        byte[] result = new byte[count * batch.size];
+        List<HashAllTask> tasks = new ArrayList<HashAllTask>();
+        long bytes = 0L;
+        int from = 0;
+        for (int i = 0; i < count; i++) {
+            bytes += batch.length(i) + BLOCK_SIZE;
+            if (bytes >= chunkSize || i == count - 1) {
+                tasks.add(batch.chunk(from, i + 1, result));
+                bytes = 0L;
+                from = i + 1;
+            }
+        }
+
+        int last = tasks.size() - 1;
+        for (int i = 0; i < last; i++) {
+            pool.execute(tasks.get(i));
+        }
+        if (last >= 0) {
+            tasks.get(last).invoke();
+        }
+        for (int i = 0; i < last; i++) {
+            tasks.get(i).join();
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates the {@link Haval} hash value of the content of the given file.
+     * The file is mapped into memory in windows of
+     * {@link BaseHash#DEFAULT_MAPPING_WINDOW} bytes, so files of any size can
+     * be hashed without reading them onto the heap.
+     * 
+     * @param file
+     *            the file from which obtain the hash.
+     * @param size
+     *            the output size in bytes of this instance.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @throws IOException
+     *             if the file cannot be opened or mapped.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid, or if the number of
+     *             rounds is invalid.
+     * @return hash value for {@link Haval} algorithm.
+     * 
+     * @see BaseHash#update(FileChannel, int)
+     */
+    public static String hashFile(Path file, int size, int rounds)
+            throws IOException {
+        Haval haval = threadInstance(size, rounds);
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            haval.update(channel);
+        } catch (IOException | RuntimeException e) {
+            haval.reset();
+            throw e;
+        }
+
+        return Util.toHex(haval.digest(), false);
+    }
+
+    /**
+     * Reconstructs an instance from a state returned by
+     * {@link #exportState()}. The instance continues the message exactly where
+     * the exported instance was, so a long hash can be resumed after a
+     * restart without processing again the bytes consumed before the export.
+     * 
+     * @param state
+     *            the exported state.
+     * @return a new instance with the exported output size, number of rounds
+     *         and intermediate state.
+     * @throws IllegalArgumentException
+     *             if the state is null, damaged or of an unknown version.
+     */
+    public static Haval importState(byte[] state) {
+        if (state == null
+                || state.length < STATE_HEADER_SIZE + STATE_TRAILER_SIZE) {
+            throw new IllegalArgumentException("Invalid HAVAL state");
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(state, 0, state.length - STATE_TRAILER_SIZE);
+        ByteBuffer in = ByteBuffer.wrap(state);
+        if (in.getInt(state.length - STATE_TRAILER_SIZE) != (int) crc
+                .getValue() || in.getShort() != STATE_MAGIC) {
+            throw new IllegalArgumentException("Invalid HAVAL state");
+        }
+
+        int version = in.get();
+        if (version != HAVAL_STATE_VERSION) {
+            throw new IllegalArgumentException(
+                    "Unsupported HAVAL state version " + version);
+        }
+
+        int size = in.get();
+        int rounds = in.get();
+        long count = in.getLong();
+        int n = (int) (count % BLOCK_SIZE);
+        if (count < 0L
+                || state.length != STATE_HEADER_SIZE + n + STATE_TRAILER_SIZE) {
+            throw new IllegalArgumentException("Invalid HAVAL state");
+        }
+
+        Haval haval = new Haval(size, rounds);
+        haval.count = count;
+        haval.h0 = in.getInt();
+        haval.h1 = in.getInt();
+        haval.h2 = in.getInt();
+        haval.h3 = in.getInt();
+        haval.h4 = in.getInt();
+        haval.h5 = in.getInt();
+        haval.h6 = in.getInt();
+        haval.h7 = in.getInt();
+        in.get(haval.buffer, 0, n);
+
+        return haval;
     }
 
+    /**
+     * Returns the instance of the calling thread for the designated output
+     * size and number of rounds, creating it on first use. The instance is
+     * confined to the calling thread, so it is used without any locking, and
+     * it is reused by every call of the static helpers on that thread instead
+     * of allocating a new one. Whoever uses it must leave it reset, which
+     * {@link #digest()} does.
+     * 
+     * @param size
+     *            the output size in bytes of the instance.
+     * @param rounds
+     *            the number of rounds of the instance.
+     * @return the reset instance of the calling thread.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid, or if the number of
+     *             rounds is invalid.
+     */
+    static Haval threadInstance(int size, int rounds) {
+        checkParameters(size, rounds);
+
+        Haval[] instances = THREAD_INSTANCES.get();
+        int index = (size - HAVAL_128_BIT) / 4 * 3 + rounds - HAVAL_3_ROUND;
+        Haval haval = instances[index];
+        if (haval == null) {
+            haval = new Haval(size, rounds);
+            instances[index] = haval;
+        }
+
+        return haval;
+    }
+
+    /**
+     * The instances of every thread used by the static helpers, one for each
+     * of the 15 combinations of output size and number of rounds.
+     */
+    private static final ThreadLocal<Haval[]> THREAD_INSTANCES =
+            new ThreadLocal<Haval[]>() {
+                @Override
+                protected Haval[] initialValue() {
+                    return new Haval[15];
+                }
+            };
+
+    /**
+     * The compression function for the current number of rounds.
+     */
+    private HavalEngine engine = HavalEngine.forRounds(HAVAL_3_ROUND);
+
     /** 128-bit interim result. */
-    private int h0, h1, h2, h3, h4, h5, h6, h7;
+    int h0, h1, h2, h3, h4, h5, h6, h7;
 
     /**
      * Fields keep amount of rounds. Default value is 3 rounds.
      */
     private int rounds = HAVAL_3_ROUND;
 
+    /**
+     * The 32 little-endian words of the block being transformed, kept between
+     * calls to avoid allocating a new table for every block.
+     */
+    private final int[] x = new int[32];
+
     /**
      * Calls the constructor with two argument using {@link
      * HavalAttributes.#HAVAL_128_BIT} as the value for the output size (i.e.
@@ -151,18 +538,25 @@ public class Haval extends BaseHash {
      *            the instance to clone.
      */
     public Haval(Haval originalInstance) {
-        this(originalInstance.hashSize(), originalInstance.getRounds());
+        this(originalInstance, originalInstance.hashSize());
+    }
 
-        this.h0 = originalInstance.h0;
-        this.h1 = originalInstance.h1;
-        this.h2 = originalInstance.h2;
-        this.h3 = originalInstance.h3;
-        this.h4 = originalInstance.h4;
-        this.h5 = originalInstance.h5;
-        this.h6 = originalInstance.h6;
-        this.h7 = originalInstance.h7;
-        this.count = originalInstance.count;
-        this.buffer = originalInstance.buffer.clone();
+    /**
+     * Constructor which copies the state of the given instance, but produces
+     * a digest of the designated output size when completed. All sizes share
+     * the same intermediate state, as the output size only takes part in the
+     * padding and in the tailoring of the final result.
+     * 
+     * @param originalInstance
+     *            the instance to copy.
+     * @param size
+     *            the output size in bytes of the copy.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid.
+     */
+    private Haval(Haval originalInstance, int size) {
+        this(size, originalInstance.getRounds());
+        copyState(originalInstance);
     }
 
     /**
@@ -195,6 +589,18 @@ public class Haval extends BaseHash {
         this.setRounds(rounds);
     }
 
+    /**
+     * Returns the number of blocks transformed to digest a message of the
+     * given length: the padding takes a second block when fewer than 11 bytes
+     * are left in the last one. This method overrides an existing method.
+     * 
+     * @see com.m4gik.BaseHash#blockCount(long)
+     */
+    @Override
+    protected long blockCount(long bytes) {
+        return bytes / BLOCK_SIZE + (bytes % BLOCK_SIZE < 118 ? 1 : 2);
+    }
+
     /**
      * This method checks proper input value for {@link Haval} hashing.
      * 
@@ -202,7 +608,8 @@ public class Haval extends BaseHash {
      *            the value to check.
      * @throws IllegalArgumentException
      */
-    private void checkHavalInput(byte[] input) throws IllegalArgumentException {
+    private static void checkHavalInput(byte[] input)
+            throws IllegalArgumentException {
         if (input == null) {
             throw new IllegalArgumentException("Input cannot be null");
         }
@@ -215,7 +622,8 @@ public class Haval extends BaseHash {
      *            the size to check.
      * @throws IllegalArgumentException
      */
-    private void checkHavalOutputSize(int size) throws IllegalArgumentException {
+    private static void checkHavalOutputSize(int size)
+            throws IllegalArgumentException {
         if (size != HAVAL_128_BIT && size != HAVAL_160_BIT
                 && size != HAVAL_192_BIT && size != HAVAL_224_BIT
                 && size != HAVAL_256_BIT) {
@@ -223,6 +631,23 @@ public class Haval extends BaseHash {
         }
     }
 
+    /**
+     * This method checks proper output sizes for {@link Haval} algorithm.
+     * 
+     * @param sizes
+     *            the sizes to check.
+     * @throws IllegalArgumentException
+     */
+    private static void checkHavalOutputSizes(int[] sizes)
+            throws IllegalArgumentException {
+        if (sizes == null) {
+            throw new IllegalArgumentException("sizes cannot be null");
+        }
+        for (int size : sizes) {
+            checkHavalOutputSize(size);
+        }
+    }
+
     /**
      * This method checks proper amount of rounds.
      * 
@@ -230,7 +655,8 @@ public class Haval extends BaseHash {
      *            the amount of rounds to check.
      * @throws IllegalArgumentException
      */
-    private void checkHavalRounds(int rounds) throws IllegalArgumentException {
+    private static void checkHavalRounds(int rounds)
+            throws IllegalArgumentException {
         if (rounds != HAVAL_3_ROUND && rounds != HAVAL_4_ROUND
                 && rounds != HAVAL_5_ROUND) {
             throw new IllegalArgumentException("Invalid HAVAL number of rounds");
@@ -238,6 +664,25 @@ public class Haval extends BaseHash {
 
     }
 
+    /**
+     * Checks that an output size and a number of rounds are valid for
+     * {@link Haval}, the same way as the constructors do, so that classes
+     * building on {@link Haval} can check their parameters up front without
+     * creating an instance.
+     * 
+     * @param size
+     *            the output size in bytes to check.
+     * @param rounds
+     *            the number of rounds to check.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid, or if the number of
+     *             rounds is invalid.
+     */
+    public static void checkParameters(int size, int rounds) {
+        checkHavalOutputSize(size);
+        checkHavalRounds(rounds);
+    }
+
     /**
      * This method checks proper size of padding with checking last 10 special
      * bytes.
@@ -274,324 +719,153 @@ public class Haval extends BaseHash {
         return new Haval(this);
     }
 
-    private int f1(int x6, int x5, int x4, int x3, int x2, int x1, int x0) {
-        return x1 & (x0 ^ x4) ^ x2 & x5 ^ x3 & x6 ^ x0;
-    }
-
-    private int f2(int x6, int x5, int x4, int x3, int x2, int x1, int x0) {
-        return x2 & (x1 & ~x3 ^ x4 & x5 ^ x6 ^ x0) ^ x4 & (x1 ^ x5) ^ x3 & x5
-                ^ x0;
-    }
-
-    private int f3(int x6, int x5, int x4, int x3, int x2, int x1, int x0) {
-        return x3 & (x1 & x2 ^ x6 ^ x0) ^ x1 & x4 ^ x2 & x5 ^ x0;
-    }
-
-    private int f4(int x6, int x5, int x4, int x3, int x2, int x1, int x0) {
-        return x4 & (x5 & ~x2 ^ x3 & ~x6 ^ x1 ^ x6 ^ x0) ^ x3
-                & (x1 & x2 ^ x5 ^ x6) ^ x2 & x6 ^ x0;
-    }
-
-    private int f5(int x6, int x5, int x4, int x3, int x2, int x1, int x0) {
-        return x0 & (x1 & x2 & x3 ^ ~x5) ^ x1 & x4 ^ x2 & x5 ^ x3 & x6;
-    }
-
     /**
-     * Permutations phi_{i,j}, i=3,4,5, j=1,...,i.
+     * Copies the intermediate state of the given instance into this one: the
+     * chaining words, the number of bytes processed and the bytes waiting in
+     * the buffer. Nothing is allocated, so an instance can be restored to a
+     * saved state once for every message. Both instances must have the same
+     * number of rounds.
      * 
-     * rounds = 3: 6 5 4 3 2 1 0 (replaced by) phi_{3,1}: 1 0 3 5 6 2 4
-     * 
-     * rounds = 4: 6 5 4 3 2 1 0 (replaced by) phi_{4,1}: 2 6 1 4 5 3 0
-     * 
-     * rounds = 5: 6 5 4 3 2 1 0 (replaced by) phi_{5,1}: 3 4 1 0 5 2 6
-     * 
-     * @param collectionH
-     *            the data for interim result.
-     * @param w
-     *            the extra value to add.
-     * @return The value for first permutation.
+     * @param source
+     *            the instance whose state is copied.
      */
-    private Integer ff1(List<Integer> collectionH, int w) {
-        Integer t = 0;
-
-        if (getRounds() == 3) {
-            t = f1(collectionH.get(INDEX_1), collectionH.get(INDEX_0),
-                    collectionH.get(INDEX_3), collectionH.get(INDEX_5),
-                    collectionH.get(INDEX_6), collectionH.get(INDEX_2),
-                    collectionH.get(INDEX_4));
-        } else if (getRounds() == 4) {
-            t = f1(collectionH.get(INDEX_2), collectionH.get(INDEX_6),
-                    collectionH.get(INDEX_1), collectionH.get(INDEX_4),
-                    collectionH.get(INDEX_5), collectionH.get(INDEX_3),
-                    collectionH.get(INDEX_0));
-        } else {
-            t = f1(collectionH.get(INDEX_3), collectionH.get(INDEX_4),
-                    collectionH.get(INDEX_1), collectionH.get(INDEX_0),
-                    collectionH.get(INDEX_5), collectionH.get(INDEX_2),
-                    collectionH.get(INDEX_6));
-        }
-
-        return lastOperationsOfPermutation(t, collectionH.get(INDEX_7), w, 0);
+    void copyState(Haval source) {
+        h0 = source.h0;
+        h1 = source.h1;
+        h2 = source.h2;
+        h3 = source.h3;
+        h4 = source.h4;
+        h5 = source.h5;
+        h6 = source.h6;
+        h7 = source.h7;
+        count = source.count;
+        System.arraycopy(source.buffer, 0, buffer, 0,
+                (int) (source.count % BLOCK_SIZE));
     }
 
     /**
-     * Permutations phi_{i,j}, i=3,4,5, j=1,...,i.
-     * 
-     * rounds = 3: 6 5 4 3 2 1 0 (replaced by) phi_{3,2}: 4 2 1 0 5 3 6
-     * 
-     * rounds = 4: 6 5 4 3 2 1 0 (replaced by) phi_{4,2}: 3 5 2 0 1 6 4
+     * Completes the message digest once for every designated output size and
+     * resets this instance. The data is processed only once; the intermediate
+     * state is copied for each size just before padding. Valid output
+     * <code>sizes</code> values are <code>16</code>, <code>20</code>,
+     * <code>24</code>, <code>28</code> and <code>32</code>.
+     * <p>
+     * The message is recorded with {@link HashMetrics} once, as a digest of
+     * the output size of this instance, with the padding blocks of every
+     * designated size among its blocks.
      * 
-     * rounds = 5: 6 5 4 3 2 1 0 (replaced by) phi_{5,2}: 6 2 1 0 3 4 5
+     * @param sizes
+     *            the output sizes in bytes of the requested digests.
+     * @return the digests, in the same order as <code>sizes</code>.
+     * @throws IllegalArgumentException
+     *             if the sizes are null, or if any of the designated output
+     *             sizes is invalid.
      * 
-     * @param collectionH
-     *            the data for interim result.
-     * @param w
-     *            the extra value to add.
-     * @param c
-     *            the constant value to add.
-     * @return The value for second permutation.
+     * @see HavalAttributes.#HAVAL_128_BIT
+     * @see HavalAttributes.#HAVAL_160_BIT
+     * @see HavalAttributes.#HAVAL_192_BIT
+     * @see HavalAttributes.#HAVAL_224_BIT
+     * @see HavalAttributes.#HAVAL_256_BIT
      */
-    private Integer ff2(List<Integer> collectionH, int w, Integer c) {
-        Integer t = 0;
-
-        if (getRounds() == 3) {
-            t = f2(collectionH.get(INDEX_4), collectionH.get(INDEX_2),
-                    collectionH.get(INDEX_1), collectionH.get(INDEX_0),
-                    collectionH.get(INDEX_5), collectionH.get(INDEX_3),
-                    collectionH.get(INDEX_6));
-        } else if (getRounds() == 4) {
-            t = f2(collectionH.get(INDEX_3), collectionH.get(INDEX_5),
-                    collectionH.get(INDEX_2), collectionH.get(INDEX_0),
-                    collectionH.get(INDEX_1), collectionH.get(INDEX_6),
-                    collectionH.get(INDEX_4));
-        } else {
-            t = f2(collectionH.get(INDEX_6), collectionH.get(INDEX_2),
-                    collectionH.get(INDEX_1), collectionH.get(INDEX_0),
-                    collectionH.get(INDEX_3), collectionH.get(INDEX_4),
-                    collectionH.get(INDEX_5));
+    public byte[][] digestAll(int... sizes) {
+        checkHavalOutputSizes(sizes);
+        boolean instrumented = HashMetrics.enabled && sizes.length > 0;
+        Object event = instrumented ? HashMetrics.begin() : null;
+
+        byte[][] result = new byte[sizes.length][];
+        for (int i = 0; i < sizes.length; i++) {
+            Haval copy = new Haval(this, sizes[i]);
+            copy.padInBuffer();
+            result[i] = copy.getResult();
         }
 
-        return lastOperationsOfPermutation(t, collectionH.get(INDEX_7), w, c);
-    }
-
-    /**
-     * Permutations phi_{i,j}, i=3,4,5, j=1,...,i.
-     * 
-     * rounds = 3: 6 5 4 3 2 1 0 (replaced by) phi_{3,3}: 6 1 2 3 4 5 0
-     * 
-     * rounds = 4: 6 5 4 3 2 1 0 (replaced by) phi_{4,3}: 1 4 3 6 0 2 5
-     * 
-     * rounds = 5: 6 5 4 3 2 1 0 (replaced by) phi_{5,3}: 2 6 0 4 3 1 5
-     * 
-     * @param collectionH
-     *            the data for interim result.
-     * @param w
-     *            the extra value to add.
-     * @param c
-     *            the constant value to add.
-     * @return The value for third permutation.
-     */
-    private Integer ff3(List<Integer> collectionH, int w, Integer c) {
-        Integer t = 0;
-
-        if (getRounds() == 3) {
-            t = f3(collectionH.get(INDEX_6), collectionH.get(INDEX_1),
-                    collectionH.get(INDEX_2), collectionH.get(INDEX_3),
-                    collectionH.get(INDEX_4), collectionH.get(INDEX_5),
-                    collectionH.get(INDEX_0));
-        } else if (getRounds() == 4) {
-            t = f3(collectionH.get(INDEX_1), collectionH.get(INDEX_4),
-                    collectionH.get(INDEX_3), collectionH.get(INDEX_6),
-                    collectionH.get(INDEX_0), collectionH.get(INDEX_2),
-                    collectionH.get(INDEX_5));
-        } else {
-            t = f3(collectionH.get(INDEX_2), collectionH.get(INDEX_6),
-                    collectionH.get(INDEX_0), collectionH.get(INDEX_4),
-                    collectionH.get(INDEX_3), collectionH.get(INDEX_1),
-                    collectionH.get(INDEX_5));
+        if (instrumented) {
+            long blocks = count / BLOCK_SIZE;
+            long padding = blockCount(count) - blocks;
+            HashMetrics.record(this, event, count, blocks + sizes.length
+                    * padding);
         }
+        reset();
 
-        return lastOperationsOfPermutation(t, collectionH.get(INDEX_7), w, c);
-    }
-
-    /**
-     * Permutations phi_{i,j}, i=3,4,5, j=1,...,i.
-     * 
-     * rounds = 4: 6 5 4 3 2 1 0 (replaced by)phi_{4,4}: 6 4 0 5 2 1 3
-     * 
-     * rounds = 5: 6 5 4 3 2 1 0 (replaced by) phi_{5,4}: 1 5 3 2 0 4 6
-     * 
-     * @param collectionH
-     *            the data for interim result.
-     * @param w
-     *            the extra value to add.
-     * @param c
-     *            the constant value to add.
-     * @return The value for fourth permutation.
-     */
-    private Integer ff4(List<Integer> collectionH, int w, Integer c) {
-        Integer t = 0;
-
-        if (getRounds() == 4) {
-            t = f4(collectionH.get(INDEX_6), collectionH.get(INDEX_4),
-                    collectionH.get(INDEX_0), collectionH.get(INDEX_5),
-                    collectionH.get(INDEX_2), collectionH.get(INDEX_1),
-                    collectionH.get(INDEX_3));
-        } else {
-            t = f4(collectionH.get(INDEX_1), collectionH.get(INDEX_5),
-                    collectionH.get(INDEX_3), collectionH.get(INDEX_2),
-                    collectionH.get(INDEX_0), collectionH.get(INDEX_4),
-                    collectionH.get(INDEX_6));
-        }
-
-        return lastOperationsOfPermutation(t, collectionH.get(INDEX_7), w, c);
-    }
-
-    /**
-     * Permutations phi_{i,j}, i=3,4,5, j=1,...,i.
-     * 
-     * rounds = 5: 6 5 4 3 2 1 0 (replaced by) phi_{5,5}: 2 5 0 6 4 3 1
-     * 
-     * @param collectionH
-     *            the data for interim result.
-     * @param w
-     *            the extra value to add.
-     * @param c
-     *            the constant value to add.
-     * @return The value for fifth permutation.
-     */
-    private Integer ff5(List<Integer> collectionH, int w, Integer c) {
-        Integer t = f5(collectionH.get(INDEX_2), collectionH.get(INDEX_5),
-                collectionH.get(INDEX_0), collectionH.get(INDEX_6),
-                collectionH.get(INDEX_4), collectionH.get(INDEX_3),
-                collectionH.get(INDEX_1));
-
-        return lastOperationsOfPermutation(t, collectionH.get(INDEX_7), w, c);
-    }
-
-    /**
-     * This method makes fifth pass for haval transformation.
-     * 
-     * @param xTable
-     *            the table with information for this algorithm.
-     * @param collectionH
-     *            the data for interim result.
-     */
-    private void fifthPass(int[] xTable, List<Integer> collectionH) {
-        int iterator = 4 * 8 * 3;
-
-        for (int index = 0; index < 4 * collectionH.size(); index++) {
-            collectionH.set(
-                    INDEX_7,
-                    ff5(rotate(collectionH, -1),
-                            xTable[WORD_PROCESSING_ORDER_5[index]],
-                            CONSTANTS.get(iterator++)));
-        }
+        return result;
     }
 
     /**
-     * This method makes first pass for haval transformation.
+     * Returns the intermediate state of this instance in a compact, versioned
+     * binary form, which {@link #importState(byte[])} turns back into an
+     * instance. The state holds the format version, the output size, the
+     * number of rounds, the number of bytes processed so far, the chaining
+     * words and the bytes buffered since the last whole block, and ends with
+     * a CRC-32 of all of these; it takes at most 176 bytes. This instance is
+     * left unchanged.
      * 
-     * @param xTable
-     *            the table with information for this algorithm.
-     * @param collectionH
-     *            the data for interim result.
+     * @return the exported state.
      */
-    private void firstPass(int[] xTable, List<Integer> collectionH) {
-        setProperConfiguration(collectionH);
-
-        for (int index = 0; index < 4 * collectionH.size(); index++) {
-            collectionH.set(
-                    INDEX_7,
-                    ff1(rotate(collectionH, -1),
-                            xTable[WORD_PROCESSING_ORDER_1[index]]));
-        }
+    public byte[] exportState() {
+        int n = (int) (count % BLOCK_SIZE);
+        ByteBuffer state = ByteBuffer.allocate(STATE_HEADER_SIZE + n
+                + STATE_TRAILER_SIZE);
+        state.putShort(STATE_MAGIC).put((byte) HAVAL_STATE_VERSION)
+                .put((byte) hashSize()).put((byte) rounds).putLong(count);
+        state.putInt(h0).putInt(h1).putInt(h2).putInt(h3);
+        state.putInt(h4).putInt(h5).putInt(h6).putInt(h7);
+        state.put(buffer, 0, n);
+
+        CRC32 crc = new CRC32();
+        crc.update(state.array(), 0, state.position());
+        state.putInt((int) crc.getValue());
+
+        return state.array();
     }
 
     /**
-     * This method makes fourth pass for haval transformation.
+     * Constructs the result from the contents of the current context. This
+     * method overrides an existing method.
      * 
-     * @param xTable
-     *            the table with information for this algorithm.
-     * @param collectionH
-     *            the data for interim result.
+     * @see com.m4gik.BaseHash#getResult()
      */
-    private void fourthPass(int[] xTable, List<Integer> collectionH) {
-        int iterator = 4 * 8 * 2;
+    @Override
+    protected byte[] getResult() {
+        byte[] result = new byte[hashSize()];
+        getResult(result, 0);
 
-        for (int index = 0; index < 4 * collectionH.size(); index++) {
-            collectionH.set(
-                    INDEX_7,
-                    ff4(rotate(collectionH, -1),
-                            xTable[WORD_PROCESSING_ORDER_4[index]],
-                            CONSTANTS.get(iterator++)));
-        }
+        return result;
     }
 
     /**
-     * Constructs the result from the contents of the current context. This
+     * Writes the result constructed from the contents of the current context
+     * into the given array, least significant byte of each word first. This
      * method overrides an existing method.
      * 
-     * @see com.m4gik.BaseHash#getResult()
+     * @see com.m4gik.BaseHash#getResult(byte[], int)
      */
     @Override
-    protected byte[] getResult() {
+    protected void getResult(byte[] out, int offset) {
 
         // Tailor context for the designated output size cast enough top context
         // values into an array of hashSize bytes
         tailorDigestBits();
 
-        byte[] result = new byte[hashSize()];
-
-        if (hashSize() >= HAVAL_256_BIT) {
-            result[31] = (byte) (h7 >>> 24);
-            result[30] = (byte) (h7 >>> 16);
-            result[29] = (byte) (h7 >>> 8);
-            result[28] = (byte) h7;
-        }
+        putWord(h0, out, offset);
+        putWord(h1, out, offset + 4);
+        putWord(h2, out, offset + 8);
+        putWord(h3, out, offset + 12);
 
-        if (hashSize() >= HAVAL_224_BIT) {
-            result[27] = (byte) (h6 >>> 24);
-            result[26] = (byte) (h6 >>> 16);
-            result[25] = (byte) (h6 >>> 8);
-            result[24] = (byte) h6;
+        if (hashSize() >= HAVAL_160_BIT) {
+            putWord(h4, out, offset + 16);
         }
 
         if (hashSize() >= HAVAL_192_BIT) {
-            result[23] = (byte) (h5 >>> 24);
-            result[22] = (byte) (h5 >>> 16);
-            result[21] = (byte) (h5 >>> 8);
-            result[20] = (byte) h5;
+            putWord(h5, out, offset + 20);
         }
 
-        if (hashSize() >= HAVAL_160_BIT) {
-            result[19] = (byte) (h4 >>> 24);
-            result[18] = (byte) (h4 >>> 16);
-            result[17] = (byte) (h4 >>> 8);
-            result[16] = (byte) h4;
+        if (hashSize() >= HAVAL_224_BIT) {
+            putWord(h6, out, offset + 24);
         }
 
-        result[15] = (byte) (h3 >>> 24);
-        result[14] = (byte) (h3 >>> 16);
-        result[13] = (byte) (h3 >>> 8);
-        result[12] = (byte) h3;
-
-        result[11] = (byte) (h2 >>> 24);
-        result[10] = (byte) (h2 >>> 16);
-        result[9] = (byte) (h2 >>> 8);
-        result[8] = (byte) h2;
-
-        result[7] = (byte) (h1 >>> 24);
-        result[6] = (byte) (h1 >>> 16);
-        result[5] = (byte) (h1 >>> 8);
-        result[4] = (byte) h1;
-
-        result[3] = (byte) (h0 >>> 24);
-        result[2] = (byte) (h0 >>> 16);
-        result[1] = (byte) (h0 >>> 8);
-        result[0] = (byte) h0;
-
-        return result;
+        if (hashSize() >= HAVAL_256_BIT) {
+            putWord(h7, out, offset + 28);
+        }
     }
 
     /**
@@ -599,28 +873,11 @@ public class Haval extends BaseHash {
      * 
      * @return the rounds
      */
+    @Override
     public int getRounds() {
         return rounds;
     }
 
-    /**
-     * This method makes final operation for permutation.
-     * 
-     * @param t
-     *            the computed value during permutation.
-     * @param x7
-     *            the last index of collection of h values.
-     * @param w
-     *            the extra value to add.
-     * @param c
-     *            the constant value to add.
-     * @return the final value of current permutation.
-     */
-    private Integer lastOperationsOfPermutation(Integer t, Integer x7, int w,
-            int c) {
-        return (t >>> 7 | t << 25) + (x7 >>> 11 | x7 << 21) + w + c;
-    }
-
     /**
      * Returns the byte array to use as padding before completing a hash
      * operation. This method overrides an existing method. HAVAL also uses a
@@ -670,6 +927,64 @@ public class Haval extends BaseHash {
         return checkPadBufferSize(result, padding);
     }
 
+    /**
+     * Pads the remaining bytes straight into the buffer, in the same way as
+     * {@link #padBuffer()}, and transforms the last block, or the last two
+     * blocks when the remaining bytes leave no room for the 10 special bytes.
+     * Nothing is allocated. This method overrides an existing method.
+     * 
+     * @see com.m4gik.BaseHash#padInBuffer()
+     */
+    @Override
+    protected void padInBuffer() {
+        byte[] buffer = this.buffer;
+        int n = (int) (count % BLOCK_SIZE);
+        buffer[n++] = (byte) 0x01;
+        if (n > 118) {
+            while (n < BLOCK_SIZE) {
+                buffer[n++] = 0;
+            }
+
+            transform(buffer, 0);
+            n = 0;
+        }
+
+        while (n < 118) {
+            buffer[n++] = 0;
+        }
+
+        int bl = hashSize() * 8;
+        int sigByte = (bl & 0x03) << 6;
+        sigByte |= (getRounds() & 0x07) << 3;
+        sigByte |= HAVAL_VERSION & 0x07;
+        buffer[n++] = (byte) sigByte;
+        buffer[n++] = (byte) (bl >>> 2);
+
+        long bits = count << 3;
+        for (int j = 0; n < BLOCK_SIZE; n++, j++) {
+            buffer[n] = (byte) (bits >>> (j * 8));
+        }
+
+        transform(buffer, 0);
+    }
+
+    /**
+     * Writes a word into the given array, least significant byte first.
+     * 
+     * @param word
+     *            the word to write.
+     * @param out
+     *            the array which receives the word.
+     * @param offset
+     *            the index in <code>out</code> of the first byte of the word.
+     */
+    private static void putWord(int word, byte[] out, int offset) {
+        out[offset] = (byte) word;
+        out[offset + 1] = (byte) (word >>> 8);
+        out[offset + 2] = (byte) (word >>> 16);
+        out[offset + 3] = (byte) (word >>> 24);
+    }
+
     /**
      * Resets the instance for future re-use. This method overrides an existing
      * method.
@@ -688,56 +1003,6 @@ public class Haval extends BaseHash {
         h7 = 0xEC4E6C89;
     }
 
-    /**
-     * Rotates the elements in the specified list by the specified distance.
-     * After calling this method, the element at index i will be the element
-     * previously at index (i - distance) mod list.size(), for all values of i
-     * between 0 and list.size()-1, inclusive. (This method has no effect on the
-     * size of the list.)
-     * 
-     * @param <T>
-     * 
-     * @param collection
-     *            the array to rotate.
-     * @param index
-     *            the distance to rotate.
-     */
-    private <T> List<T> rotate(List<T> collection, int index) {
-        Collections.rotate(collection, index);
-        return collection;
-    }
-
-    /**
-     * This method makes second pass for haval transformation.
-     * 
-     * @param xTable
-     *            the table with information for this algorithm.
-     * @param collectionH
-     *            the data for interim result.
-     */
-    private void secondPass(int[] xTable, List<Integer> collectionH) {
-        int iterator = 0;
-
-        for (int index = 0; index < 4 * collectionH.size(); index++) {
-            collectionH.set(
-                    INDEX_7,
-                    ff2(rotate(collectionH, -1),
-                            xTable[WORD_PROCESSING_ORDER_2[index]],
-                            CONSTANTS.get(iterator++)));
-        }
-    }
-
-    /**
-     * This method sets collection in proper order.
-     * 
-     * @param collectionH
-     *            the collection to configuration.
-     */
-    private void setProperConfiguration(List<Integer> collectionH) {
-        Collections.reverse(collectionH);
-        rotate(collectionH, 1);
-    }
-
     /**
      * This method sets number of rounds for {@link Haval} algorithm.
      * 
@@ -745,6 +1010,7 @@ public class Haval extends BaseHash {
      *            the rounds to set
      */
     public void setRounds(int rounds) {
+        this.engine = HavalEngine.forRounds(rounds);
         this.rounds = rounds;
     }
 
@@ -752,7 +1018,7 @@ public class Haval extends BaseHash {
      * Tailors the last output.
      */
     private void tailorDigestBits() {
-        Integer t = 0;
+        int t;
 
         if (hashSize() == HAVAL_128_BIT) {
             t = (h7 & 0x000000FF) | (h6 & 0xFF000000) | (h5 & 0x00FF0000)
@@ -808,26 +1074,6 @@ public class Haval extends BaseHash {
         }
     }
 
-    /**
-     * This method makes third pass for haval transformation.
-     * 
-     * @param xTable
-     *            the table with information for this algorithm.
-     * @param collectionH
-     *            the data for interim result.
-     */
-    private void thirdPass(int[] xTable, List<Integer> collectionH) {
-        int iterator = 4 * 8;
-
-        for (int index = 0; index < 4 * collectionH.size(); index++) {
-            collectionH.set(
-                    INDEX_7,
-                    ff3(rotate(collectionH, -1),
-                            xTable[WORD_PROCESSING_ORDER_3[index]],
-                            CONSTANTS.get(iterator++)));
-        }
-    }
-
     /**
      * The updating algorithm H processes a block in 3, 4 or 5 passes, which is
      * specified by the 3-bit field PASS in the last block. This method
@@ -857,40 +1103,146 @@ public class Haval extends BaseHash {
      * 1BFEDF72 429B023D 37D0D724 D00A1248 DB0FEAD3 49F1C09B 075372C9 80991B7B
      * 25D479D8 F6E8DEF7 E3FE501A B6794C3B 976CE0BD 04C006BA C1A94FB6 409F60C4
      * 
+     * The block is decoded into its 32 words and handed to the
+     * {@link HavalEngine} of the current number of rounds, which keeps the
+     * chaining words in local variables and has every step written out in
+     * sequence, with the word processing order, the constant and the phi
+     * permutation of the step inlined.
      * 
      * @see com.m4gik.BaseHash#transform(byte[], int)
      */
     @Override
-    protected synchronized void transform(byte[] in, int offset) {
-        List<Integer> collectionH = Arrays.asList(h0, h1, h2, h3, h4, h5, h6,
-                h7);
-        int[] XTable = new int[32];
+    protected void transform(byte[] in, int offset) {
+        int[] x = this.x;
 
         for (int i = 0; i < 32; i++) {
-            XTable[i] = (in[offset++] & 0xFF) | (in[offset++] & 0xFF) << 8
+            x[i] = (in[offset++] & 0xFF) | (in[offset++] & 0xFF) << 8
                     | (in[offset++] & 0xFF) << 16 | (in[offset++] & 0xFF) << 24;
         }
 
-        firstPass(XTable, collectionH);
-        secondPass(XTable, collectionH);
-        thirdPass(XTable, collectionH);
-        if (getRounds() >= 4) {
-            fourthPass(XTable, collectionH);
-            if (getRounds() == 5) {
-                fifthPass(XTable, collectionH);
+        engine.transform(this, x);
+    }
+
+    /**
+     * Transforms a block read straight from the given buffer, one word at a
+     * time, whatever the byte order of the buffer is and without copying the
+     * block out of it first. This method overrides an existing method.
+     * 
+     * @see com.m4gik.BaseHash#transform(java.nio.ByteBuffer, int)
+     */
+    @Override
+    protected void transform(ByteBuffer in, int offset) {
+        int[] x = this.x;
+
+        if (in.order() == ByteOrder.LITTLE_ENDIAN) {
+            for (int i = 0; i < 32; i++, offset += 4) {
+                x[i] = in.getInt(offset);
+            }
+        } else {
+            for (int i = 0; i < 32; i++, offset += 4) {
+                x[i] = Integer.reverseBytes(in.getInt(offset));
             }
         }
 
-        rotate(collectionH, -1);
+        engine.transform(this, x);
+    }
 
-        h7 += collectionH.get(INDEX_7);
-        h6 += collectionH.get(INDEX_6);
-        h5 += collectionH.get(INDEX_5);
-        h4 += collectionH.get(INDEX_4);
-        h3 += collectionH.get(INDEX_3);
-        h2 += collectionH.get(INDEX_2);
-        h1 += collectionH.get(INDEX_1);
-        h0 += collectionH.get(INDEX_0);
+    /**
+     * The hashing of consecutive inputs of a batch, either arrays or buffers.
+     */
+    private static final class HashAllTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The inputs given as arrays, or <code>null</code>.
+         */
+        private final List<byte[]> arrays;
+
+        /**
+         * The inputs given as buffers, or <code>null</code>.
+         */
+        private final ByteBuffer[] buffers;
+
+        /**
+         * The index of the first input of this task.
+         */
+        private int from;
+
+        /**
+         * The digests of the batch.
+         */
+        private byte[] out;
+
+        /**
+         * The number of rounds of the digests.
+         */
+        private final int rounds;
+
+        /**
+         * The output size of the digests.
+         */
+        private final int size;
+
+        /**
+         * The index after the last input of this task.
+         */
+        private int to;
+
+        private HashAllTask(List<byte[]> arrays, ByteBuffer[] buffers,
+                int size, int rounds) {
+            this.arrays = arrays;
+            this.buffers = buffers;
+            this.size = size;
+            this.rounds = rounds;
+        }
 
+        private HashAllTask chunk(int from, int to, byte[] out) {
+            HashAllTask task = new HashAllTask(arrays, buffers, size, rounds);
+            task.from = from;
+            task.to = to;
+            task.out = out;
+
+            return task;
+        }
+
+        @Override
+        protected void compute() {
+            Haval haval = threadInstance(size, rounds);
+            try {
+                for (int i = from; i < to; i++) {
+                    if (arrays != null) {
+                        haval.update(arrays.get(i));
+                    } else {
+                        haval.update(buffers[i].duplicate());
+                    }
+
+                    haval.digest(out, i * size);
+                }
+            } catch (RuntimeException e) {
+                haval.reset();
+                throw e;
+            }
+        }
+
+        /**
+         * Returns the length of an input, and checks it is not null.
+         * 
+         * @param i
+         *            the index of the input.
+         * @return the number of bytes of the input.
+         * @throws IllegalArgumentException
+         *             if the input is null.
+         */
+        private int length(int i) {
+            Object input = arrays != null ? arrays.get(i) : buffers[i];
+            if (input == null) {
+                throw new IllegalArgumentException(
+                        "inputs cannot contain null");
+            }
+
+            return arrays != null ? arrays.get(i).length : buffers[i]
+                    .remaining();
+        }
     }
 }
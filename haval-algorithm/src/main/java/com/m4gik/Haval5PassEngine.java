@@ -0,0 +1,247 @@
+package com.m4gik;
+
+/**
+ * The 5-pass {@link HavalEngine}, with the permutations phi_{5,1} to
+ * phi_{5,5} fixed in its steps.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+final class Haval5PassEngine extends HavalEngine {
+
+    /**
+     * Permutation phi_{5,1}: 6 5 4 3 2 1 0 (replaced by) 3 4 1 0 5 2 6
+     * 
+     * @return The value for first permutation.
+     */
+    private static int ff1(int x7, int x6, int x5, int x4, int x3,
+            int x2, int x1, int x0, int w) {
+        return step(f1(x3, x4, x1, x0, x5, x2, x6), x7, w, 0);
+    }
+
+    /**
+     * Permutation phi_{5,2}: 6 5 4 3 2 1 0 (replaced by) 6 2 1 0 3 4 5
+     * 
+     * @return The value for second permutation.
+     */
+    private static int ff2(int x7, int x6, int x5, int x4, int x3,
+            int x2, int x1, int x0, int w, int c) {
+        return step(f2(x6, x2, x1, x0, x3, x4, x5), x7, w, c);
+    }
+
+    /**
+     * Permutation phi_{5,3}: 6 5 4 3 2 1 0 (replaced by) 2 6 0 4 3 1 5
+     * 
+     * @return The value for third permutation.
+     */
+    private static int ff3(int x7, int x6, int x5, int x4, int x3,
+            int x2, int x1, int x0, int w, int c) {
+        return step(f3(x2, x6, x0, x4, x3, x1, x5), x7, w, c);
+    }
+
+    /**
+     * Permutation phi_{5,4}: 6 5 4 3 2 1 0 (replaced by) 1 5 3 2 0 4 6
+     * 
+     * @return The value for fourth permutation.
+     */
+    private static int ff4(int x7, int x6, int x5, int x4, int x3,
+            int x2, int x1, int x0, int w, int c) {
+        return step(f4(x1, x5, x3, x2, x0, x4, x6), x7, w, c);
+    }
+
+    /**
+     * Permutation phi_{5,5}: 6 5 4 3 2 1 0 (replaced by) 2 5 0 6 4 3 1
+     * 
+     * @return The value for fifth permutation.
+     */
+    private static int ff5(int x7, int x6, int x5, int x4, int x3,
+            int x2, int x1, int x0, int w, int c) {
+        return step(f5(x2, x5, x0, x6, x4, x3, x1), x7, w, c);
+    }
+
+    @Override
+    void transform(Haval context, int[] x) {
+        int t0 = context.h0, t1 = context.h1, t2 = context.h2;
+        int t3 = context.h3, t4 = context.h4, t5 = context.h5;
+        int t6 = context.h6, t7 = context.h7;
+
+        // First pass
+        t7 = ff1(t7, t6, t5, t4, t3, t2, t1, t0, x[0]);
+        t6 = ff1(t6, t5, t4, t3, t2, t1, t0, t7, x[1]);
+        t5 = ff1(t5, t4, t3, t2, t1, t0, t7, t6, x[2]);
+        t4 = ff1(t4, t3, t2, t1, t0, t7, t6, t5, x[3]);
+        t3 = ff1(t3, t2, t1, t0, t7, t6, t5, t4, x[4]);
+        t2 = ff1(t2, t1, t0, t7, t6, t5, t4, t3, x[5]);
+        t1 = ff1(t1, t0, t7, t6, t5, t4, t3, t2, x[6]);
+        t0 = ff1(t0, t7, t6, t5, t4, t3, t2, t1, x[7]);
+        t7 = ff1(t7, t6, t5, t4, t3, t2, t1, t0, x[8]);
+        t6 = ff1(t6, t5, t4, t3, t2, t1, t0, t7, x[9]);
+        t5 = ff1(t5, t4, t3, t2, t1, t0, t7, t6, x[10]);
+        t4 = ff1(t4, t3, t2, t1, t0, t7, t6, t5, x[11]);
+        t3 = ff1(t3, t2, t1, t0, t7, t6, t5, t4, x[12]);
+        t2 = ff1(t2, t1, t0, t7, t6, t5, t4, t3, x[13]);
+        t1 = ff1(t1, t0, t7, t6, t5, t4, t3, t2, x[14]);
+        t0 = ff1(t0, t7, t6, t5, t4, t3, t2, t1, x[15]);
+        t7 = ff1(t7, t6, t5, t4, t3, t2, t1, t0, x[16]);
+        t6 = ff1(t6, t5, t4, t3, t2, t1, t0, t7, x[17]);
+        t5 = ff1(t5, t4, t3, t2, t1, t0, t7, t6, x[18]);
+        t4 = ff1(t4, t3, t2, t1, t0, t7, t6, t5, x[19]);
+        t3 = ff1(t3, t2, t1, t0, t7, t6, t5, t4, x[20]);
+        t2 = ff1(t2, t1, t0, t7, t6, t5, t4, t3, x[21]);
+        t1 = ff1(t1, t0, t7, t6, t5, t4, t3, t2, x[22]);
+        t0 = ff1(t0, t7, t6, t5, t4, t3, t2, t1, x[23]);
+        t7 = ff1(t7, t6, t5, t4, t3, t2, t1, t0, x[24]);
+        t6 = ff1(t6, t5, t4, t3, t2, t1, t0, t7, x[25]);
+        t5 = ff1(t5, t4, t3, t2, t1, t0, t7, t6, x[26]);
+        t4 = ff1(t4, t3, t2, t1, t0, t7, t6, t5, x[27]);
+        t3 = ff1(t3, t2, t1, t0, t7, t6, t5, t4, x[28]);
+        t2 = ff1(t2, t1, t0, t7, t6, t5, t4, t3, x[29]);
+        t1 = ff1(t1, t0, t7, t6, t5, t4, t3, t2, x[30]);
+        t0 = ff1(t0, t7, t6, t5, t4, t3, t2, t1, x[31]);
+
+        // Second pass
+        t7 = ff2(t7, t6, t5, t4, t3, t2, t1, t0, x[5], 0x452821E6);
+        t6 = ff2(t6, t5, t4, t3, t2, t1, t0, t7, x[14], 0x38D01377);
+        t5 = ff2(t5, t4, t3, t2, t1, t0, t7, t6, x[26], 0xBE5466CF);
+        t4 = ff2(t4, t3, t2, t1, t0, t7, t6, t5, x[18], 0x34E90C6C);
+        t3 = ff2(t3, t2, t1, t0, t7, t6, t5, t4, x[11], 0xC0AC29B7);
+        t2 = ff2(t2, t1, t0, t7, t6, t5, t4, t3, x[28], 0xC97C50DD);
+        t1 = ff2(t1, t0, t7, t6, t5, t4, t3, t2, x[7], 0x3F84D5B5);
+        t0 = ff2(t0, t7, t6, t5, t4, t3, t2, t1, x[16], 0xB5470917);
+        t7 = ff2(t7, t6, t5, t4, t3, t2, t1, t0, x[0], 0x9216D5D9);
+        t6 = ff2(t6, t5, t4, t3, t2, t1, t0, t7, x[23], 0x8979FB1B);
+        t5 = ff2(t5, t4, t3, t2, t1, t0, t7, t6, x[20], 0xD1310BA6);
+        t4 = ff2(t4, t3, t2, t1, t0, t7, t6, t5, x[22], 0x98DFB5AC);
+        t3 = ff2(t3, t2, t1, t0, t7, t6, t5, t4, x[1], 0x2FFD72DB);
+        t2 = ff2(t2, t1, t0, t7, t6, t5, t4, t3, x[10], 0xD01ADFB7);
+        t1 = ff2(t1, t0, t7, t6, t5, t4, t3, t2, x[4], 0xB8E1AFED);
+        t0 = ff2(t0, t7, t6, t5, t4, t3, t2, t1, x[8], 0x6A267E96);
+        t7 = ff2(t7, t6, t5, t4, t3, t2, t1, t0, x[30], 0xBA7C9045);
+        t6 = ff2(t6, t5, t4, t3, t2, t1, t0, t7, x[3], 0xF12C7F99);
+        t5 = ff2(t5, t4, t3, t2, t1, t0, t7, t6, x[21], 0x24A19947);
+        t4 = ff2(t4, t3, t2, t1, t0, t7, t6, t5, x[9], 0xB3916CF7);
+        t3 = ff2(t3, t2, t1, t0, t7, t6, t5, t4, x[17], 0x0801F2E2);
+        t2 = ff2(t2, t1, t0, t7, t6, t5, t4, t3, x[24], 0x858EFC16);
+        t1 = ff2(t1, t0, t7, t6, t5, t4, t3, t2, x[29], 0x636920D8);
+        t0 = ff2(t0, t7, t6, t5, t4, t3, t2, t1, x[6], 0x71574E69);
+        t7 = ff2(t7, t6, t5, t4, t3, t2, t1, t0, x[19], 0xA458FEA3);
+        t6 = ff2(t6, t5, t4, t3, t2, t1, t0, t7, x[12], 0xF4933D7E);
+        t5 = ff2(t5, t4, t3, t2, t1, t0, t7, t6, x[15], 0x0D95748F);
+        t4 = ff2(t4, t3, t2, t1, t0, t7, t6, t5, x[13], 0x728EB658);
+        t3 = ff2(t3, t2, t1, t0, t7, t6, t5, t4, x[2], 0x718BCD58);
+        t2 = ff2(t2, t1, t0, t7, t6, t5, t4, t3, x[25], 0x82154AEE);
+        t1 = ff2(t1, t0, t7, t6, t5, t4, t3, t2, x[31], 0x7B54A41D);
+        t0 = ff2(t0, t7, t6, t5, t4, t3, t2, t1, x[27], 0xC25A59B5);
+
+        // Third pass
+        t7 = ff3(t7, t6, t5, t4, t3, t2, t1, t0, x[19], 0x9C30D539);
+        t6 = ff3(t6, t5, t4, t3, t2, t1, t0, t7, x[9], 0x2AF26013);
+        t5 = ff3(t5, t4, t3, t2, t1, t0, t7, t6, x[4], 0xC5D1B023);
+        t4 = ff3(t4, t3, t2, t1, t0, t7, t6, t5, x[20], 0x286085F0);
+        t3 = ff3(t3, t2, t1, t0, t7, t6, t5, t4, x[28], 0xCA417918);
+        t2 = ff3(t2, t1, t0, t7, t6, t5, t4, t3, x[17], 0xB8DB38EF);
+        t1 = ff3(t1, t0, t7, t6, t5, t4, t3, t2, x[8], 0x8E79DCB0);
+        t0 = ff3(t0, t7, t6, t5, t4, t3, t2, t1, x[22], 0x603A180E);
+        t7 = ff3(t7, t6, t5, t4, t3, t2, t1, t0, x[29], 0x6C9E0E8B);
+        t6 = ff3(t6, t5, t4, t3, t2, t1, t0, t7, x[14], 0xB01E8A3E);
+        t5 = ff3(t5, t4, t3, t2, t1, t0, t7, t6, x[25], 0xD71577C1);
+        t4 = ff3(t4, t3, t2, t1, t0, t7, t6, t5, x[12], 0xBD314B27);
+        t3 = ff3(t3, t2, t1, t0, t7, t6, t5, t4, x[24], 0x78AF2FDA);
+        t2 = ff3(t2, t1, t0, t7, t6, t5, t4, t3, x[30], 0x55605C60);
+        t1 = ff3(t1, t0, t7, t6, t5, t4, t3, t2, x[16], 0xE65525F3);
+        t0 = ff3(t0, t7, t6, t5, t4, t3, t2, t1, x[26], 0xAA55AB94);
+        t7 = ff3(t7, t6, t5, t4, t3, t2, t1, t0, x[31], 0x57489862);
+        t6 = ff3(t6, t5, t4, t3, t2, t1, t0, t7, x[15], 0x63E81440);
+        t5 = ff3(t5, t4, t3, t2, t1, t0, t7, t6, x[7], 0x55CA396A);
+        t4 = ff3(t4, t3, t2, t1, t0, t7, t6, t5, x[3], 0x2AAB10B6);
+        t3 = ff3(t3, t2, t1, t0, t7, t6, t5, t4, x[1], 0xB4CC5C34);
+        t2 = ff3(t2, t1, t0, t7, t6, t5, t4, t3, x[0], 0x1141E8CE);
+        t1 = ff3(t1, t0, t7, t6, t5, t4, t3, t2, x[18], 0xA15486AF);
+        t0 = ff3(t0, t7, t6, t5, t4, t3, t2, t1, x[27], 0x7C72E993);
+        t7 = ff3(t7, t6, t5, t4, t3, t2, t1, t0, x[13], 0xB3EE1411);
+        t6 = ff3(t6, t5, t4, t3, t2, t1, t0, t7, x[6], 0x636FBC2A);
+        t5 = ff3(t5, t4, t3, t2, t1, t0, t7, t6, x[21], 0x2BA9C55D);
+        t4 = ff3(t4, t3, t2, t1, t0, t7, t6, t5, x[10], 0x741831F6);
+        t3 = ff3(t3, t2, t1, t0, t7, t6, t5, t4, x[23], 0xCE5C3E16);
+        t2 = ff3(t2, t1, t0, t7, t6, t5, t4, t3, x[11], 0x9B87931E);
+        t1 = ff3(t1, t0, t7, t6, t5, t4, t3, t2, x[5], 0xAFD6BA33);
+        t0 = ff3(t0, t7, t6, t5, t4, t3, t2, t1, x[2], 0x6C24CF5C);
+
+        // Fourth pass
+        t7 = ff4(t7, t6, t5, t4, t3, t2, t1, t0, x[24], 0x7A325381);
+        t6 = ff4(t6, t5, t4, t3, t2, t1, t0, t7, x[4], 0x28958677);
+        t5 = ff4(t5, t4, t3, t2, t1, t0, t7, t6, x[0], 0x3B8F4898);
+        t4 = ff4(t4, t3, t2, t1, t0, t7, t6, t5, x[14], 0x6B4BB9AF);
+        t3 = ff4(t3, t2, t1, t0, t7, t6, t5, t4, x[2], 0xC4BFE81B);
+        t2 = ff4(t2, t1, t0, t7, t6, t5, t4, t3, x[7], 0x66282193);
+        t1 = ff4(t1, t0, t7, t6, t5, t4, t3, t2, x[28], 0x61D809CC);
+        t0 = ff4(t0, t7, t6, t5, t4, t3, t2, t1, x[23], 0xFB21A991);
+        t7 = ff4(t7, t6, t5, t4, t3, t2, t1, t0, x[26], 0x487CAC60);
+        t6 = ff4(t6, t5, t4, t3, t2, t1, t0, t7, x[6], 0x5DEC8032);
+        t5 = ff4(t5, t4, t3, t2, t1, t0, t7, t6, x[30], 0xEF845D5D);
+        t4 = ff4(t4, t3, t2, t1, t0, t7, t6, t5, x[20], 0xE98575B1);
+        t3 = ff4(t3, t2, t1, t0, t7, t6, t5, t4, x[18], 0xDC262302);
+        t2 = ff4(t2, t1, t0, t7, t6, t5, t4, t3, x[25], 0xEB651B88);
+        t1 = ff4(t1, t0, t7, t6, t5, t4, t3, t2, x[19], 0x23893E81);
+        t0 = ff4(t0, t7, t6, t5, t4, t3, t2, t1, x[3], 0xD396ACC5);
+        t7 = ff4(t7, t6, t5, t4, t3, t2, t1, t0, x[22], 0x0F6D6FF3);
+        t6 = ff4(t6, t5, t4, t3, t2, t1, t0, t7, x[11], 0x83F44239);
+        t5 = ff4(t5, t4, t3, t2, t1, t0, t7, t6, x[31], 0x2E0B4482);
+        t4 = ff4(t4, t3, t2, t1, t0, t7, t6, t5, x[21], 0xA4842004);
+        t3 = ff4(t3, t2, t1, t0, t7, t6, t5, t4, x[8], 0x69C8F04A);
+        t2 = ff4(t2, t1, t0, t7, t6, t5, t4, t3, x[27], 0x9E1F9B5E);
+        t1 = ff4(t1, t0, t7, t6, t5, t4, t3, t2, x[12], 0x21C66842);
+        t0 = ff4(t0, t7, t6, t5, t4, t3, t2, t1, x[9], 0xF6E96C9A);
+        t7 = ff4(t7, t6, t5, t4, t3, t2, t1, t0, x[1], 0x670C9C61);
+        t6 = ff4(t6, t5, t4, t3, t2, t1, t0, t7, x[29], 0xABD388F0);
+        t5 = ff4(t5, t4, t3, t2, t1, t0, t7, t6, x[5], 0x6A51A0D2);
+        t4 = ff4(t4, t3, t2, t1, t0, t7, t6, t5, x[15], 0xD8542F68);
+        t3 = ff4(t3, t2, t1, t0, t7, t6, t5, t4, x[17], 0x960FA728);
+        t2 = ff4(t2, t1, t0, t7, t6, t5, t4, t3, x[10], 0xAB5133A3);
+        t1 = ff4(t1, t0, t7, t6, t5, t4, t3, t2, x[16], 0x6EEF0B6C);
+        t0 = ff4(t0, t7, t6, t5, t4, t3, t2, t1, x[13], 0x137A3BE4);
+
+        // Fifth pass
+        t7 = ff5(t7, t6, t5, t4, t3, t2, t1, t0, x[27], 0xBA3BF050);
+        t6 = ff5(t6, t5, t4, t3, t2, t1, t0, t7, x[3], 0x7EFB2A98);
+        t5 = ff5(t5, t4, t3, t2, t1, t0, t7, t6, x[21], 0xA1F1651D);
+        t4 = ff5(t4, t3, t2, t1, t0, t7, t6, t5, x[26], 0x39AF0176);
+        t3 = ff5(t3, t2, t1, t0, t7, t6, t5, t4, x[17], 0x66CA593E);
+        t2 = ff5(t2, t1, t0, t7, t6, t5, t4, t3, x[11], 0x82430E88);
+        t1 = ff5(t1, t0, t7, t6, t5, t4, t3, t2, x[20], 0x8CEE8619);
+        t0 = ff5(t0, t7, t6, t5, t4, t3, t2, t1, x[29], 0x456F9FB4);
+        t7 = ff5(t7, t6, t5, t4, t3, t2, t1, t0, x[19], 0x7D84A5C3);
+        t6 = ff5(t6, t5, t4, t3, t2, t1, t0, t7, x[0], 0x3B8B5EBE);
+        t5 = ff5(t5, t4, t3, t2, t1, t0, t7, t6, x[12], 0xE06F75D8);
+        t4 = ff5(t4, t3, t2, t1, t0, t7, t6, t5, x[7], 0x85C12073);
+        t3 = ff5(t3, t2, t1, t0, t7, t6, t5, t4, x[13], 0x401A449F);
+        t2 = ff5(t2, t1, t0, t7, t6, t5, t4, t3, x[8], 0x56C16AA6);
+        t1 = ff5(t1, t0, t7, t6, t5, t4, t3, t2, x[31], 0x4ED3AA62);
+        t0 = ff5(t0, t7, t6, t5, t4, t3, t2, t1, x[10], 0x363F7706);
+        t7 = ff5(t7, t6, t5, t4, t3, t2, t1, t0, x[5], 0x1BFEDF72);
+        t6 = ff5(t6, t5, t4, t3, t2, t1, t0, t7, x[9], 0x429B023D);
+        t5 = ff5(t5, t4, t3, t2, t1, t0, t7, t6, x[14], 0x37D0D724);
+        t4 = ff5(t4, t3, t2, t1, t0, t7, t6, t5, x[30], 0xD00A1248);
+        t3 = ff5(t3, t2, t1, t0, t7, t6, t5, t4, x[18], 0xDB0FEAD3);
+        t2 = ff5(t2, t1, t0, t7, t6, t5, t4, t3, x[6], 0x49F1C09B);
+        t1 = ff5(t1, t0, t7, t6, t5, t4, t3, t2, x[28], 0x075372C9);
+        t0 = ff5(t0, t7, t6, t5, t4, t3, t2, t1, x[24], 0x80991B7B);
+        t7 = ff5(t7, t6, t5, t4, t3, t2, t1, t0, x[2], 0x25D479D8);
+        t6 = ff5(t6, t5, t4, t3, t2, t1, t0, t7, x[23], 0xF6E8DEF7);
+        t5 = ff5(t5, t4, t3, t2, t1, t0, t7, t6, x[16], 0xE3FE501A);
+        t4 = ff5(t4, t3, t2, t1, t0, t7, t6, t5, x[22], 0xB6794C3B);
+        t3 = ff5(t3, t2, t1, t0, t7, t6, t5, t4, x[4], 0x976CE0BD);
+        t2 = ff5(t2, t1, t0, t7, t6, t5, t4, t3, x[1], 0x04C006BA);
+        t1 = ff5(t1, t0, t7, t6, t5, t4, t3, t2, x[25], 0xC1A94FB6);
+        t0 = ff5(t0, t7, t6, t5, t4, t3, t2, t1, x[15], 0x409F60C4);
+
+        context.h7 += t7;
+        context.h6 += t6;
+        context.h5 += t5;
+        context.h4 += t4;
+        context.h3 += t3;
+        context.h2 += t2;
+        context.h1 += t1;
+        context.h0 += t0;
+    }
+}
@@ -96,6 +96,11 @@ public class HavalAttributes {
      */
     public static final String HAVAL_NAME = "haval";
 
+    /**
+     * The value specify the version of the format of exported states.
+     */
+    public static final int HAVAL_STATE_VERSION = 1;
+
     /**
      * The value specify the version of algorithm.
      */
@@ -0,0 +1,106 @@
+package com.m4gik;
+
+import static com.m4gik.HavalAttributes.HAVAL_3_ROUND;
+import static com.m4gik.HavalAttributes.HAVAL_4_ROUND;
+import static com.m4gik.HavalAttributes.HAVAL_5_ROUND;
+
+/**
+ * The compression function of {@link Haval} for one fixed number of passes.
+ * Each implementation has the phi permutations of its pass count written
+ * into its steps, so a {@link Haval} instance picks its engine once, when
+ * the number of rounds is set, and the transformation of a block does not
+ * test the number of rounds at all.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+abstract class HavalEngine {
+
+    /**
+     * The engine for 3 passes.
+     */
+    private static final HavalEngine THREE_PASS = new Haval3PassEngine();
+
+    /**
+     * The engine for 4 passes.
+     */
+    private static final HavalEngine FOUR_PASS = new Haval4PassEngine();
+
+    /**
+     * The engine for 5 passes.
+     */
+    private static final HavalEngine FIVE_PASS = new Haval5PassEngine();
+
+    static int f1(int x6, int x5, int x4, int x3, int x2, int x1, int x0) {
+        return x1 & (x0 ^ x4) ^ x2 & x5 ^ x3 & x6 ^ x0;
+    }
+
+    static int f2(int x6, int x5, int x4, int x3, int x2, int x1, int x0) {
+        return x2 & (x1 & ~x3 ^ x4 & x5 ^ x6 ^ x0) ^ x4 & (x1 ^ x5) ^ x3 & x5
+                ^ x0;
+    }
+
+    static int f3(int x6, int x5, int x4, int x3, int x2, int x1, int x0) {
+        return x3 & (x1 & x2 ^ x6 ^ x0) ^ x1 & x4 ^ x2 & x5 ^ x0;
+    }
+
+    static int f4(int x6, int x5, int x4, int x3, int x2, int x1, int x0) {
+        return x4 & (x5 & ~x2 ^ x3 & ~x6 ^ x1 ^ x6 ^ x0) ^ x3
+                & (x1 & x2 ^ x5 ^ x6) ^ x2 & x6 ^ x0;
+    }
+
+    static int f5(int x6, int x5, int x4, int x3, int x2, int x1, int x0) {
+        return x0 & (x1 & x2 & x3 ^ ~x5) ^ x1 & x4 ^ x2 & x5 ^ x3 & x6;
+    }
+
+    /**
+     * Returns the engine for the given number of rounds.
+     * 
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @return the engine which transforms blocks in <code>rounds</code>
+     *         passes.
+     * @throws IllegalArgumentException
+     *             if the number of rounds is invalid.
+     */
+    static HavalEngine forRounds(int rounds) throws IllegalArgumentException {
+        switch (rounds) {
+        case HAVAL_3_ROUND:
+            return THREE_PASS;
+        case HAVAL_4_ROUND:
+            return FOUR_PASS;
+        case HAVAL_5_ROUND:
+            return FIVE_PASS;
+        default:
+            throw new IllegalArgumentException("Invalid HAVAL number of rounds");
+        }
+    }
+
+    /**
+     * This method makes final operation for permutation.
+     * 
+     * @param t
+     *            the computed value during permutation.
+     * @param x7
+     *            the chaining word replaced by the step.
+     * @param w
+     *            the extra value to add.
+     * @param c
+     *            the constant value to add.
+     * @return the final value of current permutation.
+     */
+    static int step(int t, int x7, int w, int c) {
+        return (t >>> 7 | t << 25) + (x7 >>> 11 | x7 << 21) + w + c;
+    }
+
+    /**
+     * Transforms one block, updating the chaining words <code>h0</code> to
+     * <code>h7</code> of the given context.
+     * 
+     * @param context
+     *            the instance whose chaining words are updated.
+     * @param x
+     *            the 32 words of the block to transform.
+     */
+    abstract void transform(Haval context, int[] x);
+}
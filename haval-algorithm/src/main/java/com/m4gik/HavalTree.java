@@ -0,0 +1,469 @@
+package com.m4gik;
+
+import static com.m4gik.HavalAttributes.BLOCK_SIZE;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.m4gik.util.Util;
+
+/**
+ * The tree mode of {@link Haval}, which hashes large inputs on several cores.
+ * The input is split into leaves of a fixed size, the leaves are hashed in
+ * parallel on a {@link ForkJoinPool}, and their digests are combined by
+ * inner nodes of at most <i>fanOut</i> children each, up to a single node.
+ * <p>
+ * A leaf digest is the {@link Haval} digest of the byte <code>0x00</code>
+ * followed by the leaf, and an inner node digest is the {@link Haval} digest
+ * of the byte <code>0x01</code> followed by the digests of its children. A
+ * node left alone at the end of a level is promoted to the next level. The
+ * final digest is the {@link Haval} digest of the byte <code>0x02</code>, the
+ * leaf size, the fan-out and the message length, followed by the digest of
+ * the top node. The tree parameters are therefore part of the result, and a
+ * tree digest never equals the plain {@link Haval} digest of the same input.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class HavalTree implements IMessageDigest {
+
+    /**
+     * The default fan-out, which builds a binary tree.
+     */
+    public static final int DEFAULT_FAN_OUT = 2;
+
+    /**
+     * The default leaf size in bytes.
+     */
+    public static final int DEFAULT_LEAF_SIZE = 1024 * 1024;
+
+    /**
+     * The name prefix of this mode.
+     */
+    public static final String HAVAL_TREE_NAME = "haval-tree";
+
+    /**
+     * The prefix byte of inner node messages.
+     */
+    private static final byte INNER_NODE = 0x01;
+
+    /**
+     * The prefix byte of leaf messages.
+     */
+    private static final byte LEAF_NODE = 0x00;
+
+    /**
+     * The prefix byte of the final message.
+     */
+    private static final byte ROOT_NODE = 0x02;
+
+    /**
+     * Creates the {@link HavalTree} hash value for given input bytes, with
+     * the default leaf size and fan-out, on the common {@link ForkJoinPool}.
+     * 
+     * @param input
+     *            the value from which obtain the hash.
+     * @param size
+     *            the output size in bytes of this instance.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid, or if the number of
+     *             rounds is invalid.
+     * @return hash value for {@link HavalTree} mode.
+     */
+    public static String hash(byte[] input, int size, int rounds) {
+        HavalTree tree = new HavalTree(size, rounds);
+        tree.update(input);
+
+        return Util.toHex(tree.digest(), false);
+    }
+
+    /**
+     * Number of bytes processed so far.
+     */
+    private long count;
+
+    /**
+     * The maximum number of children of an inner node.
+     */
+    private final int fanOut;
+
+    /**
+     * Leaf buffers which have been hashed and can be filled again.
+     */
+    private final Deque<byte[]> freeLeaves = new ArrayDeque<byte[]>();
+
+    /**
+     * The leaf being filled.
+     */
+    private byte[] leaf;
+
+    /**
+     * The number of bytes in the leaf being filled.
+     */
+    private int leafLength;
+
+    /**
+     * The size of a leaf in bytes.
+     */
+    private final int leafSize;
+
+    /**
+     * The digests of each level, which do not fill an inner node yet.
+     */
+    private final List<List<byte[]>> levels = new ArrayList<List<byte[]>>();
+
+    /**
+     * The leaves being hashed, in the order of the input.
+     */
+    private final Deque<LeafTask> pending = new ArrayDeque<LeafTask>();
+
+    /**
+     * The pool which hashes the leaves.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The number of rounds of every {@link Haval} of the tree.
+     */
+    private final int rounds;
+
+    /**
+     * The output size of every {@link Haval} of the tree.
+     */
+    private final int size;
+
+    /**
+     * Constructs a tree with the default leaf size and fan-out, which hashes
+     * its leaves on the common {@link ForkJoinPool}.
+     * 
+     * @param size
+     *            the output size in bytes of this instance.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid, or if the number of
+     *             rounds is invalid.
+     */
+    public HavalTree(int size, int rounds) {
+        this(size, rounds, DEFAULT_LEAF_SIZE, DEFAULT_FAN_OUT, ForkJoinPool
+                .commonPool());
+    }
+
+    /**
+     * Constructs a tree with the designated parameters.
+     * 
+     * @param size
+     *            the output size in bytes of this instance.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @param leafSize
+     *            the size of a leaf in bytes, a positive multiple of
+     *            {@link HavalAttributes#BLOCK_SIZE}.
+     * @param fanOut
+     *            the maximum number of children of an inner node, in the range
+     *            <code>2..255</code> inclusive.
+     * @param pool
+     *            the pool which hashes the leaves.
+     * @throws IllegalArgumentException
+     *             if any of the parameters is invalid.
+     */
+    public HavalTree(int size, int rounds, int leafSize, int fanOut,
+            ForkJoinPool pool) {
+        Haval.checkParameters(size, rounds);
+        checkLeafSize(leafSize);
+        checkFanOut(fanOut);
+        if (pool == null) {
+            throw new IllegalArgumentException("pool cannot be null");
+        }
+
+        this.size = size;
+        this.rounds = rounds;
+        this.leafSize = leafSize;
+        this.fanOut = fanOut;
+        this.pool = pool;
+        this.leaf = new byte[leafSize];
+    }
+
+    /**
+     * Adds a digest to the given level, and combines the level into an inner
+     * node of the next level once it holds <i>fanOut</i> digests.
+     * 
+     * @param level
+     *            the level of the digest, zero for leaves.
+     * @param digest
+     *            the digest to add.
+     */
+    private void addNode(int level, byte[] digest) {
+        if (levels.size() == level) {
+            levels.add(new ArrayList<byte[]>(fanOut));
+        }
+
+        List<byte[]> nodes = levels.get(level);
+        nodes.add(digest);
+        if (nodes.size() == fanOut) {
+            byte[] parent = combine(nodes);
+            nodes.clear();
+            addNode(level + 1, parent);
+        }
+    }
+
+    /**
+     * Returns the leaf size in bytes.
+     * 
+     * @return the leaf size in bytes.
+     */
+    public int blockSize() {
+        return leafSize;
+    }
+
+    /**
+     * This method checks the fan-out of inner nodes.
+     * 
+     * @param fanOut
+     *            the fan-out to check.
+     * @throws IllegalArgumentException
+     */
+    private void checkFanOut(int fanOut) throws IllegalArgumentException {
+        if (fanOut < 2 || fanOut > 0xFF) {
+            throw new IllegalArgumentException("Invalid HAVAL tree fan-out");
+        }
+    }
+
+    /**
+     * This method checks the size of leaves.
+     * 
+     * @param leafSize
+     *            the leaf size to check.
+     * @throws IllegalArgumentException
+     */
+    private void checkLeafSize(int leafSize) throws IllegalArgumentException {
+        if (leafSize <= 0 || leafSize % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Invalid HAVAL tree leaf size");
+        }
+    }
+
+    /**
+     * Returns a clone copy of this instance, which shares the pool of this
+     * instance. The leaves being hashed are completed first.
+     * 
+     * @see java.lang.Object#clone()
+     */
+    @Override
+    public Object clone() {
+        drain(0);
+
+        HavalTree result = new HavalTree(size, rounds, leafSize, fanOut, pool);
+        result.count = count;
+        result.leafLength = leafLength;
+        System.arraycopy(leaf, 0, result.leaf, 0, leafLength);
+        for (List<byte[]> level : levels) {
+            result.levels.add(new ArrayList<byte[]>(level));
+        }
+
+        return result;
+    }
+
+    /**
+     * Computes the digest of an inner node.
+     * 
+     * @param children
+     *            the digests of the children of the node.
+     * @return the digest of the node.
+     */
+    private byte[] combine(List<byte[]> children) {
+        Haval haval = Haval.threadInstance(size, rounds);
+        haval.update(INNER_NODE);
+        for (byte[] child : children) {
+            haval.update(child);
+        }
+
+        return haval.digest();
+    }
+
+    public byte[] digest() {
+        byte[] result = new byte[size];
+        digest(result, 0);
+
+        return result;
+    }
+
+    public int digest(byte[] out, int offset) {
+        if (out == null || offset < 0 || offset > out.length - size) {
+            throw new IllegalArgumentException(
+                    "out cannot hold the digest at the given offset");
+        }
+
+        if (leafLength > 0 || count == 0) {
+            submitLeaf();
+        }
+
+        drain(0);
+
+        byte[] top = null;
+        for (List<byte[]> nodes : levels) {
+            if (top != null) {
+                nodes.add(top);
+            }
+
+            if (nodes.isEmpty()) {
+                top = null;
+            } else if (nodes.size() == 1) {
+                top = nodes.get(0);
+            } else {
+                top = combine(nodes);
+            }
+        }
+
+        Haval haval = Haval.threadInstance(size, rounds);
+        haval.update(ROOT_NODE);
+        haval.update(ByteBuffer.allocate(13).putInt(leafSize)
+                .put((byte) fanOut).putLong(count).array());
+        haval.update(top);
+        haval.digest(out, offset);
+
+        reset();
+
+        return size;
+    }
+
+    /**
+     * Waits for the oldest leaves being hashed until no more than the given
+     * number is left, and adds their digests to the tree.
+     * 
+     * @param maxPending
+     *            the number of leaves which may be still hashed.
+     */
+    private void drain(int maxPending) {
+        while (pending.size() > maxPending) {
+            LeafTask task = pending.removeFirst();
+            addNode(0, task.join());
+            freeLeaves.addLast(task.leaf);
+        }
+    }
+
+    /**
+     * Returns the number of rounds of the {@link Haval} instances of the tree.
+     * 
+     * @return the rounds
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    public int hashSize() {
+        return size;
+    }
+
+    public String name() {
+        return HAVAL_TREE_NAME;
+    }
+
+    public void reset() {
+        drain(0);
+        count = 0L;
+        leafLength = 0;
+        levels.clear();
+    }
+
+    /**
+     * Hands the leaf being filled to the pool and starts a new one. No more
+     * than twice as many leaves as the pool has threads are hashed at once,
+     * which bounds the memory used by the tree.
+     */
+    private void submitLeaf() {
+        LeafTask task = new LeafTask(leaf, leafLength);
+        task.future = pool.submit(task);
+        pending.addLast(task);
+        leaf = freeLeaves.isEmpty() ? new byte[leafSize] : freeLeaves
+                .removeFirst();
+        leafLength = 0;
+
+        drain(2 * pool.getParallelism());
+    }
+
+    public void update(byte b) {
+        leaf[leafLength++] = b;
+        count++;
+        if (leafLength == leafSize) {
+            submitLeaf();
+        }
+    }
+
+    public void update(byte[] in) {
+        update(in, 0, in.length);
+    }
+
+    public void update(byte[] in, int offset, int length) {
+        count += length;
+        while (length > 0) {
+            int part = Math.min(length, leafSize - leafLength);
+            System.arraycopy(in, offset, leaf, leafLength, part);
+            leafLength += part;
+            offset += part;
+            length -= part;
+            if (leafLength == leafSize) {
+                submitLeaf();
+            }
+        }
+    }
+
+    public void update(ByteBuffer in) {
+        int length = in.remaining();
+        count += length;
+        while (length > 0) {
+            int part = Math.min(length, leafSize - leafLength);
+            in.get(leaf, leafLength, part);
+            leafLength += part;
+            length -= part;
+            if (leafLength == leafSize) {
+                submitLeaf();
+            }
+        }
+    }
+
+    /**
+     * The hashing of one leaf.
+     */
+    private final class LeafTask implements Callable<byte[]> {
+
+        /**
+         * The submitted task.
+         */
+        private ForkJoinTask<byte[]> future;
+
+        /**
+         * The leaf bytes.
+         */
+        private final byte[] leaf;
+
+        /**
+         * The number of bytes of the leaf.
+         */
+        private final int length;
+
+        private LeafTask(byte[] leaf, int length) {
+            this.leaf = leaf;
+            this.length = length;
+        }
+
+        public byte[] call() {
+            Haval haval = Haval.threadInstance(size, rounds);
+            haval.update(LEAF_NODE);
+            haval.update(leaf, 0, length);
+
+            return haval.digest();
+        }
+
+        private byte[] join() {
+            return future.join();
+        }
+    }
+}
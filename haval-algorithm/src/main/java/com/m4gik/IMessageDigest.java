@@ -1,5 +1,7 @@
 package com.m4gik;
 
+import java.nio.ByteBuffer;
+
 /**
  * The basic visible methods of any hash algorithm.
  * <p>
@@ -31,6 +33,23 @@ public interface IMessageDigest extends Cloneable {
      */
     byte[] digest();
 
+    /**
+     * Completes the message digest in the same way as {@link #digest()}, but
+     * writes the hash value into the given array instead of a new one.
+     * 
+     * @param out
+     *            the array which receives the hash value.
+     * @param offset
+     *            the index in <code>out</code> of the first byte of the hash
+     *            value.
+     * @return the number of bytes written, which is {@link #hashSize()}.
+     * @throws IllegalArgumentException
+     *             if the array is null, or if the hash value does not fit into
+     *             the array at the designated offset. The instance is left
+     *             unchanged in that case.
+     */
+    int digest(byte[] out, int offset);
+
     /**
      * Returns the output length in bytes of this message digest algorithm.
      * 
@@ -84,4 +103,16 @@ public interface IMessageDigest extends Cloneable {
      *            number of bytes, in input block, to consider.
      */
     void update(byte[] in, int offset, int length);
+
+    /**
+     * Continues a message digest operation with the remaining bytes of the
+     * given buffer, in the same way as {@link #update(byte[], int, int)}. The
+     * bytes are read in place, whether the buffer is backed by an array or
+     * allocated outside of the heap, and the position of the buffer is
+     * advanced to its limit.
+     * 
+     * @param in
+     *            the input buffer.
+     */
+    void update(ByteBuffer in);
 }
\ No newline at end of file
@@ -0,0 +1,457 @@
+package com.m4gik;
+
+import static com.m4gik.HavalAttributes.BLOCK_SIZE;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A bounded cache of {@link Haval} intermediate states, keyed by the prefix
+ * of a message and by the output size and number of rounds. Messages which
+ * share a long common prefix, such as a fixed protocol header, are hashed by
+ * copying the state cached for the longest known prefix and transforming
+ * only the rest of the message.
+ * <p>
+ * States are only kept at whole block boundaries. The cache holds no more
+ * than the designated number of bytes, as estimated by the length of the
+ * prefixes plus a fixed cost per entry, and evicts the least recently used
+ * entries first. All methods are safe to call from several threads; the
+ * hashing itself is done outside of the lock.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class MidstateCache {
+
+    /**
+     * The estimated number of bytes taken by an entry besides its prefix: the
+     * block buffer and word table of the {@link Haval} instance, the key and
+     * the map entry.
+     */
+    public static final int ENTRY_OVERHEAD = 2 * BLOCK_SIZE + 128;
+
+    /**
+     * The cached states, from the least to the most recently used.
+     */
+    private final LinkedHashMap<Key, Haval> entries =
+            new LinkedHashMap<Key, Haval>(16, 0.75f, true);
+
+    /**
+     * Number of lookups which found a cached prefix.
+     */
+    private long hits;
+
+    /**
+     * The lengths of the cached prefixes with their number of entries, for
+     * every combination of output size and number of rounds.
+     */
+    private final Map<Integer, NavigableMap<Integer, Integer>> lengths =
+            new HashMap<Integer, NavigableMap<Integer, Integer>>();
+
+    /**
+     * The maximum estimated number of bytes held by this cache.
+     */
+    private final long maxBytes;
+
+    /**
+     * Number of lookups which did not find any cached prefix.
+     */
+    private long misses;
+
+    /**
+     * The estimated number of bytes held by this cache.
+     */
+    private long usedBytes;
+
+    /**
+     * Constructs an empty cache, which holds no more than the designated
+     * estimated number of bytes.
+     * 
+     * @param maxBytes
+     *            the memory bound of this cache in bytes.
+     * @throws IllegalArgumentException
+     *             if the memory bound is not positive.
+     */
+    public MidstateCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException(
+                    "maxBytes cannot less or equal to zero");
+        }
+
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the lengths of the cached prefixes for the designated output
+     * size and number of rounds which are not longer than the designated
+     * length.
+     * 
+     * @param size
+     *            the output size in bytes.
+     * @param rounds
+     *            the number of rounds.
+     * @param max
+     *            the length of the message.
+     * @return the lengths, from the longest to the shortest.
+     */
+    private synchronized int[] cachedLengths(int size, int rounds, int max) {
+        NavigableMap<Integer, Integer> known = lengths.get(configuration(size,
+                rounds));
+        if (known == null) {
+            return new int[0];
+        }
+
+        NavigableMap<Integer, Integer> candidates = known.headMap(max, true);
+        int[] result = new int[candidates.size()];
+        int i = 0;
+        for (Integer length : candidates.descendingKeySet()) {
+            result[i++] = length;
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes all entries, keeping the hit and miss counters.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        lengths.clear();
+        usedBytes = 0L;
+    }
+
+    /**
+     * Returns the key of the index of prefix lengths for the designated output
+     * size and number of rounds.
+     * 
+     * @param size
+     *            the output size in bytes.
+     * @param rounds
+     *            the number of rounds.
+     * @return the key of the index.
+     */
+    private static Integer configuration(int size, int rounds) {
+        return size * 8 + rounds;
+    }
+
+    /**
+     * Returns the digest of the given message, resuming from the longest
+     * cached prefix of the message.
+     * 
+     * @param message
+     *            the message to digest.
+     * @param size
+     *            the output size in bytes of the digest.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @return the {@link Haval} digest of the message.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid, or if the number of
+     *             rounds is invalid.
+     */
+    public byte[] digest(byte[] message, int size, int rounds) {
+        return resume(message, size, rounds).digest();
+    }
+
+    /**
+     * Returns the number of lookups which found a cached prefix.
+     * 
+     * @return the number of hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups which did not find any cached prefix.
+     * 
+     * @return the number of misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of cached states.
+     * 
+     * @return the number of entries.
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the estimated number of bytes held by this cache.
+     * 
+     * @return the estimated memory usage in bytes.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Returns the cached state of the longest prefix of the message, or
+     * <code>null</code> if none is cached, and updates the counters. The
+     * lengths of the candidate prefixes are read, and the hash codes of their
+     * keys computed in one pass over the message, before the lock is taken
+     * again to probe the entries, so the message is not read under the lock
+     * once for every cached length.
+     * 
+     * @param message
+     *            the message to look up.
+     * @param size
+     *            the output size in bytes.
+     * @param rounds
+     *            the number of rounds.
+     * @param record
+     *            whether the lookup counts as a hit or a miss.
+     * @return a copy of the cached state, or <code>null</code>.
+     */
+    private Haval lookup(byte[] message, int size, int rounds, boolean record) {
+        int[] candidates = cachedLengths(size, rounds, message.length);
+        int[] hashCodes = new int[candidates.length];
+        int hashCode = Key.seed(size, rounds);
+        int next = candidates.length - 1;
+        for (int i = 0; next >= 0; i++) {
+            while (next >= 0 && candidates[next] == i) {
+                hashCodes[next--] = hashCode;
+            }
+            if (i < message.length) {
+                hashCode = 31 * hashCode + message[i];
+            }
+        }
+
+        return probe(message, size, rounds, candidates, hashCodes, record);
+    }
+
+    /**
+     * Returns the cached state of the longest candidate prefix of the
+     * message, or <code>null</code> if none is cached, and updates the
+     * counters.
+     * 
+     * @param message
+     *            the message to look up.
+     * @param size
+     *            the output size in bytes.
+     * @param rounds
+     *            the number of rounds.
+     * @param candidates
+     *            the lengths of the candidate prefixes, from the longest.
+     * @param hashCodes
+     *            the hash codes of the keys of the candidate prefixes.
+     * @param record
+     *            whether the lookup counts as a hit or a miss.
+     * @return a copy of the cached state, or <code>null</code>.
+     */
+    private synchronized Haval probe(byte[] message, int size, int rounds,
+            int[] candidates, int[] hashCodes, boolean record) {
+        for (int i = 0; i < candidates.length; i++) {
+            Haval state = entries.get(new Key(message, candidates[i], size,
+                    rounds, hashCodes[i]));
+            if (state != null) {
+                hits += record ? 1 : 0;
+                return new Haval(state);
+            }
+        }
+
+        misses += record ? 1 : 0;
+        return null;
+    }
+
+    /**
+     * Caches the state of the designated prefix, cut down to its whole
+     * blocks. Prefixes shorter than a block are not cached, and neither is a
+     * prefix whose entry alone would exceed the memory bound.
+     * 
+     * @param prefix
+     *            the prefix to cache.
+     * @param size
+     *            the output size in bytes.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid, or if the number of
+     *             rounds is invalid.
+     */
+    public void put(byte[] prefix, int size, int rounds) {
+        int length = prefix.length - prefix.length % BLOCK_SIZE;
+        if (length == 0 || length + ENTRY_OVERHEAD > maxBytes) {
+            Haval.checkParameters(size, rounds);
+            return;
+        }
+
+        byte[] whole = new byte[length];
+        System.arraycopy(prefix, 0, whole, 0, length);
+        store(new Key(whole, length, size, rounds), resume(whole, size, rounds,
+                false));
+    }
+
+    /**
+     * Returns an instance which has processed the given message, starting
+     * from the longest cached prefix of the message. The instance belongs to
+     * the caller.
+     * 
+     * @param message
+     *            the message to process.
+     * @param size
+     *            the output size in bytes.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @return an instance ready to digest the message, or to continue it.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid, or if the number of
+     *             rounds is invalid.
+     */
+    public Haval resume(byte[] message, int size, int rounds) {
+        return resume(message, size, rounds, true);
+    }
+
+    /**
+     * Returns an instance which has processed the given message, starting
+     * from the longest cached prefix of the message.
+     * 
+     * @param message
+     *            the message to process.
+     * @param size
+     *            the output size in bytes.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @param record
+     *            whether the lookup counts as a hit or a miss.
+     * @return an instance ready to digest the message, or to continue it.
+     */
+    private Haval resume(byte[] message, int size, int rounds, boolean record) {
+        Haval haval = lookup(message, size, rounds, record);
+        if (haval == null) {
+            haval = new Haval(size, rounds);
+        }
+
+        int offset = (int) haval.count;
+        haval.update(message, offset, message.length - offset);
+
+        return haval;
+    }
+
+    /**
+     * Stores an entry and evicts the least recently used entries until the
+     * memory bound is met again.
+     * 
+     * @param key
+     *            the key of the entry.
+     * @param state
+     *            the state to cache.
+     */
+    private synchronized void store(Key key, Haval state) {
+        if (entries.put(key, state) != null) {
+            return;
+        }
+
+        usedBytes += key.length + ENTRY_OVERHEAD;
+        NavigableMap<Integer, Integer> known = lengths.get(configuration(
+                key.size, key.rounds));
+        if (known == null) {
+            known = new TreeMap<Integer, Integer>();
+            lengths.put(configuration(key.size, key.rounds), known);
+        }
+        Integer entriesOfLength = known.get(key.length);
+        known.put(key.length, entriesOfLength == null ? 1
+                : entriesOfLength + 1);
+
+        Iterator<Key> eldest = entries.keySet().iterator();
+        while (usedBytes > maxBytes) {
+            Key evicted = eldest.next();
+            eldest.remove();
+            usedBytes -= evicted.length + ENTRY_OVERHEAD;
+            known = lengths.get(configuration(evicted.size, evicted.rounds));
+            entriesOfLength = known.get(evicted.length);
+            if (entriesOfLength == 1) {
+                known.remove(evicted.length);
+            } else {
+                known.put(evicted.length, entriesOfLength - 1);
+            }
+        }
+    }
+
+    /**
+     * The key of a cached state: the leading bytes of an array, together with
+     * the output size and number of rounds. Lookups use the message itself as
+     * the array, so no bytes are copied to build a key.
+     */
+    private static final class Key {
+
+        private final byte[] bytes;
+
+        private final int hashCode;
+
+        private final int length;
+
+        private final int rounds;
+
+        private final int size;
+
+        private Key(byte[] bytes, int length, int size, int rounds) {
+            this(bytes, length, size, rounds, hashCode(bytes, length, size,
+                    rounds));
+        }
+
+        private Key(byte[] bytes, int length, int size, int rounds,
+                int hashCode) {
+            this.bytes = bytes;
+            this.length = length;
+            this.size = size;
+            this.rounds = rounds;
+            this.hashCode = hashCode;
+        }
+
+        /**
+         * Returns the hash code of a key, which extends
+         * {@link #seed(int, int)} with the bytes of the prefix one at a time,
+         * so the codes of all prefixes of a message come out of one pass.
+         */
+        private static int hashCode(byte[] bytes, int length, int size,
+                int rounds) {
+            int result = seed(size, rounds);
+            for (int i = 0; i < length; i++) {
+                result = 31 * result + bytes[i];
+            }
+
+            return result;
+        }
+
+        /**
+         * Returns the hash code of the empty prefix.
+         */
+        private static int seed(int size, int rounds) {
+            return 31 * size + rounds;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            if (hashCode != other.hashCode || length != other.length
+                    || size != other.size || rounds != other.rounds) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != other.bytes[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
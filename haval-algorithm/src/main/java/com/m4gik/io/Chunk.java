@@ -0,0 +1,97 @@
+package com.m4gik.io;
+
+import java.util.Arrays;
+
+import com.m4gik.util.Util;
+
+/**
+ * A chunk of a stream cut by a {@link ContentChunker}: its offset in the
+ * stream, its length and the {@link com.m4gik.Haval} digest of its bytes.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public final class Chunk {
+
+    /**
+     * The digest of the bytes of the chunk.
+     */
+    private final byte[] digest;
+
+    /**
+     * The number of bytes of the chunk.
+     */
+    private final int length;
+
+    /**
+     * The offset in the stream of the first byte of the chunk.
+     */
+    private final long offset;
+
+    /**
+     * Constructs a chunk.
+     * 
+     * @param offset
+     *            the offset in the stream of the first byte of the chunk.
+     * @param length
+     *            the number of bytes of the chunk.
+     * @param digest
+     *            the digest of the bytes of the chunk, which belongs to this
+     *            chunk from now on.
+     */
+    Chunk(long offset, int length, byte[] digest) {
+        this.offset = offset;
+        this.length = length;
+        this.digest = digest;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Chunk)) {
+            return false;
+        }
+
+        Chunk other = (Chunk) obj;
+
+        return offset == other.offset && length == other.length
+                && Arrays.equals(digest, other.digest);
+    }
+
+    /**
+     * Returns the digest of the bytes of the chunk.
+     * 
+     * @return a copy of the digest.
+     */
+    public byte[] getDigest() {
+        return digest.clone();
+    }
+
+    /**
+     * Returns the number of bytes of the chunk.
+     * 
+     * @return the length of the chunk.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the offset in the stream of the first byte of the chunk.
+     * 
+     * @return the offset of the chunk.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (int) (offset ^ offset >>> 32) + length)
+                + Arrays.hashCode(digest);
+    }
+
+    @Override
+    public String toString() {
+        return offset + "+" + length + ":" + Util.toHex(digest, false);
+    }
+}
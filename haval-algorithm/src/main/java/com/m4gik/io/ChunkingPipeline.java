@@ -0,0 +1,364 @@
+package com.m4gik.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import com.m4gik.Haval;
+
+/**
+ * Cuts a stream into content-defined chunks with a {@link ContentChunker}
+ * and fingerprints every chunk with {@link Haval}, emitting one {@link Chunk}
+ * record per chunk, in the order of the stream.
+ * <p>
+ * The calling thread reads the stream into large buffers and finds the
+ * boundaries of the chunks, while the chunks of every full buffer are hashed
+ * as one task on a {@link ForkJoinPool}, with instances taken from a pool of
+ * {@link Haval} instances, so reading, chunking and hashing overlap. The
+ * chunk left unfinished at the end of a buffer is copied to the start of the
+ * next one. No more than twice as many buffers as the pool has threads are
+ * hashed at once; the calling thread emits the records of the oldest buffer
+ * before reading on, and reuses the buffer.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class ChunkingPipeline {
+
+    /**
+     * The default size of the buffers the stream is read into.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The size of the buffers the stream is read into.
+     */
+    private final int bufferSize;
+
+    /**
+     * The chunker which finds the boundaries.
+     */
+    private final ContentChunker chunker;
+
+    /**
+     * The instances which are not hashing any chunk.
+     */
+    private final Queue<Haval> havals = new ConcurrentLinkedQueue<Haval>();
+
+    /**
+     * The maximum number of buffers hashed at once.
+     */
+    private final int inFlight;
+
+    /**
+     * The pool which hashes the chunks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The number of rounds of the digests.
+     */
+    private final int rounds;
+
+    /**
+     * The output size of the digests.
+     */
+    private final int size;
+
+    /**
+     * Constructs a pipeline which hashes the chunks on the common
+     * {@link ForkJoinPool}.
+     * 
+     * @param chunker
+     *            the chunker which finds the boundaries.
+     * @param size
+     *            the output size in bytes of the digests.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @throws IllegalArgumentException
+     *             if the chunker is null, if the designated output size is
+     *             invalid, or if the number of rounds is invalid.
+     */
+    public ChunkingPipeline(ContentChunker chunker, int size, int rounds) {
+        this(chunker, size, rounds, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a pipeline which hashes the chunks on the designated pool.
+     * 
+     * @param chunker
+     *            the chunker which finds the boundaries.
+     * @param size
+     *            the output size in bytes of the digests.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @param pool
+     *            the pool which hashes the chunks.
+     * @throws IllegalArgumentException
+     *             if the chunker or the pool is null, if the designated output
+     *             size is invalid, or if the number of rounds is invalid.
+     */
+    public ChunkingPipeline(ContentChunker chunker, int size, int rounds,
+            ForkJoinPool pool) {
+        if (chunker == null || pool == null) {
+            throw new IllegalArgumentException(
+                    "chunker and pool cannot be null");
+        }
+
+        Haval.checkParameters(size, rounds);
+        this.chunker = chunker;
+        this.size = size;
+        this.rounds = rounds;
+        this.pool = pool;
+        this.inFlight = 2 * pool.getParallelism();
+        this.bufferSize = Math.max(DEFAULT_BUFFER_SIZE,
+                2 * chunker.getMaxSize());
+    }
+
+    /**
+     * Returns the chunks of the given stream, which is read to its end but
+     * not closed.
+     * 
+     * @param in
+     *            the stream to chunk.
+     * @return the chunks, in the order of the stream.
+     * @throws IOException
+     *             if the stream cannot be read.
+     */
+    public List<Chunk> chunk(InputStream in) throws IOException {
+        final List<Chunk> chunks = new ArrayList<Chunk>();
+        process(in, new Consumer<Chunk>() {
+            public void accept(Chunk chunk) {
+                chunks.add(chunk);
+            }
+        });
+
+        return chunks;
+    }
+
+    /**
+     * Waits for the oldest buffer to be hashed, emits its chunks and returns
+     * the buffer for reuse.
+     * 
+     * @param pending
+     *            the buffers being hashed.
+     * @param sink
+     *            the consumer of the chunks.
+     * @param free
+     *            the buffers which can be reused.
+     */
+    private void emit(Queue<HashTask> pending, Consumer<? super Chunk> sink,
+            Queue<byte[]> free) {
+        HashTask task = pending.poll();
+        task.join();
+        for (int i = 0; i < task.count; i++) {
+            sink.accept(task.chunks[i]);
+        }
+
+        free.add(task.buffer);
+    }
+
+    /**
+     * Returns the number of rounds of the digests.
+     * 
+     * @return the rounds
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Returns the output size of the digests.
+     * 
+     * @return the output size in bytes.
+     */
+    public int hashSize() {
+        return size;
+    }
+
+    /**
+     * Chunks the given stream, which is read to its end but not closed, and
+     * hands every chunk to the given consumer, in the order of the stream and
+     * on the calling thread.
+     * 
+     * @param in
+     *            the stream to chunk.
+     * @param sink
+     *            the consumer of the chunks.
+     * @return the number of bytes of the stream.
+     * @throws IOException
+     *             if the stream cannot be read.
+     * @throws IllegalArgumentException
+     *             if the stream or the consumer is null.
+     */
+    public long process(InputStream in, Consumer<? super Chunk> sink)
+            throws IOException {
+        if (in == null || sink == null) {
+            throw new IllegalArgumentException(
+                    "stream and sink cannot be null");
+        }
+
+        Queue<HashTask> pending = new ArrayDeque<HashTask>();
+        Queue<byte[]> free = new ArrayDeque<byte[]>();
+        byte[] buffer = new byte[bufferSize];
+        long base = 0L;
+        int fill = 0;
+        boolean last = false;
+        while (!last) {
+            int n = in.read(buffer, fill, buffer.length - fill);
+            if (n < 0) {
+                last = true;
+            } else {
+                fill += n;
+            }
+            if (!last && fill < buffer.length) {
+                continue;
+            }
+
+            HashTask task = new HashTask(buffer, base);
+            int start = 0;
+            while (start < fill) {
+                int end = chunker.cut(buffer, start, fill, last);
+                if (end < 0) {
+                    break;
+                }
+                task.add(start, end - start);
+                start = end;
+            }
+
+            byte[] next = null;
+            if (!last) {
+                next = free.isEmpty() ? new byte[bufferSize] : free.poll();
+                System.arraycopy(buffer, start, next, 0, fill - start);
+            }
+            if (task.count > 0) {
+                pending.add(task);
+                pool.execute(task);
+                if (pending.size() > inFlight) {
+                    emit(pending, sink, free);
+                }
+            }
+
+            base += start;
+            fill -= start;
+            buffer = next;
+        }
+        while (!pending.isEmpty()) {
+            emit(pending, sink, free);
+        }
+
+        return base;
+    }
+
+    /**
+     * Chunks the content of the given file and hands every chunk to the
+     * given consumer, in the order of the file and on the calling thread.
+     * 
+     * @param file
+     *            the file to chunk.
+     * @param sink
+     *            the consumer of the chunks.
+     * @return the number of bytes of the file.
+     * @throws IOException
+     *             if the file cannot be read.
+     * @throws IllegalArgumentException
+     *             if the file or the consumer is null.
+     */
+    public long process(Path file, Consumer<? super Chunk> sink)
+            throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file cannot be null");
+        }
+
+        try (InputStream in = Files.newInputStream(file)) {
+            return process(in, sink);
+        }
+    }
+
+    /**
+     * The hashing of the chunks of one buffer.
+     */
+    private final class HashTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The offset in the stream of the first byte of the buffer.
+         */
+        private final long base;
+
+        /**
+         * The buffer of the chunks.
+         */
+        private final byte[] buffer;
+
+        /**
+         * The chunks, once hashed.
+         */
+        private Chunk[] chunks;
+
+        /**
+         * The number of chunks.
+         */
+        private int count;
+
+        /**
+         * The lengths of the chunks.
+         */
+        private int[] lengths = new int[64];
+
+        /**
+         * The indexes in the buffer of the chunks.
+         */
+        private int[] starts = new int[64];
+
+        private HashTask(byte[] buffer, long base) {
+            this.buffer = buffer;
+            this.base = base;
+        }
+
+        private void add(int start, int length) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * count);
+                lengths = Arrays.copyOf(lengths, 2 * count);
+            }
+            starts[count] = start;
+            lengths[count++] = length;
+        }
+
+        @Override
+        protected void compute() {
+            Haval haval = havals.poll();
+            if (haval == null) {
+                haval = new Haval(size, rounds);
+            }
+
+            Chunk[] result = new Chunk[count];
+            try {
+                for (int i = 0; i < count; i++) {
+                    haval.update(buffer, starts[i], lengths[i]);
+                    byte[] digest = new byte[size];
+                    haval.digest(digest, 0);
+                    result[i] = new Chunk(base + starts[i], lengths[i], digest);
+                }
+            } catch (RuntimeException e) {
+                haval.reset();
+                throw e;
+            } finally {
+                havals.add(haval);
+            }
+
+            chunks = result;
+        }
+    }
+}
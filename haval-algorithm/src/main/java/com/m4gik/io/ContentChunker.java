@@ -0,0 +1,213 @@
+package com.m4gik.io;
+
+/**
+ * Finds content-defined chunk boundaries with the Gear rolling hash. A
+ * boundary is cut where the hash of the last 64 bytes matches a mask, so it
+ * only depends on the bytes around it: bytes inserted into or removed from a
+ * stream only move the boundaries next to the change, and the chunks after
+ * it are found again, with the same digests.
+ * <p>
+ * The hash is not computed over the first <code>minSize</code> bytes of a
+ * chunk, and a chunk is cut at <code>maxSize</code> bytes at the latest.
+ * Between them the sizes are normalized around <code>avgSize</code>: a mask
+ * with one more bit is used before the average size and one with one bit
+ * less after it, which makes the chunks less spread than with a single mask.
+ * Instances hold no state and can be shared by several threads.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class ContentChunker {
+
+    /**
+     * The default average size of chunks.
+     */
+    public static final int DEFAULT_AVG_SIZE = 8 * 1024;
+
+    /**
+     * The default maximum size of chunks.
+     */
+    public static final int DEFAULT_MAX_SIZE = 64 * 1024;
+
+    /**
+     * The default minimum size of chunks.
+     */
+    public static final int DEFAULT_MIN_SIZE = 2 * 1024;
+
+    /**
+     * The random value of every byte added to the rolling hash.
+     */
+    private static final long[] GEAR = new long[256];
+
+    /**
+     * The largest maximum size of chunks.
+     */
+    private static final int MAX_SIZE_LIMIT = 1 << 26;
+
+    /**
+     * The smallest minimum size of chunks, the width of the rolling hash.
+     */
+    private static final int MIN_SIZE_LIMIT = 64;
+
+    static {
+        long seed = 0x48415641L; // splitmix64, so the table never changes
+        for (int i = 0; i < GEAR.length; i++) {
+            long z = seed += 0x9E3779B97F4A7C15L;
+            z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ z >>> 31;
+        }
+    }
+
+    /**
+     * Returns a mask of the designated number of the highest bits, which
+     * depend on the most bytes of the rolling hash.
+     * 
+     * @param bits
+     *            the number of bits of the mask.
+     * @return the mask.
+     */
+    private static long mask(int bits) {
+        return -1L << (64 - bits);
+    }
+
+    /**
+     * The average size of chunks.
+     */
+    private final int avgSize;
+
+    /**
+     * The mask of boundaries after the average size.
+     */
+    private final long largeMask;
+
+    /**
+     * The maximum size of chunks.
+     */
+    private final int maxSize;
+
+    /**
+     * The minimum size of chunks.
+     */
+    private final int minSize;
+
+    /**
+     * The mask of boundaries before the average size.
+     */
+    private final long smallMask;
+
+    /**
+     * Constructs a chunker with the default minimum, average and maximum
+     * sizes of 2, 8 and 64 KB.
+     */
+    public ContentChunker() {
+        this(DEFAULT_MIN_SIZE, DEFAULT_AVG_SIZE, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructs a chunker with the designated sizes of chunks.
+     * 
+     * @param minSize
+     *            the minimum size of chunks, at least <code>64</code>.
+     * @param avgSize
+     *            the average size of chunks, a power of two.
+     * @param maxSize
+     *            the maximum size of chunks, at most <code>64 MB</code>.
+     * @throws IllegalArgumentException
+     *             if the sizes are out of their bounds, if the average size
+     *             is not a power of two, or if the sizes are not in
+     *             increasing order.
+     */
+    public ContentChunker(int minSize, int avgSize, int maxSize) {
+        if (minSize < MIN_SIZE_LIMIT || maxSize > MAX_SIZE_LIMIT
+                || minSize >= avgSize || avgSize >= maxSize
+                || Integer.bitCount(avgSize) != 1) {
+            throw new IllegalArgumentException("Invalid chunk sizes");
+        }
+
+        int bits = Integer.numberOfTrailingZeros(avgSize);
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        this.smallMask = mask(bits + 1);
+        this.largeMask = mask(bits - 1);
+    }
+
+    /**
+     * Returns the end of the chunk which starts at <code>start</code> in the
+     * given data. The end is the same whatever the data after it, so a chunk
+     * which needs more data than is available can be looked for again once
+     * more data has arrived.
+     * 
+     * @param data
+     *            the array of the data.
+     * @param start
+     *            the index of the first byte of the chunk.
+     * @param end
+     *            the index after the last byte of data available.
+     * @param last
+     *            whether no data follows <code>end</code>.
+     * @return the index after the last byte of the chunk, or <code>-1</code>
+     *         if more data is needed to find it.
+     * @throws IndexOutOfBoundsException
+     *             if the range does not lie within the array.
+     */
+    public int cut(byte[] data, int start, int end, boolean last) {
+        if (start < 0 || start > end || end > data.length) {
+            throw new IndexOutOfBoundsException("Range [" + start + ", "
+                    + end + ") out of bounds for length " + data.length);
+        }
+
+        int available = end - start;
+        if (available <= minSize) {
+            return last ? end : -1;
+        }
+
+        int limit = start + Math.min(available, maxSize);
+        int normal = start + Math.min(available, avgSize);
+        long[] gear = GEAR;
+        long hash = 0L;
+        int i = start + minSize;
+        for (long mask = smallMask; i < normal; i++) {
+            hash = (hash << 1) + gear[data[i] & 0xFF];
+            if ((hash & mask) == 0L) {
+                return i + 1;
+            }
+        }
+        for (long mask = largeMask; i < limit; i++) {
+            hash = (hash << 1) + gear[data[i] & 0xFF];
+            if ((hash & mask) == 0L) {
+                return i + 1;
+            }
+        }
+
+        return limit - start == maxSize || last ? limit : -1;
+    }
+
+    /**
+     * Returns the average size of chunks.
+     * 
+     * @return the average size in bytes.
+     */
+    public int getAvgSize() {
+        return avgSize;
+    }
+
+    /**
+     * Returns the maximum size of chunks.
+     * 
+     * @return the maximum size in bytes.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the minimum size of chunks.
+     * 
+     * @return the minimum size in bytes.
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+}
@@ -0,0 +1,141 @@
+package com.m4gik.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.m4gik.IMessageDigest;
+
+/**
+ * An input stream which passes through the bytes of the underlying stream and
+ * digests every byte read, so that data can be hashed while it is consumed.
+ * Bulk reads are digested in one call of
+ * {@link IMessageDigest#update(byte[], int, int)}. Skipped bytes are read and
+ * digested as well, so the digest always covers the whole consumed part of
+ * the stream; marking is therefore not supported. The digest is completed
+ * when the stream is closed.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class DigestInputStream extends FilterInputStream {
+
+    /**
+     * The size of the scratch buffer used to digest skipped bytes.
+     */
+    private static final int SKIP_BUFFER_SIZE = 8192;
+
+    /**
+     * The digest of the stream, or <code>null</code> while it is open.
+     */
+    private byte[] digest;
+
+    /**
+     * The digest which is updated with the bytes read.
+     */
+    private final IMessageDigest messageDigest;
+
+    /**
+     * Constructs a stream digesting the bytes read from the given stream.
+     * 
+     * @param in
+     *            the underlying stream.
+     * @param messageDigest
+     *            the digest to update, which belongs to this stream from now
+     *            on.
+     * @throws IllegalArgumentException
+     *             if the stream or the digest is null.
+     */
+    public DigestInputStream(InputStream in, IMessageDigest messageDigest) {
+        super(in);
+        if (in == null || messageDigest == null) {
+            throw new IllegalArgumentException(
+                    "stream and digest cannot be null");
+        }
+
+        this.messageDigest = messageDigest;
+    }
+
+    /**
+     * Closes the underlying stream and completes the digest.
+     * 
+     * @see java.io.FilterInputStream#close()
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (digest == null) {
+                digest = messageDigest.digest();
+            }
+        }
+    }
+
+    /**
+     * Returns the digest of all bytes read, which is available once the stream
+     * is closed.
+     * 
+     * @return the digest of the stream.
+     * @throws IllegalStateException
+     *             if the stream is not closed yet.
+     */
+    public byte[] getDigest() {
+        if (digest == null) {
+            throw new IllegalStateException("The stream is not closed yet");
+        }
+
+        return digest.clone();
+    }
+
+    @Override
+    public void mark(int readlimit) {
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            messageDigest.update((byte) b);
+        }
+
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            messageDigest.update(b, off, n);
+        }
+
+        return n;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] scratch = new byte[(int) Math.min(SKIP_BUFFER_SIZE,
+                Math.max(n, 0))];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(scratch, 0,
+                    (int) Math.min(scratch.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+
+        return skipped;
+    }
+}
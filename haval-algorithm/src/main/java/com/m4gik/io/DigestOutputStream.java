@@ -0,0 +1,95 @@
+package com.m4gik.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.m4gik.IMessageDigest;
+
+/**
+ * An output stream which passes the bytes written on to the underlying
+ * stream and digests them, so that data can be hashed while it is stored.
+ * Bulk writes are forwarded as they are and digested in one call of
+ * {@link IMessageDigest#update(byte[], int, int)}. The digest is completed
+ * when the stream is closed.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class DigestOutputStream extends FilterOutputStream {
+
+    /**
+     * The digest of the stream, or <code>null</code> while it is open.
+     */
+    private byte[] digest;
+
+    /**
+     * The digest which is updated with the bytes written.
+     */
+    private final IMessageDigest messageDigest;
+
+    /**
+     * Constructs a stream digesting the bytes written to the given stream.
+     * 
+     * @param out
+     *            the underlying stream.
+     * @param messageDigest
+     *            the digest to update, which belongs to this stream from now
+     *            on.
+     * @throws IllegalArgumentException
+     *             if the stream or the digest is null.
+     */
+    public DigestOutputStream(OutputStream out, IMessageDigest messageDigest) {
+        super(out);
+        if (out == null || messageDigest == null) {
+            throw new IllegalArgumentException(
+                    "stream and digest cannot be null");
+        }
+
+        this.messageDigest = messageDigest;
+    }
+
+    /**
+     * Flushes and closes the underlying stream and completes the digest.
+     * 
+     * @see java.io.FilterOutputStream#close()
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (digest == null) {
+                digest = messageDigest.digest();
+            }
+        }
+    }
+
+    /**
+     * Returns the digest of all bytes written, which is available once the
+     * stream is closed.
+     * 
+     * @return the digest of the stream.
+     * @throws IllegalStateException
+     *             if the stream is not closed yet.
+     */
+    public byte[] getDigest() {
+        if (digest == null) {
+            throw new IllegalStateException("The stream is not closed yet");
+        }
+
+        return digest.clone();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        messageDigest.update(b, off, len);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        messageDigest.update((byte) b);
+    }
+}
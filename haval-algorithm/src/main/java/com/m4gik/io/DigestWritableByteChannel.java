@@ -0,0 +1,113 @@
+package com.m4gik.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import com.m4gik.IMessageDigest;
+
+/**
+ * A channel which passes the bytes written on to the underlying channel and
+ * digests the bytes the underlying channel has actually accepted. Heap
+ * buffers are digested in one call of
+ * {@link IMessageDigest#update(byte[], int, int)} and direct buffers in
+ * place, without copying them. The digest is completed when the channel is
+ * closed.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class DigestWritableByteChannel implements WritableByteChannel {
+
+    /**
+     * The underlying channel.
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * The digest of the channel, or <code>null</code> while it is open.
+     */
+    private byte[] digest;
+
+    /**
+     * The digest which is updated with the bytes written.
+     */
+    private final IMessageDigest messageDigest;
+
+    /**
+     * Constructs a channel digesting the bytes written to the given channel.
+     * 
+     * @param channel
+     *            the underlying channel.
+     * @param messageDigest
+     *            the digest to update, which belongs to this channel from now
+     *            on.
+     * @throws IllegalArgumentException
+     *             if the channel or the digest is null.
+     */
+    public DigestWritableByteChannel(WritableByteChannel channel,
+            IMessageDigest messageDigest) {
+        if (channel == null || messageDigest == null) {
+            throw new IllegalArgumentException(
+                    "channel and digest cannot be null");
+        }
+
+        this.channel = channel;
+        this.messageDigest = messageDigest;
+    }
+
+    /**
+     * Closes the underlying channel and completes the digest.
+     * 
+     * @see java.nio.channels.Channel#close()
+     */
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            if (digest == null) {
+                digest = messageDigest.digest();
+            }
+        }
+    }
+
+    /**
+     * Returns the digest of all bytes written, which is available once the
+     * channel is closed.
+     * 
+     * @return the digest of the channel.
+     * @throws IllegalStateException
+     *             if the channel is not closed yet.
+     */
+    public byte[] getDigest() {
+        if (digest == null) {
+            throw new IllegalStateException("The channel is not closed yet");
+        }
+
+        return digest.clone();
+    }
+
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    public int write(ByteBuffer src) throws IOException {
+        int position = src.position();
+        int n = channel.write(src);
+        if (n <= 0) {
+            return n;
+        }
+
+        if (src.hasArray()) {
+            messageDigest.update(src.array(), src.arrayOffset() + position, n);
+        } else {
+            int end = src.position();
+            int limit = src.limit();
+            src.position(position).limit(end);
+            messageDigest.update(src);
+            src.limit(limit);
+        }
+
+        return n;
+    }
+}
@@ -0,0 +1,435 @@
+package com.m4gik.manifest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.m4gik.Haval;
+import com.m4gik.HavalAttributes;
+import com.m4gik.util.Util;
+
+/**
+ * Generates the {@link Haval} manifest of a directory tree: one
+ * <code>digest  path</code> line for every regular file, with the path
+ * relative to the root and separated by <code>/</code>, in the lexicographic
+ * order of the paths. Symbolic links are not followed.
+ * <p>
+ * The tree is walked depth-first on the calling thread, with the entries of
+ * every directory sorted, so the lines come out in their final order as soon
+ * as their files are hashed and only the listings of the directories being
+ * walked are held in memory. The files are hashed on virtual threads when the
+ * runtime provides them, and on a pool of platform threads otherwise. No
+ * more than <code>concurrency</code> files are open at once: every hashing
+ * task takes one of as many slots, each holding a direct read buffer and a
+ * {@link Haval} instance, which are reused from file to file. No more than
+ * four times as many files as slots are waiting to be written.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class ManifestGenerator {
+
+    /**
+     * The default number of files hashed at once.
+     */
+    public static final int DEFAULT_CONCURRENCY = 64;
+
+    /**
+     * The size of the read buffer of a slot.
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The factory of virtual thread executors, or <code>null</code> if the
+     * runtime has no virtual threads.
+     */
+    private static final Method VIRTUAL_EXECUTOR = virtualExecutorFactory();
+
+    /**
+     * Returns whether the files are hashed on virtual threads.
+     * 
+     * @return <code>true</code> if the runtime provides virtual threads.
+     */
+    public static boolean isVirtualThreads() {
+        return VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * Writes the manifest of a directory tree to the standard output.
+     * <p>
+     * Usage: <code>ManifestGenerator root [bits [rounds]]</code>, the
+     * digests being HAVAL-256/5 by default.
+     * 
+     * @param args
+     *            the root of the tree, then the optional output size in bits
+     *            and number of rounds.
+     * @throws IOException
+     *             if the tree cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: ManifestGenerator root [bits [rounds]]");
+            System.exit(2);
+        }
+
+        int size = args.length > 1 ? Integer.parseInt(args[1]) / 8
+                : HavalAttributes.HAVAL_256_BIT;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2])
+                : HavalAttributes.HAVAL_5_ROUND;
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out,
+                StandardCharsets.UTF_8));
+        new ManifestGenerator(size, rounds).generate(Paths.get(args[0]), out);
+        out.flush();
+    }
+
+    /**
+     * Looks up <code>Executors.newVirtualThreadPerTaskExecutor()</code>.
+     * 
+     * @return the factory method, or <code>null</code> if there is none.
+     */
+    private static Method virtualExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The maximum number of files hashed at once.
+     */
+    private final int concurrency;
+
+    /**
+     * The number of rounds of the digests.
+     */
+    private final int rounds;
+
+    /**
+     * The output size of the digests.
+     */
+    private final int size;
+
+    /**
+     * Constructs a generator which hashes up to
+     * {@link #DEFAULT_CONCURRENCY} files at once.
+     * 
+     * @param size
+     *            the output size in bytes of the digests.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid, or if the number of
+     *             rounds is invalid.
+     */
+    public ManifestGenerator(int size, int rounds) {
+        this(size, rounds, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * Constructs a generator which hashes up to the designated number of
+     * files at once.
+     * 
+     * @param size
+     *            the output size in bytes of the digests.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @param concurrency
+     *            the maximum number of files open at once.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid, if the number of
+     *             rounds is invalid, or if the concurrency is not positive.
+     */
+    public ManifestGenerator(int size, int rounds, int concurrency) {
+        Haval.checkParameters(size, rounds);
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException(
+                    "concurrency cannot less or equal to zero");
+        }
+
+        this.size = size;
+        this.rounds = rounds;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Writes the line of the oldest file waiting to be written.
+     * 
+     * @param pending
+     *            the lines of the files being hashed.
+     * @param out
+     *            the writer of the manifest.
+     * @throws IOException
+     *             if the file cannot be read or the line cannot be written.
+     */
+    private static void emit(Deque<Future<String>> pending, Writer out)
+            throws IOException {
+        Future<String> line = pending.poll();
+        try {
+            out.write(line.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Writes the manifest of the tree under the given root.
+     * 
+     * @param root
+     *            the root directory of the tree.
+     * @param out
+     *            the writer of the manifest, which is neither flushed nor
+     *            closed.
+     * @return the number of files of the manifest.
+     * @throws IOException
+     *             if the tree cannot be read or the manifest cannot be
+     *             written.
+     * @throws IllegalArgumentException
+     *             if the root or the writer is null.
+     */
+    public long generate(Path root, Writer out) throws IOException {
+        if (root == null || out == null) {
+            throw new IllegalArgumentException("root and out cannot be null");
+        }
+
+        BlockingQueue<Slot> slots = new ArrayBlockingQueue<Slot>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            slots.add(new Slot(new Haval(size, rounds)));
+        }
+
+        ExecutorService executor = newExecutor();
+        Deque<Future<String>> pending = new ArrayDeque<Future<String>>();
+        Deque<Iterator<Entry>> walk = new ArrayDeque<Iterator<Entry>>();
+        long files = 0L;
+        try {
+            walk.push(list(root, ""));
+            while (!walk.isEmpty()) {
+                if (!walk.peek().hasNext()) {
+                    walk.pop();
+                    continue;
+                }
+
+                Entry entry = walk.peek().next();
+                if (entry.directory) {
+                    walk.push(list(entry.path, entry.relative + "/"));
+                    continue;
+                }
+
+                pending.add(executor.submit(new HashFile(entry, slots)));
+                files++;
+                if (pending.size() >= 4 * concurrency) {
+                    emit(pending, out);
+                }
+            }
+            while (!pending.isEmpty()) {
+                emit(pending, out);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return files;
+    }
+
+    /**
+     * Returns the maximum number of files hashed at once.
+     * 
+     * @return the concurrency.
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Returns the number of rounds of the digests.
+     * 
+     * @return the rounds
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Returns the output size of the digests.
+     * 
+     * @return the output size in bytes.
+     */
+    public int hashSize() {
+        return size;
+    }
+
+    /**
+     * Lists the regular files and directories of a directory, sorted so that
+     * the walk follows the lexicographic order of the paths: a directory is
+     * sorted by its name followed by <code>/</code>.
+     * 
+     * @param directory
+     *            the directory to list.
+     * @param prefix
+     *            the relative path of the directory, with a trailing
+     *            <code>/</code> unless it is the root.
+     * @return the entries of the directory.
+     * @throws IOException
+     *             if the directory cannot be listed.
+     */
+    private Iterator<Entry> list(Path directory, String prefix)
+            throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        try (DirectoryStream<Path> stream = Files
+                .newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                BasicFileAttributes attributes = Files.readAttributes(path,
+                        BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isDirectory() || attributes.isRegularFile()) {
+                    entries.add(new Entry(path, prefix
+                            + path.getFileName().toString(), attributes
+                            .isDirectory()));
+                }
+            }
+        }
+        Collections.sort(entries);
+
+        return entries.iterator();
+    }
+
+    /**
+     * Returns the executor of the hashing tasks: one virtual thread per task
+     * if the runtime has virtual threads, or as many daemon threads as files
+     * may be open at once.
+     * 
+     * @return a new executor.
+     */
+    private ExecutorService newExecutor() {
+        if (VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) VIRTUAL_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // falls back to platform threads
+            }
+        }
+
+        return Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "haval-manifest");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * A regular file or a directory of the tree.
+     */
+    private static final class Entry implements Comparable<Entry> {
+
+        private final boolean directory;
+
+        private final Path path;
+
+        private final String relative;
+
+        /**
+         * The key of the entry in the listing of its directory.
+         */
+        private final String sortKey;
+
+        private Entry(Path path, String relative, boolean directory) {
+            this.path = path;
+            this.relative = relative;
+            this.directory = directory;
+            this.sortKey = directory ? relative + "/" : relative;
+        }
+
+        public int compareTo(Entry other) {
+            return sortKey.compareTo(other.sortKey);
+        }
+    }
+
+    /**
+     * The hashing of a file into its manifest line.
+     */
+    private static final class HashFile implements Callable<String> {
+
+        private final Entry entry;
+
+        private final BlockingQueue<Slot> slots;
+
+        private HashFile(Entry entry, BlockingQueue<Slot> slots) {
+            this.entry = entry;
+            this.slots = slots;
+        }
+
+        public String call() throws IOException, InterruptedException {
+            Slot slot = slots.take();
+            try (FileChannel channel = FileChannel.open(entry.path,
+                    StandardOpenOption.READ)) {
+                ByteBuffer buffer = slot.buffer;
+                while (true) {
+                    buffer.clear();
+                    if (channel.read(buffer) < 0) {
+                        break;
+                    }
+                    buffer.flip();
+                    slot.haval.update(buffer);
+                }
+
+                return Util.toHex(slot.haval.digest(), false) + "  "
+                        + entry.relative + "\n";
+            } finally {
+                slot.haval.reset();
+                slots.add(slot);
+            }
+        }
+    }
+
+    /**
+     * The read buffer and the instance of a file being hashed.
+     */
+    private static final class Slot {
+
+        private final ByteBuffer buffer = ByteBuffer
+                .allocateDirect(READ_BUFFER_SIZE);
+
+        private final Haval haval;
+
+        private Slot(Haval haval) {
+            this.haval = haval;
+        }
+    }
+}
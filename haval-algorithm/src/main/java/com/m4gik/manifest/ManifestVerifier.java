@@ -0,0 +1,520 @@
+package com.m4gik.manifest;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.m4gik.Haval;
+import com.m4gik.util.Util;
+
+/**
+ * Verifies a directory tree against a manifest written by
+ * {@link ManifestGenerator}, hashing again only the files whose metadata
+ * changed since the previous run.
+ * <p>
+ * A cache file maps the path of every verified file to its size, its
+ * modification time, its inode number and its digest. A file whose metadata
+ * is the same as in the cache is not read at all: its cached digest is
+ * compared with the manifest. The cache is kept in the order of the
+ * manifest, so a run reads it through a memory-mapped window in one
+ * sequential pass, merged with the manifest, without holding it in memory,
+ * and writes the new cache the same way. Entries of paths which left the
+ * manifest are dropped, so the cache stays compact, and the new cache
+ * replaces the old one atomically once the run completes. A file whose
+ * metadata changed while it was hashed is not cached, and neither is a file
+ * modified during the second the run started or later: on a file system
+ * with coarse modification times, the file could still be rewritten with the
+ * same size and time after it was hashed. A file removed before it could be
+ * hashed is reported missing. A cache which is damaged or was written for
+ * other digests is ignored.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class ManifestVerifier {
+
+    /**
+     * The magic number of cache files, "HMC".
+     */
+    private static final int CACHE_MAGIC = 0x484D43;
+
+    /**
+     * The version of the format of cache files.
+     */
+    private static final byte CACHE_VERSION = 1;
+
+    /**
+     * The maximum length in bytes of a cached path.
+     */
+    private static final int MAX_PATH_BYTES = 0xFFFF;
+
+    /**
+     * The size of the buffer which the changed files are read into.
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The maximum number of bytes of the cache mapped at once. A window left
+     * behind stays mapped until it is garbage collected, as explained at
+     * {@link com.m4gik.BaseHash#DEFAULT_MAPPING_WINDOW}, so a run over a cache
+     * of a few GB maps a few dozen windows.
+     */
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Returns the metadata of a file.
+     * 
+     * @param file
+     *            the file to examine.
+     * @return the size, modification time and inode number of the file, or
+     *         <code>null</code> if it is missing or not a regular file.
+     * @throws IOException
+     *             if the metadata cannot be read.
+     */
+    private static long[] metadata(Path file) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+
+        long inode = 0L;
+        try {
+            inode = ((Number) Files.getAttribute(file, "unix:ino",
+                    LinkOption.NOFOLLOW_LINKS)).longValue();
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // no inode numbers on this file system
+        }
+
+        return new long[] { attributes.size(),
+                attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), inode };
+    }
+
+    /**
+     * The buffer which the changed files are read into.
+     */
+    private final ByteBuffer buffer = ByteBuffer
+            .allocateDirect(READ_BUFFER_SIZE);
+
+    /**
+     * The cache file.
+     */
+    private final Path cacheFile;
+
+    /**
+     * The instance which hashes the changed files.
+     */
+    private final Haval haval;
+
+    /**
+     * The number of rounds of the digests.
+     */
+    private final int rounds;
+
+    /**
+     * The output size of the digests.
+     */
+    private final int size;
+
+    /**
+     * Constructs a verifier of manifests of the designated digests, with the
+     * given cache file.
+     * 
+     * @param cacheFile
+     *            the cache file, which is created if it does not exist.
+     * @param size
+     *            the output size in bytes of the digests.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @throws IllegalArgumentException
+     *             if the cache file is null, if the designated output size is
+     *             invalid, or if the number of rounds is invalid.
+     */
+    public ManifestVerifier(Path cacheFile, int size, int rounds) {
+        if (cacheFile == null) {
+            throw new IllegalArgumentException("cacheFile cannot be null");
+        }
+
+        Haval.checkParameters(size, rounds);
+        this.haval = new Haval(size, rounds);
+        this.cacheFile = cacheFile;
+        this.size = size;
+        this.rounds = rounds;
+    }
+
+    /**
+     * Returns the cache file.
+     * 
+     * @return the path of the cache.
+     */
+    public Path getCacheFile() {
+        return cacheFile;
+    }
+
+    /**
+     * Returns the number of rounds of the digests.
+     * 
+     * @return the rounds
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Hashes a file. The file is read, not mapped: a file truncated while it
+     * is hashed only ends early, where a mapped file would fault, and its
+     * changed metadata keeps it out of the cache.
+     * 
+     * @param file
+     *            the file to hash.
+     * @return the digest of the file.
+     * @throws IOException
+     *             if the file cannot be read.
+     */
+    byte[] hash(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            ByteBuffer buffer = this.buffer;
+            while (true) {
+                buffer.clear();
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+                buffer.flip();
+                haval.update(buffer);
+            }
+        } catch (IOException | RuntimeException e) {
+            haval.reset();
+            throw e;
+        }
+
+        return haval.digest();
+    }
+
+    /**
+     * Returns the output size of the digests.
+     * 
+     * @return the output size in bytes.
+     */
+    public int hashSize() {
+        return size;
+    }
+
+    /**
+     * Verifies the tree under the given root against the given manifest file.
+     * 
+     * @param root
+     *            the root directory of the tree.
+     * @param manifest
+     *            the manifest file, in UTF-8.
+     * @return the report of the verification.
+     * @throws IOException
+     *             if the manifest is malformed, or if the manifest, the tree or
+     *             the cache cannot be read or written.
+     * @see #verify(Path, BufferedReader)
+     */
+    public VerificationReport verify(Path root, Path manifest)
+            throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(manifest,
+                StandardCharsets.UTF_8)) {
+            return verify(root, reader);
+        }
+    }
+
+    /**
+     * Verifies the tree under the given root against the manifest read from
+     * the given reader, and replaces the cache with the metadata and digests
+     * of the files of this manifest. A manifest out of order is verified
+     * correctly, but its paths out of order are hashed again and not
+     * cached.
+     * 
+     * @param root
+     *            the root directory of the tree.
+     * @param manifest
+     *            the reader of the manifest, which is not closed.
+     * @return the report of the verification.
+     * @throws IOException
+     *             if the manifest is malformed, or if the manifest, the tree or
+     *             the cache cannot be read or written.
+     * @throws IllegalArgumentException
+     *             if the root or the manifest is null.
+     */
+    public VerificationReport verify(Path root, BufferedReader manifest)
+            throws IOException {
+        if (root == null || manifest == null) {
+            throw new IllegalArgumentException(
+                    "root and manifest cannot be null");
+        }
+
+        VerificationReport report = new VerificationReport();
+        Path parent = cacheFile.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(parent, cacheFile.getFileName()
+                .toString(), ".tmp");
+        try {
+            try (CacheReader cache = new CacheReader(cacheFile, size, rounds);
+                    DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(
+                                    Files.newOutputStream(temporary), 65536))) {
+                out.writeInt(CACHE_MAGIC << 8 | CACHE_VERSION);
+                out.writeShort(size << 8 | rounds);
+                verify(root, manifest, cache, out, report);
+            }
+            Files.move(temporary, cacheFile,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        return report;
+    }
+
+    /**
+     * Merges the manifest with the cache.
+     * 
+     * @param root
+     *            the root directory of the tree.
+     * @param manifest
+     *            the reader of the manifest.
+     * @param cache
+     *            the reader of the previous cache.
+     * @param out
+     *            the stream of the new cache.
+     * @param report
+     *            the report of the verification.
+     * @throws IOException
+     *             if the manifest is malformed, or if the manifest, the tree or
+     *             the cache cannot be read or written.
+     */
+    private void verify(Path root, BufferedReader manifest,
+            CacheReader cache, DataOutputStream out, VerificationReport report)
+            throws IOException {
+        long start = TimeUnit.SECONDS.toNanos(TimeUnit.MILLISECONDS
+                .toSeconds(System.currentTimeMillis()));
+        String lastCached = null;
+        String line;
+        for (int number = 1; (line = manifest.readLine()) != null; number++) {
+            int separator = line.indexOf("  ");
+            if (separator != 2 * size) {
+                throw new IOException("Invalid manifest line " + number);
+            }
+
+            String path = line.substring(separator + 2);
+            byte[] expected;
+            try {
+                expected = Util.fromHex(line.substring(0, separator));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid manifest line " + number, e);
+            }
+
+            long[] metadata = metadata(root.resolve(path));
+            if (metadata == null) {
+                report.missing(path);
+                continue;
+            }
+
+            byte[] digest;
+            if (cache.seek(path) && Arrays.equals(cache.metadata, metadata)) {
+                digest = cache.digest;
+                report.skipped(path);
+            } else {
+                try {
+                    digest = hash(root.resolve(path));
+                } catch (NoSuchFileException e) {
+                    report.missing(path);
+                    continue;
+                }
+                report.rehashed(path);
+                if (metadata[1] >= start
+                        || !Arrays.equals(metadata, metadata(root
+                                .resolve(path)))) {
+                    metadata = null; // racily clean, or changed while hashed
+                }
+            }
+            if (!Arrays.equals(digest, expected)) {
+                report.mismatched(path);
+            }
+
+            byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+            if (metadata != null && bytes.length <= MAX_PATH_BYTES
+                    && (lastCached == null || lastCached.compareTo(path) < 0)) {
+                out.writeShort(bytes.length);
+                out.write(bytes);
+                for (long value : metadata) {
+                    out.writeLong(value);
+                }
+                out.write(digest);
+                lastCached = path;
+            }
+        }
+    }
+
+    /**
+     * Reads the entries of a cache file in order, through a memory-mapped
+     * window which slides along the file.
+     */
+    private static final class CacheReader implements Closeable {
+
+        /**
+         * The channel of the cache, or <code>null</code> if there is no valid
+         * cache.
+         */
+        private FileChannel channel;
+
+        /**
+         * The digest of the current entry.
+         */
+        private final byte[] digest;
+
+        /**
+         * The metadata of the current entry.
+         */
+        private final long[] metadata = new long[3];
+
+        /**
+         * The path of the current entry, or <code>null</code> once no entry
+         * is left.
+         */
+        private String path;
+
+        /**
+         * The offset in the file of the mapped window.
+         */
+        private long position;
+
+        /**
+         * The mapped window.
+         */
+        private MappedByteBuffer window;
+
+        private CacheReader(Path file, int size, int rounds)
+                throws IOException {
+            this.digest = new byte[size];
+            if (!Files.isRegularFile(file)) {
+                return;
+            }
+
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            if (!ensure(6)
+                    || window.getInt() != (CACHE_MAGIC << 8 | CACHE_VERSION)
+                    || window.getShort() != (short) (size << 8 | rounds)) {
+                close();
+                return;
+            }
+            next();
+        }
+
+        public void close() throws IOException {
+            path = null;
+            window = null;
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+
+        /**
+         * Makes sure the window holds the designated number of bytes from
+         * the current position, moving it along the file if needed.
+         * 
+         * @param length
+         *            the number of bytes needed.
+         * @return <code>false</code> if the file ends before.
+         * @throws IOException
+         *             if the file cannot be mapped.
+         */
+        private boolean ensure(int length) throws IOException {
+            if (window != null && window.remaining() >= length) {
+                return true;
+            }
+
+            position += window == null ? 0 : window.position();
+            long remaining = channel.size() - position;
+            if (remaining < length) {
+                return false;
+            }
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(remaining, WINDOW_SIZE));
+
+            return true;
+        }
+
+        /**
+         * Moves to the next entry, or past the last one. A damaged entry ends
+         * the cache.
+         * 
+         * @throws IOException
+         *             if the file cannot be read.
+         */
+        private void next() throws IOException {
+            if (channel == null || !ensure(2)) {
+                close();
+                return;
+            }
+
+            int length = window.getShort() & 0xFFFF;
+            if (!ensure(length + 24 + digest.length)) {
+                close();
+                return;
+            }
+
+            try {
+                byte[] bytes = new byte[length];
+                window.get(bytes);
+                String next = new String(bytes, StandardCharsets.UTF_8);
+                if (path != null && path.compareTo(next) >= 0) {
+                    close();
+                    return;
+                }
+
+                path = next;
+                for (int i = 0; i < metadata.length; i++) {
+                    metadata[i] = window.getLong();
+                }
+                window.get(digest);
+            } catch (BufferUnderflowException e) {
+                close();
+            }
+        }
+
+        /**
+         * Moves to the entry of the given path, skipping the entries before
+         * it.
+         * 
+         * @param target
+         *            the path to look for.
+         * @return <code>true</code> if the current entry is now the one of
+         *         the path.
+         * @throws IOException
+         *             if the file cannot be read.
+         */
+        private boolean seek(String target) throws IOException {
+            while (path != null && path.compareTo(target) < 0) {
+                next();
+            }
+
+            return target.equals(path);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.m4gik.manifest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a {@link ManifestVerifier} run: the paths of the manifest
+ * whose digest was taken from the cache, those which were hashed again, and
+ * among both those whose digest does not match the manifest, plus the paths
+ * which are not regular files any more. Paths are kept in manifest order.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class VerificationReport {
+
+    /**
+     * The paths whose digest does not match the manifest.
+     */
+    private final List<String> mismatched = new ArrayList<String>();
+
+    /**
+     * The paths which are missing or are not regular files.
+     */
+    private final List<String> missing = new ArrayList<String>();
+
+    /**
+     * The paths whose file was hashed again.
+     */
+    private final List<String> rehashed = new ArrayList<String>();
+
+    /**
+     * The paths whose digest was taken from the cache.
+     */
+    private final List<String> skipped = new ArrayList<String>();
+
+    /**
+     * Constructs an empty report.
+     */
+    VerificationReport() {
+        super();
+    }
+
+    /**
+     * Returns the paths whose digest does not match the manifest, whether it
+     * was taken from the cache or hashed again.
+     * 
+     * @return the mismatched paths.
+     */
+    public List<String> getMismatched() {
+        return Collections.unmodifiableList(mismatched);
+    }
+
+    /**
+     * Returns the paths which are missing or are not regular files any more.
+     * 
+     * @return the missing paths.
+     */
+    public List<String> getMissing() {
+        return Collections.unmodifiableList(missing);
+    }
+
+    /**
+     * Returns the paths whose file was hashed again, because it was not in
+     * the cache or its metadata changed.
+     * 
+     * @return the re-hashed paths.
+     */
+    public List<String> getRehashed() {
+        return Collections.unmodifiableList(rehashed);
+    }
+
+    /**
+     * Returns the paths whose digest was taken from the cache, without
+     * reading the file.
+     * 
+     * @return the skipped paths.
+     */
+    public List<String> getSkipped() {
+        return Collections.unmodifiableList(skipped);
+    }
+
+    /**
+     * Returns whether every file of the manifest exists and matches its
+     * digest.
+     * 
+     * @return <code>true</code> if the tree matches the manifest.
+     */
+    public boolean isValid() {
+        return mismatched.isEmpty() && missing.isEmpty();
+    }
+
+    /**
+     * Records a mismatched path.
+     * 
+     * @param path
+     *            the path to record.
+     */
+    void mismatched(String path) {
+        mismatched.add(path);
+    }
+
+    /**
+     * Records a missing path.
+     * 
+     * @param path
+     *            the path to record.
+     */
+    void missing(String path) {
+        missing.add(path);
+    }
+
+    /**
+     * Records a re-hashed path.
+     * 
+     * @param path
+     *            the path to record.
+     */
+    void rehashed(String path) {
+        rehashed.add(path);
+    }
+
+    /**
+     * Records a skipped path.
+     * 
+     * @param path
+     *            the path to record.
+     */
+    void skipped(String path) {
+        skipped.add(path);
+    }
+
+    @Override
+    public String toString() {
+        return "skipped " + skipped.size() + ", rehashed " + rehashed.size()
+                + ", mismatched " + mismatched.size() + ", missing "
+                + missing.size();
+    }
+}
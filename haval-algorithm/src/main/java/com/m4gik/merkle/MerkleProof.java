@@ -0,0 +1,175 @@
+package com.m4gik.merkle;
+
+import java.util.Arrays;
+
+import com.m4gik.Haval;
+
+/**
+ * The proof that a page belongs to the data of a {@link MerkleTree}: the
+ * siblings of the nodes on the path from the leaf of the page to the root,
+ * from the bottom up. The side of every sibling, and the levels where the
+ * node of the path was alone and promoted without a sibling, follow from the
+ * index of the page and the number of leaves, so the proof holds only the
+ * sibling digests. A proof takes one digest per level of the tree, 31 for a
+ * tree of a billion pages.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class MerkleProof {
+
+    /**
+     * The number of leaves of the tree.
+     */
+    private final long leafCount;
+
+    /**
+     * The index of the page.
+     */
+    private final long page;
+
+    /**
+     * The number of rounds of the digests.
+     */
+    private final int rounds;
+
+    /**
+     * The siblings of the nodes of the path, from the bottom up.
+     */
+    private final byte[][] siblings;
+
+    /**
+     * The output size of the digests.
+     */
+    private final int size;
+
+    /**
+     * Constructs a proof.
+     * 
+     * @param size
+     *            the output size in bytes of the digests.
+     * @param rounds
+     *            the number of rounds of the digests.
+     * @param page
+     *            the index of the page.
+     * @param leafCount
+     *            the number of leaves of the tree.
+     * @param siblings
+     *            the siblings of the nodes of the path, from the bottom up.
+     */
+    MerkleProof(int size, int rounds, long page, long leafCount,
+            byte[][] siblings) {
+        this.size = size;
+        this.rounds = rounds;
+        this.page = page;
+        this.leafCount = leafCount;
+        this.siblings = siblings;
+    }
+
+    /**
+     * Returns the root which the proof leads to from a page.
+     * 
+     * @param content
+     *            the array holding the page.
+     * @param offset
+     *            the index of the first byte of the page.
+     * @param length
+     *            the number of bytes of the page.
+     * @return the root of the tree, if the page belongs to it.
+     * @throws IllegalArgumentException
+     *             if the array is null or does not hold the designated bytes.
+     */
+    public byte[] computeRoot(byte[] content, int offset, int length) {
+        if (content == null || offset < 0 || length < 0
+                || offset > content.length - length) {
+            throw new IllegalArgumentException(
+                    "content cannot be null and must hold the bytes");
+        }
+
+        Haval haval = new Haval(size, rounds);
+        haval.update(MerkleTree.LEAF_NODE);
+        haval.update(content, offset, length);
+        byte[] node = haval.digest();
+
+        long index = page;
+        long count = leafCount;
+        int next = 0;
+        while (count > 1) {
+            long sibling = index ^ 1L;
+            if (sibling < count) {
+                haval.update(MerkleTree.INNER_NODE);
+                if (sibling < index) {
+                    haval.update(siblings[next], 0, size);
+                    haval.update(node, 0, size);
+                } else {
+                    haval.update(node, 0, size);
+                    haval.update(siblings[next], 0, size);
+                }
+                haval.digest(node, 0);
+                next++;
+            }
+            index >>>= 1;
+            count = (count + 1) / 2;
+        }
+
+        return node;
+    }
+
+    /**
+     * Returns the number of leaves of the tree.
+     * 
+     * @return the number of leaves.
+     */
+    public long getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     * Returns the index of the page.
+     * 
+     * @return the page.
+     */
+    public long getPage() {
+        return page;
+    }
+
+    /**
+     * Returns the siblings of the nodes on the path from the leaf of the page
+     * to the root, from the bottom up.
+     * 
+     * @return copies of the siblings.
+     */
+    public byte[][] getSiblings() {
+        byte[][] result = new byte[siblings.length][];
+        for (int i = 0; i < siblings.length; i++) {
+            result[i] = siblings[i].clone();
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns whether a page belongs to the data of a tree, given the root of
+     * the tree.
+     * 
+     * @param root
+     *            the trusted root of the tree.
+     * @param content
+     *            the array holding the page.
+     * @param offset
+     *            the index of the first byte of the page.
+     * @param length
+     *            the number of bytes of the page.
+     * @return <code>true</code> if the proof leads from the page to the root.
+     * @throws IllegalArgumentException
+     *             if the root or the array is null, or if the array does not
+     *             hold the designated bytes.
+     */
+    public boolean verify(byte[] root, byte[] content, int offset, int length) {
+        if (root == null) {
+            throw new IllegalArgumentException("root cannot be null");
+        }
+
+        return Arrays.equals(root, computeRoot(content, offset, length));
+    }
+}
@@ -0,0 +1,690 @@
+package com.m4gik.merkle;
+
+import static com.m4gik.HavalAttributes.BLOCK_SIZE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.m4gik.Haval;
+import com.m4gik.HavalTree;
+
+/**
+ * A persistent binary Merkle tree over the fixed-size pages of a file, for
+ * keeping the digest of a large file whose pages change a few at a time, such
+ * as a database snapshot, without hashing the whole file again.
+ * <p>
+ * The tree is built like a {@link HavalTree} of fan-out 2 whose leaves are
+ * the pages: a leaf is the {@link Haval} digest of the byte <code>0x00</code>
+ * followed by its page, the last page being shorter if the length of the file
+ * is not a multiple of the page size, an inner node is the digest of the byte
+ * <code>0x01</code> followed by its two children, and a node left alone at
+ * the end of a level is promoted to the next level. {@link #getDigest()}
+ * therefore equals the {@link HavalTree} digest of the file, while
+ * {@link #getRoot()} is the top node, which {@link MerkleProof}s lead to.
+ * <p>
+ * The nodes are kept in a file, level after level from the leaves up, each
+ * node taking exactly the output size, after a header of 32 bytes: the magic
+ * number and version, the output size, the number of rounds, the page size
+ * and the length of the data. The file is mapped into memory in windows of at
+ * most 1 GB, so a tree of any size is reached without reading it. After pages
+ * of the data changed, {@link #update(FileChannel, long...)} hashes only
+ * those pages again, then the inner nodes on their paths to the top, each
+ * node shared by several paths once. The length of the data is fixed: a file
+ * which grew or shrank needs a new tree.
+ * <p>
+ * A tree is not safe for use by several threads at once. Its file is only
+ * consistent once {@link #flush()} or {@link #close()} returned; a tree left
+ * half updated by a crash must be built again.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class MerkleTree implements Closeable {
+
+    /**
+     * The default page size in bytes.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 8192;
+
+    /**
+     * The number of bytes of the header of a tree file.
+     */
+    private static final int HEADER_SIZE = 32;
+
+    /**
+     * The prefix byte of inner node messages.
+     */
+    static final byte INNER_NODE = 0x01;
+
+    /**
+     * The prefix byte of leaf messages.
+     */
+    static final byte LEAF_NODE = 0x00;
+
+    /**
+     * The size of the buffer reading the data when building a tree.
+     */
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * The prefix byte of the final message.
+     */
+    private static final byte ROOT_NODE = 0x02;
+
+    /**
+     * The magic number of tree files, "HMT".
+     */
+    private static final int TREE_MAGIC = 0x484D54;
+
+    /**
+     * The version of the format of tree files.
+     */
+    private static final byte TREE_VERSION = 1;
+
+    /**
+     * The binary logarithm of the number of nodes of a mapped window. The
+     * windows of a tree are mapped once, at most one per GB of the tree file,
+     * and stay mapped until the tree is garbage collected, as Java cannot
+     * unmap them explicitly; {@link #close()} does not release them.
+     */
+    private static final int WINDOW_SHIFT = 25;
+
+    /**
+     * Builds the tree of a data file into a tree file, which is replaced if it
+     * exists.
+     * 
+     * @param data
+     *            the data file.
+     * @param tree
+     *            the tree file.
+     * @param pageSize
+     *            the size of a page in bytes, a positive multiple of
+     *            {@link com.m4gik.HavalAttributes#BLOCK_SIZE}.
+     * @param size
+     *            the output size in bytes of the digests.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @return the open tree.
+     * @throws IOException
+     *             if the data cannot be read or the tree cannot be written.
+     * @throws IllegalArgumentException
+     *             if a path is null, if the page size is invalid, if the
+     *             designated output size is invalid, or if the number of rounds
+     *             is invalid.
+     */
+    public static MerkleTree build(Path data, Path tree, int pageSize,
+            int size, int rounds) throws IOException {
+        Haval.checkParameters(size, rounds);
+        if (data == null || tree == null) {
+            throw new IllegalArgumentException("data and tree cannot be null");
+        }
+        if (pageSize <= 0 || pageSize % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Invalid page size");
+        }
+
+        try (FileChannel in = FileChannel.open(data, StandardOpenOption.READ)) {
+            long length = in.size();
+            FileChannel channel = FileChannel.open(tree,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(TREE_MAGIC << 8 | TREE_VERSION)
+                        .put((byte) size).put((byte) rounds).putInt(pageSize)
+                        .putLong(length).clear();
+                channel.write(header, 0L);
+                MerkleTree result = new MerkleTree(channel, size, rounds,
+                        pageSize, length);
+                result.hashAll(in);
+
+                return result;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of leaves of a tree.
+     * 
+     * @param length
+     *            the length of the data.
+     * @param pageSize
+     *            the size of a page.
+     * @return the number of pages, at least one.
+     */
+    static long leafCount(long length, int pageSize) {
+        return Math.max(1L, (length + pageSize - 1) / pageSize);
+    }
+
+    /**
+     * Opens a tree file written by
+     * {@link #build(Path, Path, int, int, int)}.
+     * 
+     * @param tree
+     *            the tree file.
+     * @return the open tree.
+     * @throws IOException
+     *             if the tree cannot be read or is not a valid tree file.
+     * @throws IllegalArgumentException
+     *             if the path is null.
+     */
+    public static MerkleTree open(Path tree) throws IOException {
+        if (tree == null) {
+            throw new IllegalArgumentException("tree cannot be null");
+        }
+
+        FileChannel channel = FileChannel.open(tree, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()
+                    && channel.read(header, header.position()) >= 0) {
+                // reads the whole header
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE
+                    || header.getInt() != (TREE_MAGIC << 8 | TREE_VERSION)) {
+                throw new IOException("Invalid tree file");
+            }
+
+            int size = header.get();
+            int rounds = header.get();
+            int pageSize = header.getInt();
+            long length = header.getLong();
+            try {
+                Haval.checkParameters(size, rounds);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid tree file", e);
+            }
+            if (pageSize <= 0 || pageSize % BLOCK_SIZE != 0 || length < 0L) {
+                throw new IOException("Invalid tree file");
+            }
+
+            MerkleTree result = new MerkleTree(channel, size, rounds,
+                    pageSize, length);
+            if (channel.size() != HEADER_SIZE + result.nodeCount() * size) {
+                throw new IOException("Invalid tree file");
+            }
+
+            return result;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The channel of the tree file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The instance hashing the nodes.
+     */
+    private final Haval haval;
+
+    /**
+     * The length of the data in bytes.
+     */
+    private final long length;
+
+    /**
+     * The number of nodes of every level, from the leaves up.
+     */
+    private final long[] levelCounts;
+
+    /**
+     * The index of the first node of every level.
+     */
+    private final long[] levelStarts;
+
+    /**
+     * A digest being computed.
+     */
+    private final byte[] node;
+
+    /**
+     * The size of a page in bytes.
+     */
+    private final int pageSize;
+
+    /**
+     * The number of rounds of the digests.
+     */
+    private final int rounds;
+
+    /**
+     * The output size of the digests.
+     */
+    private final int size;
+
+    /**
+     * The mapped windows of the nodes.
+     */
+    private final MappedByteBuffer[] windows;
+
+    /**
+     * Constructs a tree over a tree file and maps its nodes.
+     * 
+     * @param channel
+     *            the channel of the tree file.
+     * @param size
+     *            the output size of the digests.
+     * @param rounds
+     *            the number of rounds of the digests.
+     * @param pageSize
+     *            the size of a page.
+     * @param length
+     *            the length of the data.
+     * @throws IOException
+     *             if the nodes cannot be mapped.
+     */
+    private MerkleTree(FileChannel channel, int size, int rounds,
+            int pageSize, long length) throws IOException {
+        this.channel = channel;
+        this.size = size;
+        this.rounds = rounds;
+        this.pageSize = pageSize;
+        this.length = length;
+        this.haval = new Haval(size, rounds);
+        this.node = new byte[size];
+
+        long count = leafCount(length, pageSize);
+        int levels = 64 - Long.numberOfLeadingZeros(count - 1) + 1;
+        this.levelCounts = new long[levels];
+        this.levelStarts = new long[levels];
+        long start = 0L;
+        for (int level = 0; level < levels; level++) {
+            levelCounts[level] = count;
+            levelStarts[level] = start;
+            start += count;
+            count = (count + 1) / 2;
+        }
+
+        long nodes = nodeCount();
+        long windowNodes = 1L << WINDOW_SHIFT;
+        this.windows = new MappedByteBuffer[(int) ((nodes + windowNodes - 1)
+                >>> WINDOW_SHIFT)];
+        for (int i = 0; i < windows.length; i++) {
+            long first = (long) i << WINDOW_SHIFT;
+            windows[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_SIZE + first * size,
+                    Math.min(windowNodes, nodes - first) * size);
+        }
+    }
+
+    /**
+     * Checks that a page is in the data.
+     * 
+     * @param page
+     *            the page to check.
+     */
+    private void checkPage(long page) {
+        if (page < 0L || page >= levelCounts[0]) {
+            throw new IllegalArgumentException("page is out of the data");
+        }
+    }
+
+    /**
+     * Flushes the nodes and closes the tree file.
+     * 
+     * @throws IOException
+     *             if the tree cannot be written.
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Computes an inner node from its children, or copies the child of a
+     * node left alone at the end of its level.
+     * 
+     * @param level
+     *            the level of the node, above the leaves.
+     * @param index
+     *            the index of the node in its level.
+     */
+    private void combine(int level, long index) {
+        long left = levelStarts[level - 1] + 2 * index;
+        read(left, node);
+        if (2 * index + 1 == levelCounts[level - 1]) {
+            write(levelStarts[level] + index, node);
+            return;
+        }
+
+        haval.update(INNER_NODE);
+        haval.update(node, 0, size);
+        read(left + 1, node);
+        haval.update(node, 0, size);
+        haval.digest(node, 0);
+        write(levelStarts[level] + index, node);
+    }
+
+    /**
+     * Writes the mapped nodes to the tree file.
+     * 
+     * @throws IOException
+     *             if the tree cannot be written.
+     */
+    public void flush() throws IOException {
+        for (MappedByteBuffer window : windows) {
+            window.force();
+        }
+    }
+
+    /**
+     * Returns the length of the data in bytes.
+     * 
+     * @return the length of the data.
+     */
+    public long getDataLength() {
+        return length;
+    }
+
+    /**
+     * Returns the digest of the data, which equals its {@link HavalTree}
+     * digest with the page size as leaf size and a fan-out of 2.
+     * 
+     * @return the digest of the data.
+     */
+    public byte[] getDigest() {
+        Haval haval = new Haval(size, rounds);
+        haval.update(ROOT_NODE);
+        haval.update(ByteBuffer.allocate(13).putInt(pageSize).put((byte) 2)
+                .putLong(length).array());
+        haval.update(getRoot());
+
+        return haval.digest();
+    }
+
+    /**
+     * Returns the leaf of a page.
+     * 
+     * @param page
+     *            the index of the page.
+     * @return the digest of the page.
+     * @throws IllegalArgumentException
+     *             if the page is out of the data.
+     */
+    public byte[] getLeaf(long page) {
+        checkPage(page);
+        byte[] result = new byte[size];
+        read(page, result);
+
+        return result;
+    }
+
+    /**
+     * Returns the number of leaves, which is the number of pages of the data,
+     * or one if the data is empty.
+     * 
+     * @return the number of leaves.
+     */
+    public long getLeafCount() {
+        return levelCounts[0];
+    }
+
+    /**
+     * Returns the size of a page in bytes.
+     * 
+     * @return the page size.
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Returns the top node of the tree, which proofs lead to.
+     * 
+     * @return the root of the tree.
+     */
+    public byte[] getRoot() {
+        byte[] result = new byte[size];
+        read(levelStarts[levelStarts.length - 1], result);
+
+        return result;
+    }
+
+    /**
+     * Returns the number of rounds of the digests.
+     * 
+     * @return the rounds
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Hashes all the pages of the data and all the inner nodes.
+     * 
+     * @param in
+     *            the channel of the data.
+     * @throws IOException
+     *             if the data cannot be read.
+     */
+    private void hashAll(FileChannel in) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(pageSize,
+                READ_BUFFER_SIZE / pageSize * pageSize));
+        long position = 0L;
+        long page = 0L;
+        do {
+            buffer.clear();
+            while (buffer.hasRemaining() && position < length) {
+                int read = in.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("The data is shorter than expected");
+                }
+                position += read;
+            }
+            buffer.flip();
+            while (page < levelCounts[0]
+                    && (buffer.hasRemaining() || length == 0L)) {
+                ByteBuffer leaf = buffer.duplicate();
+                leaf.limit(Math.min(buffer.limit(), buffer.position()
+                        + pageSize));
+                buffer.position(leaf.limit());
+                hashLeaf(leaf, page++);
+            }
+        } while (page < levelCounts[0]);
+
+        for (int level = 1; level < levelCounts.length; level++) {
+            for (long index = 0L; index < levelCounts[level]; index++) {
+                combine(level, index);
+            }
+        }
+    }
+
+    /**
+     * Computes and writes the leaf of a page.
+     * 
+     * @param content
+     *            the bytes of the page.
+     * @param page
+     *            the index of the page.
+     */
+    private void hashLeaf(ByteBuffer content, long page) {
+        haval.update(LEAF_NODE);
+        haval.update(content);
+        haval.digest(node, 0);
+        write(page, node);
+    }
+
+    /**
+     * Returns the output size of the digests.
+     * 
+     * @return the output size in bytes.
+     */
+    public int hashSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of nodes of the tree.
+     * 
+     * @return the number of nodes of all levels.
+     */
+    private long nodeCount() {
+        int top = levelStarts.length - 1;
+
+        return levelStarts[top] + levelCounts[top];
+    }
+
+    /**
+     * Returns the proof that a page belongs to the data: the siblings of the
+     * nodes on the path from its leaf to the root.
+     * 
+     * @param page
+     *            the index of the page.
+     * @return the proof of the page.
+     * @throws IllegalArgumentException
+     *             if the page is out of the data.
+     */
+    public MerkleProof prove(long page) {
+        checkPage(page);
+        byte[][] siblings = new byte[levelCounts.length - 1][];
+        int count = 0;
+        long index = page;
+        for (int level = 0; level < levelCounts.length - 1; level++) {
+            long sibling = index ^ 1L;
+            if (sibling < levelCounts[level]) {
+                siblings[count] = new byte[size];
+                read(levelStarts[level] + sibling, siblings[count++]);
+            }
+            index >>>= 1;
+        }
+
+        return new MerkleProof(size, rounds, page, levelCounts[0],
+                Arrays.copyOf(siblings, count));
+    }
+
+    /**
+     * Reads a node.
+     * 
+     * @param index
+     *            the index of the node in the tree.
+     * @param out
+     *            the array which receives the node.
+     */
+    private void read(long index, byte[] out) {
+        MappedByteBuffer window = windows[(int) (index >>> WINDOW_SHIFT)];
+        window.position((int) (index & (1L << WINDOW_SHIFT) - 1) * size);
+        window.get(out, 0, size);
+    }
+
+    /**
+     * Hashes changed pages of the data again, and recomputes the inner nodes
+     * on their paths to the root.
+     * 
+     * @param data
+     *            the channel of the data, of the length the tree was built
+     *            for.
+     * @param pages
+     *            the indexes of the changed pages, in any order and possibly
+     *            repeated.
+     * @throws IOException
+     *             if the data cannot be read or its length changed.
+     * @throws IllegalArgumentException
+     *             if the channel or the pages are null, or if a page is out of
+     *             the data.
+     */
+    public void update(FileChannel data, long... pages) throws IOException {
+        if (data == null || pages == null) {
+            throw new IllegalArgumentException("data and pages cannot be null");
+        }
+        if (data.size() != length) {
+            throw new IOException(
+                    "The length of the data changed, the tree must be rebuilt");
+        }
+
+        long[] dirty = pages.clone();
+        Arrays.sort(dirty);
+        int count = 0;
+        for (long page : dirty) {
+            checkPage(page);
+            if (count == 0 || dirty[count - 1] != page) {
+                dirty[count++] = page;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+        for (int i = 0; i < count; i++) {
+            long position = dirty[i] * pageSize;
+            buffer.clear();
+            buffer.limit((int) Math.min(pageSize, length - position));
+            while (buffer.hasRemaining()) {
+                if (data.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException(
+                            "The data is shorter than expected");
+                }
+            }
+            buffer.flip();
+            hashLeaf(buffer, dirty[i]);
+        }
+
+        for (int level = 1; level < levelCounts.length; level++) {
+            int parents = 0;
+            for (int i = 0; i < count; i++) {
+                long parent = dirty[i] >>> 1;
+                if (parents == 0 || dirty[parents - 1] != parent) {
+                    dirty[parents++] = parent;
+                }
+            }
+            count = parents;
+            for (int i = 0; i < count; i++) {
+                combine(level, dirty[i]);
+            }
+        }
+    }
+
+    /**
+     * Hashes changed pages of a data file again, and recomputes the inner
+     * nodes on their paths to the root.
+     * 
+     * @param data
+     *            the data file, of the length the tree was built for.
+     * @param pages
+     *            the indexes of the changed pages, in any order and possibly
+     *            repeated.
+     * @throws IOException
+     *             if the data cannot be read or its length changed.
+     * @throws IllegalArgumentException
+     *             if the path or the pages are null, or if a page is out of the
+     *             data.
+     */
+    public void update(Path data, long... pages) throws IOException {
+        if (data == null) {
+            throw new IllegalArgumentException("data cannot be null");
+        }
+
+        try (FileChannel in = FileChannel.open(data, StandardOpenOption.READ)) {
+            update(in, pages);
+        }
+    }
+
+    /**
+     * Writes a node.
+     * 
+     * @param index
+     *            the index of the node in the tree.
+     * @param in
+     *            the array holding the node.
+     */
+    private void write(long index, byte[] in) {
+        MappedByteBuffer window = windows[(int) (index >>> WINDOW_SHIFT)];
+        window.position((int) (index & (1L << WINDOW_SHIFT) - 1) * size);
+        window.put(in, 0, size);
+    }
+}
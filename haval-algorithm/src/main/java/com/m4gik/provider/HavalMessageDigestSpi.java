@@ -0,0 +1,106 @@
+package com.m4gik.provider;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigestSpi;
+
+import com.m4gik.Haval;
+
+/**
+ * The {@link MessageDigestSpi} of one {@link Haval} variant, which delegates
+ * every operation to a {@link Haval} instance of the designated output size
+ * and number of rounds.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public final class HavalMessageDigestSpi extends MessageDigestSpi implements
+        Cloneable {
+
+    /**
+     * The underlying digest.
+     */
+    private final Haval haval;
+
+    /**
+     * Constructs the service provider of the designated {@link Haval}
+     * variant.
+     * 
+     * @param size
+     *            the output size in bytes.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid, or if the number of
+     *             rounds is invalid.
+     */
+    public HavalMessageDigestSpi(int size, int rounds) {
+        this(new Haval(size, rounds));
+    }
+
+    /**
+     * Constructor for cloning purposes.
+     * 
+     * @param haval
+     *            the underlying digest.
+     */
+    private HavalMessageDigestSpi(Haval haval) {
+        this.haval = haval;
+    }
+
+    /**
+     * Returns a clone copy of this instance, copying the state of the
+     * underlying digest only.
+     * 
+     * @see java.security.MessageDigestSpi#clone()
+     */
+    @Override
+    public Object clone() {
+        return new HavalMessageDigestSpi((Haval) haval.clone());
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        return haval.digest();
+    }
+
+    @Override
+    protected int engineDigest(byte[] buf, int offset, int len)
+            throws DigestException {
+        int size = haval.hashSize();
+        if (len < size) {
+            throw new DigestException("partial digests not returned");
+        }
+        if (buf.length - offset < size) {
+            throw new DigestException("insufficient space in the output "
+                    + "buffer to store the digest");
+        }
+
+        return haval.digest(buf, offset);
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return haval.hashSize();
+    }
+
+    @Override
+    protected void engineReset() {
+        haval.reset();
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        haval.update(input);
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        haval.update(input, offset, len);
+    }
+
+    @Override
+    protected void engineUpdate(ByteBuffer input) {
+        haval.update(input);
+    }
+}
@@ -0,0 +1,98 @@
+package com.m4gik.provider;
+
+import static com.m4gik.HavalAttributes.HAVAL_128_BIT;
+import static com.m4gik.HavalAttributes.HAVAL_160_BIT;
+import static com.m4gik.HavalAttributes.HAVAL_192_BIT;
+import static com.m4gik.HavalAttributes.HAVAL_224_BIT;
+import static com.m4gik.HavalAttributes.HAVAL_256_BIT;
+import static com.m4gik.HavalAttributes.HAVAL_3_ROUND;
+import static com.m4gik.HavalAttributes.HAVAL_4_ROUND;
+import static com.m4gik.HavalAttributes.HAVAL_5_ROUND;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+
+/**
+ * The security provider of the {@link com.m4gik.Haval} message digests. Once
+ * installed, for instance with
+ * {@link java.security.Security#addProvider(Provider)}, every variant can be
+ * obtained with {@link java.security.MessageDigest#getInstance(String)} by
+ * its name <code>HAVAL-&lt;bits&gt;/&lt;rounds&gt;</code>, from
+ * <code>HAVAL-128/3</code> to <code>HAVAL-256/5</code>.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public final class HavalProvider extends Provider {
+
+    /**
+     * The name of this provider.
+     */
+    public static final String PROVIDER_NAME = "M4GIK";
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Returns the standard name of a {@link com.m4gik.Haval} variant.
+     * 
+     * @param size
+     *            the output size in bytes.
+     * @param rounds
+     *            the number of rounds.
+     * @return the name of the variant, such as <code>HAVAL-128/3</code>.
+     */
+    public static String algorithmName(int size, int rounds) {
+        return "HAVAL-" + size * 8 + "/" + rounds;
+    }
+
+    /**
+     * Constructs the provider and registers all 15 {@link com.m4gik.Haval}
+     * variants.
+     */
+    // Provider(String, String, String) only exists from Java 9 on, so the
+    // constructor deprecated there is the only one available on Java 8.
+    @SuppressWarnings("deprecation")
+    public HavalProvider() {
+        super(PROVIDER_NAME, 1.0, "HAVAL message digests (" + PROVIDER_NAME
+                + " provider)");
+
+        int[] sizes = { HAVAL_128_BIT, HAVAL_160_BIT, HAVAL_192_BIT,
+                HAVAL_224_BIT, HAVAL_256_BIT };
+        int[] rounds = { HAVAL_3_ROUND, HAVAL_4_ROUND, HAVAL_5_ROUND };
+        for (int size : sizes) {
+            for (int passes : rounds) {
+                putService(new HavalService(this, size, passes));
+            }
+        }
+    }
+
+    /**
+     * The service of one variant, which constructs its
+     * {@link HavalMessageDigestSpi} directly instead of looking up a class by
+     * reflection.
+     */
+    private static final class HavalService extends Service {
+
+        private final int rounds;
+
+        private final int size;
+
+        private HavalService(Provider provider, int size, int rounds) {
+            super(provider, "MessageDigest", algorithmName(size, rounds),
+                    HavalMessageDigestSpi.class.getName(), null, null);
+            this.size = size;
+            this.rounds = rounds;
+        }
+
+        @Override
+        public Object newInstance(Object constructorParameter)
+                throws NoSuchAlgorithmException {
+            if (constructorParameter != null) {
+                throw new NoSuchAlgorithmException(
+                        "constructorParameter not used with MessageDigest");
+            }
+
+            return new HavalMessageDigestSpi(size, rounds);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.m4gik.service;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+import com.m4gik.Haval;
+
+/**
+ * An in-process service hashing many small payloads submitted by many
+ * threads, instead of every thread calling {@link Haval#hash(byte[])}.
+ * <p>
+ * The service runs a few dedicated consumer threads, each draining its own
+ * preallocated ring buffer in the style of the LMAX Disruptor. A producer
+ * thread always submits to the same ring buffer, so its requests complete in
+ * the order it submitted them. A consumer takes the requests in batches, and
+ * hashes a batch with one {@link Haval} instance which it reuses for its
+ * whole life, so the per-call setup is paid once and the state and the code
+ * of the transform stay in the caches of its processor. A batch is made of
+ * the requests waiting when the consumer looks for work, up to
+ * <code>batchSize</code>; with a positive <code>batchDelay</code>, the
+ * consumer also waits up to that many nanoseconds for a batch to fill up, so
+ * the batching never delays a request by more than the delay. How an idle
+ * consumer waits is set by a {@link WaitStrategy}.
+ * <p>
+ * The digest of a request is passed to its callback on the consumer thread,
+ * which should therefore return quickly; an exception thrown by a callback is
+ * passed to the uncaught exception handler of the thread, which goes on with
+ * the next request. The bytes of a request must not change until its
+ * callback is called. When a ring buffer is full, producers wait for its
+ * consumer to release slots.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class HashingService implements AutoCloseable {
+
+    /**
+     * The default maximum number of requests hashed in one batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     * The default number of slots of every ring buffer.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The default number of consumer threads: half the processors, between
+     * one and four.
+     */
+    public static final int DEFAULT_CONSUMERS = Math.max(1,
+            Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+    /**
+     * The maximum number of nanoseconds a consumer waits for a batch to fill
+     * up.
+     */
+    private final long batchDelay;
+
+    /**
+     * The maximum number of requests hashed in one batch.
+     */
+    private final int batchSize;
+
+    /**
+     * The number of slots of every ring buffer.
+     */
+    private final int capacity;
+
+    /**
+     * The ring buffers, one per consumer thread.
+     */
+    private final RingBuffer[] rings;
+
+    /**
+     * The number of rounds of the digests.
+     */
+    private final int rounds;
+
+    /**
+     * The output size of the digests.
+     */
+    private final int size;
+
+    /**
+     * How the idle consumer threads wait for requests.
+     */
+    private final WaitStrategy strategy;
+
+    /**
+     * Constructs a service with {@link #DEFAULT_CONSUMERS} consumer threads,
+     * ring buffers of {@link #DEFAULT_CAPACITY} slots and batches of up to
+     * {@link #DEFAULT_BATCH_SIZE} requests, formed without waiting, whose
+     * threads park when they are idle.
+     * 
+     * @param size
+     *            the output size in bytes of the digests.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid, or if the number of
+     *             rounds is invalid.
+     */
+    public HashingService(int size, int rounds) {
+        this(size, rounds, DEFAULT_CONSUMERS, DEFAULT_CAPACITY,
+                DEFAULT_BATCH_SIZE, 0L, WaitStrategy.BLOCKING);
+    }
+
+    /**
+     * Constructs a service and starts its consumer threads.
+     * 
+     * @param size
+     *            the output size in bytes of the digests.
+     * @param rounds
+     *            the number of rounds to apply when transforming data.
+     * @param consumers
+     *            the number of consumer threads.
+     * @param capacity
+     *            the number of slots of the ring buffer of every consumer, a
+     *            power of two.
+     * @param batchSize
+     *            the maximum number of requests hashed in one batch, at most
+     *            the capacity.
+     * @param batchDelay
+     *            the maximum number of nanoseconds a consumer waits for a
+     *            batch to fill up, or <code>0</code> to hash the requests
+     *            waiting without waiting for more.
+     * @param strategy
+     *            how the idle consumer threads wait for requests.
+     * @throws IllegalArgumentException
+     *             if the designated output size is invalid, if the number of
+     *             rounds is invalid, or if any other parameter is invalid.
+     */
+    public HashingService(int size, int rounds, int consumers, int capacity,
+            int batchSize, long batchDelay, WaitStrategy strategy) {
+        Haval.checkParameters(size, rounds);
+        if (consumers <= 0) {
+            throw new IllegalArgumentException(
+                    "consumers cannot less or equal to zero");
+        }
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException(
+                    "capacity must be a power of two");
+        }
+        if (batchSize <= 0 || batchSize > capacity) {
+            throw new IllegalArgumentException(
+                    "batchSize must be between one and the capacity");
+        }
+        if (batchDelay < 0L) {
+            throw new IllegalArgumentException(
+                    "batchDelay cannot less than zero");
+        }
+        if (strategy == null) {
+            throw new IllegalArgumentException("strategy cannot be null");
+        }
+
+        this.size = size;
+        this.rounds = rounds;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        this.strategy = strategy;
+        this.rings = new RingBuffer[consumers];
+        for (int i = 0; i < consumers; i++) {
+            rings[i] = new RingBuffer("haval-hashing-" + i, size, rounds,
+                    capacity, batchSize, batchDelay, strategy);
+        }
+        for (RingBuffer ring : rings) {
+            ring.start();
+        }
+    }
+
+    /**
+     * Stops accepting requests, and waits for the consumer threads to hash
+     * the requests already accepted and to exit. If the calling thread is
+     * interrupted, it returns without waiting, with its interrupt status set.
+     */
+    public void close() {
+        for (RingBuffer ring : rings) {
+            ring.close();
+        }
+
+        try {
+            for (RingBuffer ring : rings) {
+                ring.getConsumer().join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the maximum number of nanoseconds a consumer waits for a batch
+     * to fill up.
+     * 
+     * @return the batch delay.
+     */
+    public long getBatchDelay() {
+        return batchDelay;
+    }
+
+    /**
+     * Returns the maximum number of requests hashed in one batch.
+     * 
+     * @return the batch size.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns the number of slots of the ring buffer of every consumer.
+     * 
+     * @return the capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of consumer threads.
+     * 
+     * @return the number of consumers.
+     */
+    public int getConsumers() {
+        return rings.length;
+    }
+
+    /**
+     * Returns the number of rounds of the digests.
+     * 
+     * @return the rounds
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Returns how the idle consumer threads wait for requests.
+     * 
+     * @return the wait strategy.
+     */
+    public WaitStrategy getWaitStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Returns the output size of the digests.
+     * 
+     * @return the output size in bytes.
+     */
+    public int hashSize() {
+        return size;
+    }
+
+    /**
+     * Returns the ring buffer of the calling thread.
+     * 
+     * @return the ring buffer to submit to.
+     */
+    private RingBuffer ring() {
+        return rings[(int) (Thread.currentThread().getId() % rings.length)];
+    }
+
+    /**
+     * Submits a request to hash an array.
+     * 
+     * @param input
+     *            the array to hash, which must not change until the callback
+     *            is called.
+     * @param callback
+     *            the callback receiving the digest.
+     * @throws IllegalArgumentException
+     *             if the input or the callback is null.
+     * @throws IllegalStateException
+     *             if the service is closed.
+     */
+    public void submit(byte[] input, Consumer<? super byte[]> callback) {
+        if (input == null) {
+            throw new IllegalArgumentException("Input cannot be null");
+        }
+
+        submit(input, 0, input.length, callback);
+    }
+
+    /**
+     * Submits a request to hash bytes of an array.
+     * 
+     * @param input
+     *            the array holding the bytes to hash, which must not change
+     *            until the callback is called.
+     * @param offset
+     *            the index of the first byte to hash.
+     * @param length
+     *            the number of bytes to hash.
+     * @param callback
+     *            the callback receiving the digest.
+     * @throws IllegalArgumentException
+     *             if the input or the callback is null, or if the bytes are
+     *             out of the bounds of the array.
+     * @throws IllegalStateException
+     *             if the service is closed.
+     */
+    public void submit(byte[] input, int offset, int length,
+            Consumer<? super byte[]> callback) {
+        if (input == null || callback == null) {
+            throw new IllegalArgumentException(
+                    "input and callback cannot be null");
+        }
+        if (offset < 0 || length < 0 || offset > input.length - length) {
+            throw new IllegalArgumentException(
+                    "offset and length are out of the bounds of input");
+        }
+
+        ring().submit(input, offset, length, callback);
+    }
+
+    /**
+     * Submits a request to hash the remaining bytes of a buffer. The position
+     * of the buffer is left unchanged.
+     * 
+     * @param input
+     *            the buffer to hash, whose content, position and limit must
+     *            not change until the callback is called.
+     * @param callback
+     *            the callback receiving the digest.
+     * @throws IllegalArgumentException
+     *             if the input or the callback is null.
+     * @throws IllegalStateException
+     *             if the service is closed.
+     */
+    public void submit(ByteBuffer input, Consumer<? super byte[]> callback) {
+        if (input == null || callback == null) {
+            throw new IllegalArgumentException(
+                    "input and callback cannot be null");
+        }
+
+        ring().submit(input, callback);
+    }
+}
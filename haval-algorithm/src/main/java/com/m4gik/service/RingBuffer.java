@@ -0,0 +1,414 @@
+package com.m4gik.service;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import com.m4gik.Haval;
+
+/**
+ * The ring buffer of requests of one consumer thread of a
+ * {@link HashingService}, in the style of the LMAX Disruptor: its slots are
+ * allocated once, producers claim sequences with an atomic increment, fill
+ * the slot of their sequence once the consumer released it and publish it by
+ * writing the sequence into the slot. The consumer takes the published slots
+ * in order, in batches of up to <code>batchSize</code> slots, hashes them one
+ * after the other with the same {@link Haval} instance, then calls their
+ * callbacks and releases the whole batch with a single write.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+final class RingBuffer implements Runnable {
+
+    /**
+     * The number of times a producer spins before it yields, then parks,
+     * while the ring buffer is full.
+     */
+    private static final int SPIN_TRIES = 100;
+
+    /**
+     * The maximum number of nanoseconds the consumer waits for a batch to
+     * fill up.
+     */
+    private final long batchDelay;
+
+    /**
+     * The maximum number of requests of a batch.
+     */
+    private final int batchSize;
+
+    /**
+     * The next sequence to claim.
+     */
+    private final AtomicLong claim = new AtomicLong();
+
+    /**
+     * Whether the ring buffer accepts no more requests.
+     */
+    private volatile boolean closed;
+
+    /**
+     * The last sequence whose slot was released by the consumer.
+     */
+    private volatile long consumed = -1L;
+
+    /**
+     * The consumer thread.
+     */
+    private final Thread consumer;
+
+    /**
+     * Whether the consumer thread exited.
+     */
+    private volatile boolean done;
+
+    /**
+     * The mask of the index of the slot of a sequence.
+     */
+    private final int mask;
+
+    /**
+     * The number of rounds of the digests.
+     */
+    private final int rounds;
+
+    /**
+     * The output size of the digests.
+     */
+    private final int size;
+
+    /**
+     * Whether the consumer thread is parked, or about to be.
+     */
+    private volatile boolean sleeping;
+
+    /**
+     * The slots, as many as the capacity.
+     */
+    private final Slot[] slots;
+
+    /**
+     * How the consumer thread waits for requests.
+     */
+    private final WaitStrategy strategy;
+
+    /**
+     * The sequence the consumer thread is waiting for.
+     */
+    private long waitingFor;
+
+    /**
+     * Constructs a ring buffer and its consumer thread, which is not started.
+     * 
+     * @param name
+     *            the name of the consumer thread.
+     * @param size
+     *            the output size in bytes of the digests.
+     * @param rounds
+     *            the number of rounds of the digests.
+     * @param capacity
+     *            the number of slots, a power of two.
+     * @param batchSize
+     *            the maximum number of requests of a batch.
+     * @param batchDelay
+     *            the maximum number of nanoseconds to wait for a batch to
+     *            fill up.
+     * @param strategy
+     *            how the consumer thread waits for requests.
+     */
+    RingBuffer(String name, int size, int rounds, int capacity,
+            int batchSize, long batchDelay, WaitStrategy strategy) {
+        this.size = size;
+        this.rounds = rounds;
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        this.strategy = strategy;
+        this.mask = capacity - 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+
+        this.consumer = new Thread(this, name);
+        this.consumer.setDaemon(true);
+    }
+
+    /**
+     * Returns the end of the run of published slots starting at a sequence.
+     * 
+     * @param from
+     *            the first sequence of the run.
+     * @param limit
+     *            the sequence at which the run must stop.
+     * @return the sequence following the last published slot of the run.
+     */
+    private long available(long from, long limit) {
+        long sequence = from;
+        while (sequence < limit
+                && slots[(int) sequence & mask].sequence == sequence) {
+            sequence++;
+        }
+
+        return sequence;
+    }
+
+    /**
+     * Claims the slot of a new sequence once the consumer released it.
+     * 
+     * @return the claimed sequence.
+     * @throws IllegalStateException
+     *             if the ring buffer is closed.
+     */
+    private long claim() {
+        if (closed) {
+            throw new IllegalStateException("The service is closed");
+        }
+
+        long sequence = claim.getAndIncrement();
+        long wrap = sequence - slots.length;
+        for (int count = 0; wrap > consumed; count++) {
+            if (done) {
+                throw new IllegalStateException("The service is closed");
+            }
+            if (count >= 2 * SPIN_TRIES) {
+                LockSupport.parkNanos(1L);
+            } else if (count >= SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+
+        if (closed) { // the consumer may be waiting for this sequence
+            publish(sequence, slots[(int) sequence & mask]);
+            throw new IllegalStateException("The service is closed");
+        }
+
+        return sequence;
+    }
+
+    /**
+     * Stops accepting requests and wakes the consumer thread up, which exits
+     * once the requests already accepted are processed.
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Returns the consumer thread.
+     * 
+     * @return the consumer thread.
+     */
+    Thread getConsumer() {
+        return consumer;
+    }
+
+    /**
+     * Hashes the requests of a batch, calls their callbacks, and releases
+     * their slots.
+     * 
+     * @param haval
+     *            the instance hashing the requests.
+     * @param from
+     *            the first sequence of the batch.
+     * @param end
+     *            the sequence following the last one of the batch.
+     */
+    private void process(Haval haval, long from, long end) {
+        for (long sequence = from; sequence < end; sequence++) {
+            Slot slot = slots[(int) sequence & mask];
+            if (slot.callback == null) {
+                continue;
+            }
+            if (slot.array != null) {
+                haval.update(slot.array, slot.offset, slot.length);
+            } else {
+                haval.update(slot.buffer.duplicate());
+            }
+            slot.digest = new byte[size];
+            haval.digest(slot.digest, 0);
+        }
+
+        for (long sequence = from; sequence < end; sequence++) {
+            Slot slot = slots[(int) sequence & mask];
+            Consumer<? super byte[]> callback = slot.callback;
+            byte[] digest = slot.digest;
+            slot.clear();
+            if (callback == null) {
+                continue;
+            }
+            try {
+                callback.accept(digest);
+            } catch (RuntimeException | Error e) {
+                consumer.getUncaughtExceptionHandler().uncaughtException(
+                        consumer, e);
+            }
+        }
+
+        consumed = end - 1;
+    }
+
+    /**
+     * Parks the consumer thread until a producer publishes the slot it is
+     * waiting for, the ring buffer is closed, or the deadline passes.
+     * 
+     * @param deadline
+     *            the {@link System#nanoTime()} at which to stop waiting, or
+     *            <code>0</code> if there is none.
+     */
+    void park(long deadline) {
+        sleeping = true;
+        if (!closed && slots[(int) waitingFor & mask].sequence != waitingFor) {
+            if (deadline == 0L) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, deadline - System.nanoTime());
+            }
+        }
+        sleeping = false;
+    }
+
+    /**
+     * Publishes the slot of a sequence, and wakes the consumer thread up if
+     * it is parked.
+     * 
+     * @param sequence
+     *            the sequence to publish.
+     * @param slot
+     *            the slot of the sequence.
+     */
+    private void publish(long sequence, Slot slot) {
+        slot.sequence = sequence;
+        if (sleeping) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Consumes the requests until the ring buffer is closed and all the
+     * requests it accepted are processed.
+     */
+    public void run() {
+        Haval haval = new Haval(size, rounds);
+        long next = 0L;
+        int count = 0;
+        try {
+            while (true) {
+                long end = available(next, next + batchSize);
+                if (end == next) {
+                    if (closed && next >= claim.get()) {
+                        break;
+                    }
+                    waitingFor = next;
+                    strategy.idle(this, count++, 0L);
+                    continue;
+                }
+
+                if (end - next < batchSize && batchDelay > 0L) {
+                    long deadline = System.nanoTime() + batchDelay;
+                    deadline = deadline == 0L ? 1L : deadline;
+                    for (int waits = 0; end - next < batchSize && !closed;) {
+                        long more = available(end, next + batchSize);
+                        if (more > end) {
+                            end = more;
+                        } else if (System.nanoTime() - deadline >= 0L) {
+                            break;
+                        } else {
+                            waitingFor = end;
+                            strategy.idle(this, waits++, deadline);
+                        }
+                    }
+                }
+
+                count = 0;
+                process(haval, next, end);
+                next = end;
+            }
+        } finally {
+            done = true;
+        }
+    }
+
+    /**
+     * Starts the consumer thread.
+     */
+    void start() {
+        consumer.start();
+    }
+
+    /**
+     * Submits a request to hash bytes of an array.
+     * 
+     * @param array
+     *            the array to hash.
+     * @param offset
+     *            the index of the first byte to hash.
+     * @param length
+     *            the number of bytes to hash.
+     * @param callback
+     *            the callback receiving the digest.
+     */
+    void submit(byte[] array, int offset, int length,
+            Consumer<? super byte[]> callback) {
+        long sequence = claim();
+        Slot slot = slots[(int) sequence & mask];
+        slot.array = array;
+        slot.offset = offset;
+        slot.length = length;
+        slot.callback = callback;
+        publish(sequence, slot);
+    }
+
+    /**
+     * Submits a request to hash the remaining bytes of a buffer.
+     * 
+     * @param buffer
+     *            the buffer to hash.
+     * @param callback
+     *            the callback receiving the digest.
+     */
+    void submit(ByteBuffer buffer, Consumer<? super byte[]> callback) {
+        long sequence = claim();
+        Slot slot = slots[(int) sequence & mask];
+        slot.buffer = buffer;
+        slot.callback = callback;
+        publish(sequence, slot);
+    }
+
+    /**
+     * A request to hash, allocated once and reused for every lap of the ring.
+     */
+    private static final class Slot {
+
+        private byte[] array;
+
+        private ByteBuffer buffer;
+
+        private Consumer<? super byte[]> callback;
+
+        private byte[] digest;
+
+        private int length;
+
+        private int offset;
+
+        /**
+         * The sequence of the request held by the slot, written last by the
+         * producer to publish it.
+         */
+        private volatile long sequence = -1L;
+
+        /**
+         * Drops the references of the slot, so that the request can be
+         * collected.
+         */
+        private void clear() {
+            array = null;
+            buffer = null;
+            callback = null;
+            digest = null;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.m4gik.service;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How an idle consumer thread of a {@link HashingService} waits for requests:
+ * the strategies trade the latency of picking up a request against the
+ * processor time burnt while there is none.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public enum WaitStrategy {
+
+    /**
+     * Parks the thread after a short spin, until a producer wakes it up. Uses
+     * no processor time while idle, at the cost of a wake-up of a few
+     * microseconds for the first request after a pause.
+     */
+    BLOCKING {
+        @Override
+        void idle(RingBuffer ring, int count, long deadline) {
+            if (count >= SPIN_TRIES) {
+                ring.park(deadline);
+            }
+        }
+    },
+
+    /**
+     * Spins without ever giving up the processor. Has the lowest latency, and
+     * takes a whole processor per consumer thread.
+     */
+    BUSY_SPIN {
+        @Override
+        void idle(RingBuffer ring, int count, long deadline) {
+            // spins
+        }
+    },
+
+    /**
+     * Spins, then yields, then sleeps for short periods. Uses little
+     * processor time while idle, and picks up a request within the
+     * resolution of the operating system timer.
+     */
+    SLEEPING {
+        @Override
+        void idle(RingBuffer ring, int count, long deadline) {
+            if (count >= 2 * SPIN_TRIES) {
+                LockSupport.parkNanos(SLEEP_NANOS);
+            } else if (count >= SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    },
+
+    /**
+     * Spins, then yields the processor to other threads. Has a low latency,
+     * and takes a whole processor per consumer thread unless other threads
+     * need it.
+     */
+    YIELDING {
+        @Override
+        void idle(RingBuffer ring, int count, long deadline) {
+            if (count >= SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    };
+
+    /**
+     * The number of nanoseconds a {@link #SLEEPING} thread sleeps at once.
+     */
+    private static final long SLEEP_NANOS = 100000L;
+
+    /**
+     * The number of times a thread spins before it yields or parks.
+     */
+    private static final int SPIN_TRIES = 100;
+
+    /**
+     * Waits once for a request to be published in a ring buffer.
+     * 
+     * @param ring
+     *            the ring buffer of the consumer thread.
+     * @param count
+     *            the number of times the thread waited in a row.
+     * @param deadline
+     *            the {@link System#nanoTime()} at which the thread must stop
+     *            waiting, or <code>0</code> if there is none.
+     */
+    abstract void idle(RingBuffer ring, int count, long deadline);
+}
@@ -1,5 +1,10 @@
 package com.m4gik.util;
 
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 /**
  * A collection of utility methods used throughout this project. This class
  * mainly contains method for implementing the operations of presenting data.
@@ -14,20 +19,286 @@ public class Util {
     private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
 
     /**
-     * This method checks if given string contains hex value.
+     * Hex charset in lower case.
+     */
+    private static final char[] LOWER_HEX_DIGITS = "0123456789abcdef"
+            .toCharArray();
+
+    /**
+     * The value of every ASCII hex digit, in either case, or <code>-1</code>
+     * for any other character.
+     */
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+            HEX_VALUES[LOWER_HEX_DIGITS[i]] = (byte) i;
+        }
+    }
+
+    /**
+     * Checks that the designated range lies within an array of the given
+     * length.
      * 
-     * @param hexValue
-     *            the value to check if is hexadecimal representation.
-     * @return the given hex value.
-     * @throws Exception
+     * @param arrayLength
+     *            the length of the array.
+     * @param offset
+     *            the index of the first element of the range.
+     * @param length
+     *            the number of elements of the range.
+     * @throws IndexOutOfBoundsException
+     *             if the range does not lie within the array.
      */
-    private static String checkHexValue(String hexValue) {
-        if (!hexValue.matches("\\A\\b[0-9a-fA-F]+\\b\\Z")) {
+    private static void checkRange(int arrayLength, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > arrayLength - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", "
+                    + offset + " + " + length + ") out of bounds for length "
+                    + arrayLength);
+        }
+    }
+
+    /**
+     * Returns the bytes represented by a string of hexadecimal digits, two
+     * for each byte, in either case.
+     * 
+     * @param hex
+     *            the hexadecimal digits to decode.
+     * @return the decoded bytes.
+     * @throws NumberFormatException
+     *             if the number of digits is odd or if any character is not a
+     *             hexadecimal digit.
+     */
+    public static byte[] fromHex(CharSequence hex) {
+        if ((hex.length() & 1) != 0) {
             throw new NumberFormatException(
                     "This value is not hexadecimal representation!");
         }
 
-        return hexValue;
+        byte[] result = new byte[hex.length() / 2];
+        fromHex(hex, 0, hex.length(), result, 0);
+
+        return result;
+    }
+
+    /**
+     * Decodes the hexadecimal digits found between <code>start</code>
+     * (inclusive) and <code>end</code> (exclusive), two for each byte and in
+     * either case, into the given array.
+     * 
+     * @param hex
+     *            the hexadecimal digits to decode.
+     * @param start
+     *            the index of the first digit.
+     * @param end
+     *            the index after the last digit.
+     * @param out
+     *            the array which receives the bytes.
+     * @param offset
+     *            the index in <code>out</code> of the first byte.
+     * @return the number of bytes written.
+     * @throws NumberFormatException
+     *             if the number of digits is odd or if any character is not a
+     *             hexadecimal digit.
+     * @throws IndexOutOfBoundsException
+     *             if the digits or the bytes do not fit their bounds.
+     */
+    public static int fromHex(CharSequence hex, int start, int end,
+            byte[] out, int offset) {
+        checkRange(hex.length(), start, end - start);
+        if (((end - start) & 1) != 0) {
+            throw new NumberFormatException(
+                    "This value is not hexadecimal representation!");
+        }
+
+        int length = (end - start) / 2;
+        checkRange(out.length, offset, length);
+        for (int i = start; i < end; i += 2) {
+            int high = hexValue(hex.charAt(i));
+            int low = hexValue(hex.charAt(i + 1));
+            if ((high | low) < 0) {
+                throw new NumberFormatException(
+                        "This value is not hexadecimal representation!");
+            }
+
+            out[offset++] = (byte) (high << 4 | low);
+        }
+
+        return length;
+    }
+
+    /**
+     * Returns the value of a hexadecimal digit.
+     * 
+     * @param c
+     *            the character to decode.
+     * @return the value of the digit, or <code>-1</code> if the character is
+     *         not a hexadecimal digit.
+     */
+    private static int hexValue(char c) {
+        return c < 128 ? HEX_VALUES[c] : -1;
+    }
+
+    /**
+     * Returns a string of hexadecimal digits from a byte array, in the
+     * designated case. Each byte is converted to 2 hex symbols; zero(es)
+     * included.
+     * 
+     * @param ba
+     *            the byte array to convert.
+     * @param upperCase
+     *            whether the digits above <code>9</code> are upper case.
+     * @return a string of hexadecimal characters (two for each byte)
+     *         representing the designated input byte array.
+     */
+    public static String toHex(byte[] ba, boolean upperCase) {
+        char[] buf = new char[ba.length * 2];
+        toHex(ba, 0, ba.length, buf, 0, upperCase);
+
+        return new String(buf);
+    }
+
+    /**
+     * Writes the hexadecimal digits of a byte sub-array as ASCII bytes into
+     * the given buffer, from its position, and advances its position.
+     * 
+     * @param ba
+     *            the byte array to convert.
+     * @param offset
+     *            the index of the first byte to convert.
+     * @param length
+     *            the number of bytes to convert.
+     * @param out
+     *            the buffer which receives the digits.
+     * @param upperCase
+     *            whether the digits above <code>9</code> are upper case.
+     * @throws java.nio.BufferOverflowException
+     *             if the buffer has less than <code>2 * length</code> bytes
+     *             remaining.
+     */
+    public static void toHex(byte[] ba, int offset, int length,
+            ByteBuffer out, boolean upperCase) {
+        checkRange(ba.length, offset, length);
+        if (out.remaining() < 2 * length) {
+            throw new BufferOverflowException();
+        }
+
+        char[] digits = upperCase ? HEX_DIGITS : LOWER_HEX_DIGITS;
+        int position = out.position();
+        int end = offset + length;
+        if (out.hasArray()) {
+            byte[] array = out.array();
+            for (int i = offset, j = out.arrayOffset() + position, k; i < end;) {
+                k = ba[i++];
+                array[j++] = (byte) digits[(k >>> 4) & 0x0F];
+                array[j++] = (byte) digits[k & 0x0F];
+            }
+        } else {
+            for (int i = offset, j = position, k; i < end;) {
+                k = ba[i++];
+                out.put(j++, (byte) digits[(k >>> 4) & 0x0F]);
+                out.put(j++, (byte) digits[k & 0x0F]);
+            }
+        }
+
+        out.position(position + 2 * length);
+    }
+
+    /**
+     * Appends the hexadecimal digits of a byte sub-array to the given target.
+     * 
+     * @param ba
+     *            the byte array to convert.
+     * @param offset
+     *            the index of the first byte to convert.
+     * @param length
+     *            the number of bytes to convert.
+     * @param out
+     *            the target which receives the digits.
+     * @param upperCase
+     *            whether the digits above <code>9</code> are upper case.
+     * @return the given target.
+     * @throws IOException
+     *             if the target cannot be appended to.
+     */
+    public static <A extends Appendable> A toHex(byte[] ba, int offset,
+            int length, A out, boolean upperCase) throws IOException {
+        checkRange(ba.length, offset, length);
+
+        char[] digits = upperCase ? HEX_DIGITS : LOWER_HEX_DIGITS;
+        for (int i = offset, k; i < offset + length;) {
+            k = ba[i++];
+            out.append(digits[(k >>> 4) & 0x0F]);
+            out.append(digits[k & 0x0F]);
+        }
+
+        return out;
+    }
+
+    /**
+     * Writes the hexadecimal digits of a byte sub-array into the given char
+     * array.
+     * 
+     * @param ba
+     *            the byte array to convert.
+     * @param offset
+     *            the index of the first byte to convert.
+     * @param length
+     *            the number of bytes to convert.
+     * @param out
+     *            the array which receives the digits.
+     * @param outOffset
+     *            the index in <code>out</code> of the first digit.
+     * @param upperCase
+     *            whether the digits above <code>9</code> are upper case.
+     * @return the number of digits written, <code>2 * length</code>.
+     * @throws IndexOutOfBoundsException
+     *             if the bytes or the digits do not fit their bounds.
+     */
+    public static int toHex(byte[] ba, int offset, int length, char[] out,
+            int outOffset, boolean upperCase) {
+        checkRange(ba.length, offset, length);
+        checkRange(out.length, outOffset, 2 * length);
+
+        char[] digits = upperCase ? HEX_DIGITS : LOWER_HEX_DIGITS;
+        for (int i = offset, j = outOffset, k; i < offset + length;) {
+            k = ba[i++];
+            out[j++] = digits[(k >>> 4) & 0x0F];
+            out[j++] = digits[k & 0x0F];
+        }
+
+        return 2 * length;
+    }
+
+    /**
+     * Appends the hexadecimal digits of a byte sub-array to the given
+     * builder, growing it once beforehand.
+     * 
+     * @param ba
+     *            the byte array to convert.
+     * @param offset
+     *            the index of the first byte to convert.
+     * @param length
+     *            the number of bytes to convert.
+     * @param out
+     *            the builder which receives the digits.
+     * @param upperCase
+     *            whether the digits above <code>9</code> are upper case.
+     * @return the given builder.
+     */
+    public static StringBuilder toHex(byte[] ba, int offset, int length,
+            StringBuilder out, boolean upperCase) {
+        checkRange(ba.length, offset, length);
+        out.ensureCapacity(out.length() + 2 * length);
+
+        char[] digits = upperCase ? HEX_DIGITS : LOWER_HEX_DIGITS;
+        for (int i = offset, k; i < offset + length;) {
+            k = ba[i++];
+            out.append(digits[(k >>> 4) & 0x0F]).append(digits[k & 0x0F]);
+        }
+
+        return out;
     }
 
     /**
@@ -50,9 +321,9 @@ public class Util {
     }
 
     /**
-     * Returns a string of hexadecimal digits from a byte array, starting at
-     * <code>offset</code> and consisting of <code>length</code> bytes. Each
-     * byte is converted to 2 hex symbols; zero(es) included.
+     * Returns a string of upper case hexadecimal digits from a byte array,
+     * starting at <code>offset</code> and consisting of <code>length</code>
+     * bytes. Each byte is converted to 2 hex symbols; zero(es) included.
      * 
      * @param ba
      *            the byte array to convert.
@@ -67,12 +338,9 @@ public class Util {
      */
     public static final String toString(byte[] ba, int offset, int length) {
         char[] buf = new char[length * 2];
-        for (int i = 0, j = 0, k; i < length;) {
-            k = ba[offset + i++];
-            buf[j++] = HEX_DIGITS[(k >>> 4) & 0x0F];
-            buf[j++] = HEX_DIGITS[k & 0x0F];
-        }
-        return checkHexValue(new String(buf));
+        toHex(ba, offset, length, buf, 0, true);
+
+        return new String(buf);
     }
 
     /**
@@ -0,0 +1,194 @@
+package com.m4gik;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link BloomFilter}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class BloomFilterTest {
+
+    private static byte[] key(long i) {
+        return ByteBuffer.allocate(8).putLong(i).array();
+    }
+
+    private static List<byte[]> keys(long from, int count) {
+        List<byte[]> keys = new ArrayList<byte[]>();
+        for (long i = from; i < from + count; i++) {
+            keys.add(key(i));
+        }
+
+        return keys;
+    }
+
+    @Test
+    public void testCheckBulkMethods() {
+        // What
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        List<byte[]> keys = keys(0, 1000);
+
+        // When
+        int changed = filter.putAll(keys);
+        boolean[] contained = filter.mightContainAll(keys);
+
+        // Then
+        assertThat(changed, is(greaterThan(990)));
+        assertThat(filter.putAll(keys), is(equalTo(0)));
+        for (int i = 0; i < contained.length; i++) {
+            assertThat(contained[i], is(true));
+            assertThat(filter.mightContain(keys.get(i)), is(true));
+        }
+    }
+
+    @Test
+    public void testCheckClear() {
+        // What
+        BloomFilter filter = new BloomFilter(100, 0.01);
+        filter.putAll(keys(0, 100));
+
+        // When
+        filter.clear();
+
+        // Then
+        assertThat(filter.cardinality(), is(equalTo(0L)));
+        assertThat(filter.mightContain(key(1)), is(false));
+    }
+
+    @Test
+    public void testCheckConcurrentPuts() throws InterruptedException {
+        // What
+        final BloomFilter filter = new BloomFilter(40000, 0.01);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        // When
+        for (int t = 0; t < 4; t++) {
+            final long from = t * 10000L;
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    for (long i = from; i < from + 10000; i++) {
+                        filter.put(key(i));
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Then
+        boolean[] contained = filter.mightContainAll(keys(0, 40000));
+        for (boolean c : contained) {
+            assertThat(c, is(true));
+        }
+    }
+
+    @Test
+    public void testCheckDigestsOfKeys() {
+        // What
+        BloomFilter filter = new BloomFilter(100, 0.01,
+                HavalAttributes.HAVAL_5_ROUND);
+        List<byte[]> keys = keys(0, 10);
+        byte[] digests = Haval.hashAll(keys, HavalAttributes.HAVAL_256_BIT,
+                HavalAttributes.HAVAL_5_ROUND);
+
+        // When
+        for (int i = 0; i < keys.size(); i++) {
+            filter.putDigest(digests, i * HavalAttributes.HAVAL_256_BIT);
+        }
+
+        // Then
+        for (int i = 0; i < keys.size(); i++) {
+            assertThat(filter.mightContain(keys.get(i)), is(true));
+            assertThat(filter.put(keys.get(i)), is(false));
+        }
+    }
+
+    @Test
+    public void testCheckFalsePositiveRate() {
+        // What
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        filter.putAll(keys(0, 10000));
+
+        // When
+        int positives = 0;
+        for (long i = 1000000; i < 1100000; i++) {
+            if (filter.mightContain(key(i))) {
+                positives++;
+            }
+        }
+
+        // Then
+        assertThat(positives / 100000.0, is(lessThan(0.015)));
+        assertThat(filter.expectedFpp(), is(lessThan(0.015)));
+        assertThat(filter.expectedFpp(), is(greaterThan(0.005)));
+    }
+
+    @Test
+    public void testCheckKeySlices() {
+        // What
+        BloomFilter filter = new BloomFilter(100, 0.01);
+        byte[] array = new byte[20];
+        System.arraycopy(key(7), 0, array, 5, 8);
+
+        // When
+        filter.put(array, 5, 8);
+
+        // Then
+        assertThat(filter.mightContain(key(7)), is(true));
+        assertThat(filter.mightContain(array, 5, 8), is(true));
+    }
+
+    @Test
+    public void testCheckSizing() {
+        // What
+        long bits = BloomFilter.optimalNumOfBits(1000000000L, 0.01);
+
+        // When
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+
+        // Then
+        assertThat(bits, is(greaterThan(1L << 33)));
+        assertThat(bits % 64, is(equalTo(0L)));
+        assertThat(BloomFilter.optimalNumOfHashes(1000000000L, bits),
+                is(equalTo(7)));
+        assertThat(filter.getBitSize(), is(equalTo(9600L)));
+        assertThat(filter.getHashCount(), is(equalTo(7)));
+        assertThat(filter.getRounds(),
+                is(equalTo(HavalAttributes.HAVAL_3_ROUND)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThrowsIfDigestIsTooShort() {
+        new BloomFilter(100, 0.01).mightContainDigest(new byte[40], 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThrowsIfFppIsWrong() {
+        new BloomFilter(100, 1.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThrowsIfKeyIsNull() {
+        new BloomFilter(100, 0.01).put(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThrowsIfTooManyBits() {
+        new BloomFilter(Long.MAX_VALUE / 2, 0.01);
+    }
+}
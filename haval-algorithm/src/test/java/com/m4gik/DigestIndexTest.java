@@ -0,0 +1,228 @@
+package com.m4gik;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link DigestIndex}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+@RunWith(Parameterized.class)
+public class DigestIndexTest {
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                { HavalAttributes.HAVAL_128_BIT },
+                { HavalAttributes.HAVAL_160_BIT },
+                { HavalAttributes.HAVAL_192_BIT },
+                { HavalAttributes.HAVAL_224_BIT },
+                { HavalAttributes.HAVAL_256_BIT } });
+    }
+
+    private final int size;
+
+    public DigestIndexTest(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Returns a digest whose first eight bytes are the same for every
+     * <code>i</code>, so that all of them probe from the same slot.
+     */
+    private byte[] colliding(int i) {
+        byte[] digest = new byte[size];
+        digest[0] = 0x5A;
+        digest[size - 1] = (byte) i;
+        digest[size - 2] = (byte) (i >>> 8);
+
+        return digest;
+    }
+
+    private byte[] digest(int i) {
+        return new Haval(Integer.toString(i).getBytes(), size,
+                HavalAttributes.HAVAL_3_ROUND).digest();
+    }
+
+    @Test
+    public void testClearRemovesEntries() {
+        // What
+        DigestIndex index = new DigestIndex(size);
+        for (int i = 0; i < 100; i++) {
+            index.put(digest(i), i);
+        }
+        // When
+        index.clear();
+        // Then
+        assertThat(index.getSize(), is(0L));
+        assertThat(index.getCapacity(),
+                is((long) DigestIndex.DEFAULT_CAPACITY));
+        assertThat(index.contains(digest(1)), is(false));
+    }
+
+    @Test
+    public void testCollidingDigestsSurviveRemoval() {
+        // What
+        DigestIndex index = new DigestIndex(size);
+        for (int i = 0; i < 10; i++) {
+            index.put(colliding(i), i);
+        }
+        // When
+        index.remove(colliding(0));
+        index.remove(colliding(5));
+        // Then
+        assertThat(index.getSize(), is(8L));
+        for (int i = 0; i < 10; i++) {
+            assertThat(index.get(colliding(i), -1L), is(i == 0 || i == 5 ? -1L
+                    : i));
+        }
+    }
+
+    @Test
+    public void testDigestsAtOffsetOfBatch() {
+        // What
+        List<byte[]> inputs = new ArrayList<byte[]>();
+        for (int i = 0; i < 100; i++) {
+            inputs.add(Integer.toString(i).getBytes());
+        }
+        byte[] digests = Haval.hashAll(inputs, size,
+                HavalAttributes.HAVAL_3_ROUND);
+        DigestIndex index = new DigestIndex(size, 100);
+        // When
+        for (int i = 0; i < 100; i++) {
+            index.put(digests, i * size, i);
+        }
+        // Then
+        assertThat(index.getCapacity(), is(256L));
+        for (int i = 0; i < 100; i++) {
+            assertThat(index.get(digest(i), -1L), is((long) i));
+        }
+    }
+
+    @Test
+    public void testGrowsAndKeepsEntries() {
+        // What
+        DigestIndex index = new DigestIndex(size);
+        // When
+        for (int i = 0; i < 5000; i++) {
+            assertThat(index.put(digest(i), i), is(true));
+        }
+        // Then
+        assertThat(index.getSize(), is(5000L));
+        assertThat(index.getCapacity(), is(8192L));
+        assertThat(index.getUsedBytes(), is(8192L * 8 * ((size + 7) / 8 + 1)));
+        for (int i = 0; i < 5000; i++) {
+            assertThat(index.contains(digest(i)), is(true));
+            assertThat(index.get(digest(i), -1L), is((long) i));
+        }
+        assertThat(index.contains(digest(5000)), is(false));
+    }
+
+    @Test
+    public void testPutReplacesAndPutIfAbsentKeeps() {
+        // What
+        DigestIndex index = new DigestIndex(size);
+        byte[] digest = digest(1);
+        // When
+        boolean added = index.putIfAbsent(digest, 1L);
+        boolean addedAgain = index.putIfAbsent(digest, 2L);
+        long kept = index.get(digest, -1L);
+        boolean replacedIsNew = index.put(digest, 3L);
+        // Then
+        assertThat(added, is(true));
+        assertThat(addedAgain, is(false));
+        assertThat(kept, is(1L));
+        assertThat(replacedIsNew, is(false));
+        assertThat(index.get(digest, -1L), is(3L));
+        assertThat(index.getSize(), is(1L));
+    }
+
+    @Test
+    public void testReadersDuringWrites() throws Exception {
+        // What
+        final DigestIndex index = new DigestIndex(size);
+        final AtomicInteger written = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final byte[][] digests = new byte[3000][];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = digest(i);
+        }
+        Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(new Runnable() {
+                public void run() {
+                    while (written.get() < digests.length) {
+                        int known = written.get();
+                        for (int i = 0; i < known; i++) {
+                            if (index.get(digests[i], -1L) != i) {
+                                failed.set(true);
+                            }
+                        }
+                    }
+                }
+            });
+            readers[r].start();
+        }
+        // When
+        for (int i = 0; i < digests.length; i++) {
+            index.put(digests[i], i);
+            written.incrementAndGet();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        // Then
+        assertThat(failed.get(), is(false));
+        assertThat(index.getCapacity(), is(greaterThan(3000L)));
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfDigestDoesNotFitAtOffset() {
+        new DigestIndex(size).contains(new byte[2 * size], size + 1);
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfDigestIsOfAnotherSize() {
+        new DigestIndex(size).put(new byte[size + 4], 1L);
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfSizeIsWrong() {
+        new DigestIndex(size + 1);
+    }
+
+    @Test
+    public void testZeroDigestIsAnEntry() {
+        // What
+        DigestIndex index = new DigestIndex(size);
+        byte[] zero = new byte[size];
+        // When
+        boolean added = index.put(zero, 7L);
+        // Then
+        assertThat(added, is(true));
+        assertThat(index.contains(zero), is(true));
+        assertThat(index.get(zero, -1L), is(7L));
+        assertThat(index.getSize(), is(1L));
+        assertThat(index.remove(zero), is(true));
+        assertThat(index.contains(zero), is(false));
+        assertThat(index.getSize(), is(0L));
+    }
+}
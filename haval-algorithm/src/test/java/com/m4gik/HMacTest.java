@@ -0,0 +1,163 @@
+package com.m4gik;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import com.m4gik.util.Util;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link HMac}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+@RunWith(Parameterized.class)
+public class HMacTest {
+
+    private static final byte[] MESSAGE =
+            "The quick brown fox jumps over the lazy dog".getBytes();
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                { 16, HavalAttributes.HAVAL_128_BIT,
+                        HavalAttributes.HAVAL_3_ROUND },
+                { 128, HavalAttributes.HAVAL_192_BIT,
+                        HavalAttributes.HAVAL_4_ROUND },
+                { 200, HavalAttributes.HAVAL_256_BIT,
+                        HavalAttributes.HAVAL_5_ROUND } });
+    }
+
+    private final byte[] key;
+
+    private final int rounds;
+
+    private final int size;
+
+    public HMacTest(int keyLength, int size, int rounds) {
+        this.key = new byte[keyLength];
+        for (int i = 0; i < keyLength; i++) {
+            this.key[i] = (byte) (i + 1);
+        }
+        this.size = size;
+        this.rounds = rounds;
+    }
+
+    /**
+     * Computes H((K ^ opad) || H((K ^ ipad) || message)) directly.
+     */
+    private byte[] reference(byte[] message) {
+        byte[] k = key.length > HavalAttributes.BLOCK_SIZE ? new Haval(key,
+                size, rounds).digest() : key;
+        byte[] ipad = new byte[HavalAttributes.BLOCK_SIZE];
+        byte[] opad = new byte[HavalAttributes.BLOCK_SIZE];
+        for (int i = 0; i < ipad.length; i++) {
+            byte b = i < k.length ? k[i] : 0;
+            ipad[i] = (byte) (b ^ 0x36);
+            opad[i] = (byte) (b ^ 0x5C);
+        }
+        Haval inner = new Haval(ipad, size, rounds);
+        inner.update(message);
+        Haval outer = new Haval(opad, size, rounds);
+        outer.update(inner.digest());
+
+        return outer.digest();
+    }
+
+    @Test
+    public void testCloneContinuesIndependently() {
+        // What
+        HMac hmac = new HMac(new Haval(size, rounds), key);
+        hmac.update(MESSAGE, 0, 10);
+        // When
+        HMac clone = (HMac) hmac.clone();
+        clone.update(MESSAGE, 10, MESSAGE.length - 10);
+        // Then
+        assertThat(clone.digest(), is(equalTo(reference(MESSAGE))));
+        assertThat(hmac.digest(),
+                is(equalTo(reference(Arrays.copyOf(MESSAGE, 10)))));
+    }
+
+    @Test
+    public void testDigestIntoArrayAtOffset() {
+        // What
+        HMac hmac = new HMac(new Haval(size, rounds), key);
+        byte[] out = new byte[size + 3];
+        hmac.update(MESSAGE);
+        // When
+        int length = hmac.digest(out, 3);
+        // Then
+        assertThat(length, is(size));
+        assertThat(Arrays.copyOfRange(out, 3, out.length),
+                is(equalTo(reference(MESSAGE))));
+    }
+
+    @Test
+    public void testMacMatchesDefinition() {
+        // When
+        String mac = HMac.mac(key, MESSAGE, size, rounds);
+        // Then
+        assertThat(mac, is(equalTo(Util.toString(reference(MESSAGE))
+                .toLowerCase())));
+    }
+
+    @Test
+    public void testNameAndSizes() {
+        // When
+        HMac hmac = new HMac(new Haval(size, rounds), key);
+        // Then
+        assertThat(hmac.name(), is(equalTo("hmac-haval")));
+        assertThat(hmac.hashSize(), is(size));
+        assertThat(hmac.blockSize(), is(HavalAttributes.BLOCK_SIZE));
+    }
+
+    @Test
+    public void testSuccessiveMessagesOfEveryLengthReuseKey() {
+        // What
+        HMac hmac = new HMac(new Haval(size, rounds), key);
+        byte[] message = new byte[2 * HavalAttributes.BLOCK_SIZE + 1];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) (i * 7);
+        }
+        for (int length = message.length; length >= 0; length--) {
+            byte[] expected = reference(Arrays.copyOf(message, length));
+            // When
+            hmac.update(message, 0, length);
+            byte[] mac = hmac.digest();
+            // Then
+            assertThat(mac, is(equalTo(expected)));
+        }
+    }
+
+    @Test
+    public void testSuccessiveMessagesReuseKey() {
+        // What
+        HMac hmac = new HMac(new Haval(size, rounds), key);
+        byte[] other = "another message".getBytes();
+        // When
+        hmac.update(MESSAGE);
+        byte[] first = hmac.digest();
+        hmac.update(MESSAGE);
+        hmac.reset();
+        hmac.update(other);
+        byte[] second = hmac.digest();
+        // Then
+        assertThat(first, is(equalTo(reference(MESSAGE))));
+        assertThat(second, is(equalTo(reference(other))));
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfKeyIsNull() {
+        new HMac(new Haval(size, rounds), null);
+    }
+}
@@ -0,0 +1,213 @@
+package com.m4gik;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link HashMetrics}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class HashMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static HashMetrics.Snapshot find(String algorithm) {
+        for (HashMetrics.Snapshot snapshot : HashMetrics.snapshot()) {
+            if (snapshot.getAlgorithm().equals(algorithm)) {
+                return snapshot;
+            }
+        }
+
+        return null;
+    }
+
+    private static List<HashMetrics.Snapshot> recorded() {
+        List<HashMetrics.Snapshot> result =
+                new ArrayList<HashMetrics.Snapshot>();
+        for (HashMetrics.Snapshot snapshot : HashMetrics.snapshot()) {
+            if (snapshot.getDigests() > 0) {
+                result.add(snapshot);
+            }
+        }
+
+        return result;
+    }
+
+    @Before
+    public void setUp() {
+        HashMetrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        HashMetrics.setEnabled(false);
+        HashMetrics.reset();
+    }
+
+    @Test
+    public void testCheckCountersOfDigests() {
+        // What
+        Haval haval = new Haval(HavalAttributes.HAVAL_256_BIT,
+                HavalAttributes.HAVAL_5_ROUND);
+        HashMetrics.setEnabled(true);
+
+        // When
+        haval.digest();
+        haval.update(new byte[117]);
+        haval.digest();
+        haval.update(new byte[118]);
+        haval.digest();
+        haval.update(new byte[300]);
+        haval.digest();
+
+        // Then
+        HashMetrics.Snapshot snapshot = find("haval-256/5");
+        assertThat(snapshot.getDigests(), is(equalTo(4L)));
+        assertThat(snapshot.getBytes(), is(equalTo(535L)));
+        assertThat(snapshot.getBlocks(), is(equalTo(1L + 1L + 2L + 3L)));
+    }
+
+    @Test
+    public void testCheckCountersPerAlgorithm() {
+        // What
+        HashMetrics.setEnabled(true);
+        Haval haval = new Haval(HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+
+        // When
+        haval.digest();
+        haval.setRounds(HavalAttributes.HAVAL_4_ROUND);
+        haval.digest();
+        haval.digest();
+
+        // Then
+        assertThat(find("haval-128/3").getDigests(), is(equalTo(1L)));
+        assertThat(find("haval-128/4").getDigests(), is(equalTo(2L)));
+    }
+
+    @Test
+    public void testCheckDigestOfSeveralSizesIsCountedOnce() {
+        // What
+        Haval haval = new Haval(HavalAttributes.HAVAL_256_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+        haval.update(new byte[300]);
+        HashMetrics.setEnabled(true);
+
+        // When
+        haval.digestAll(HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_160_BIT, HavalAttributes.HAVAL_256_BIT);
+
+        // Then
+        List<HashMetrics.Snapshot> snapshots = recorded();
+        assertThat(snapshots.size(), is(equalTo(1)));
+        assertThat(snapshots.get(0).getAlgorithm(),
+                is(equalTo("haval-256/3")));
+        assertThat(snapshots.get(0).getDigests(), is(equalTo(1L)));
+        assertThat(snapshots.get(0).getBytes(), is(equalTo(300L)));
+        assertThat(snapshots.get(0).getBlocks(), is(equalTo(2L + 3L)));
+    }
+
+    @Test
+    public void testCheckDigestsAreNotCountedWhenDisabled() {
+        // What
+        HashMetrics.setEnabled(false);
+
+        // When
+        new Haval().digest();
+        Haval.hash(new byte[1000]);
+
+        // Then
+        assertThat(HashMetrics.isEnabled(), is(false));
+        assertThat(recorded(), is(empty()));
+    }
+
+    @Test
+    public void testCheckDigestsAreRecordedByFlightRecorder()
+            throws IOException {
+        // What
+        Path file = folder.getRoot().toPath().resolve("digests.jfr");
+        HashMetrics.setEnabled(true);
+        List<RecordedEvent> events;
+
+        // When
+        try (Recording recording = new Recording()) {
+            recording.enable("com.m4gik.HashDigest");
+            recording.start();
+            Haval haval = new Haval(HavalAttributes.HAVAL_160_BIT,
+                    HavalAttributes.HAVAL_4_ROUND);
+            haval.update(new byte[200]);
+            haval.digest();
+            recording.stop();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        }
+
+        // Then
+        List<RecordedEvent> digests = new ArrayList<RecordedEvent>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals("com.m4gik.HashDigest")) {
+                digests.add(event);
+            }
+        }
+        assertThat(digests.size(), is(equalTo(1)));
+        RecordedEvent event = digests.get(0);
+        assertThat(event.getString("algorithm"), is(equalTo("haval-160/4")));
+        assertThat(event.getInt("rounds"), is(equalTo(4)));
+        assertThat(event.getLong("bytes"), is(equalTo(200L)));
+        assertThat(event.getLong("blocks"), is(equalTo(2L)));
+    }
+
+    @Test
+    public void testCheckResetClearsCounters() {
+        // What
+        HashMetrics.setEnabled(true);
+        Haval.hash(new byte[10]);
+
+        // When
+        HashMetrics.reset();
+
+        // Then
+        assertThat(recorded(), is(empty()));
+    }
+
+    @Test
+    public void testCheckSnapshotsAreSorted() {
+        // What
+        HashMetrics.setEnabled(true);
+
+        // When
+        new Haval(HavalAttributes.HAVAL_256_BIT, HavalAttributes.HAVAL_3_ROUND)
+                .digest();
+        new Haval(HavalAttributes.HAVAL_128_BIT, HavalAttributes.HAVAL_5_ROUND)
+                .digest();
+
+        // Then
+        List<HashMetrics.Snapshot> snapshots = recorded();
+        assertThat(snapshots.size(), is(equalTo(2)));
+        assertThat(snapshots.get(0).getAlgorithm(),
+                is(equalTo("haval-128/5")));
+        assertThat(snapshots.get(1).getAlgorithm(),
+                is(equalTo("haval-256/3")));
+    }
+}
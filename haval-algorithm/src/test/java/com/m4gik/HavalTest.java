@@ -5,12 +5,30 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
@@ -26,6 +44,13 @@ import com.m4gik.util.Util;
 @RunWith(Parameterized.class)
 public class HavalTest {
 
+    /**
+     * A message spanning several blocks, so that full block transforms are
+     * covered and not only the padded tail.
+     */
+    private static final String MULTI_BLOCK_INPUT = repeat(
+            "12345678901234567890123456789012345678901234567890", 10);
+
     @Parameterized.Parameters
     public static Collection<Object[]> data() {
         return Arrays
@@ -98,9 +123,111 @@ public class HavalTest {
                                 "The quick brown fox jumps over the lazy dog",
                                 "b89c551cdfe2e06dbd4cea2be1bc7d557416c58ebb4d07cbc94e49f710c55be4",
                                 HavalAttributes.HAVAL_256_BIT,
+                                HavalAttributes.HAVAL_5_ROUND },
+                        {
+                                "",
+                                "c68f39913f901f3ddf44c707357a7d70",
+                                HavalAttributes.HAVAL_128_BIT,
+                                HavalAttributes.HAVAL_3_ROUND },
+                        {
+                                "",
+                                "ee6bbf4d6a46a679b3a856c88538bb98",
+                                HavalAttributes.HAVAL_128_BIT,
+                                HavalAttributes.HAVAL_4_ROUND },
+                        {
+                                "",
+                                "184b8482a0c050dca54b59c7f05bf5dd",
+                                HavalAttributes.HAVAL_128_BIT,
+                                HavalAttributes.HAVAL_5_ROUND },
+                        {
+                                MULTI_BLOCK_INPUT,
+                                "6901008934b32cb10770ddbb2bf75db0",
+                                HavalAttributes.HAVAL_128_BIT,
+                                HavalAttributes.HAVAL_3_ROUND },
+                        {
+                                MULTI_BLOCK_INPUT,
+                                "9746e9b3931dd86182b1af91efd3e8aa",
+                                HavalAttributes.HAVAL_128_BIT,
+                                HavalAttributes.HAVAL_4_ROUND },
+                        {
+                                MULTI_BLOCK_INPUT,
+                                "8b4c512413de9d6102024d86ea65cfc3",
+                                HavalAttributes.HAVAL_128_BIT,
+                                HavalAttributes.HAVAL_5_ROUND },
+                        {
+                                MULTI_BLOCK_INPUT,
+                                "befa25c9a4c7c188eda83c16288e2671a9f30744",
+                                HavalAttributes.HAVAL_160_BIT,
+                                HavalAttributes.HAVAL_3_ROUND },
+                        {
+                                MULTI_BLOCK_INPUT,
+                                "65b1271a7c2cfb1a1d9583ababb83e1228304139",
+                                HavalAttributes.HAVAL_160_BIT,
+                                HavalAttributes.HAVAL_4_ROUND },
+                        {
+                                MULTI_BLOCK_INPUT,
+                                "5d822cb12e3bd3a148dbe068ffdf235722fb9f02",
+                                HavalAttributes.HAVAL_160_BIT,
+                                HavalAttributes.HAVAL_5_ROUND },
+                        {
+                                MULTI_BLOCK_INPUT,
+                                "84f98cc99de57cf0378904ba1e88d4c7e05ec2aad48d7b99",
+                                HavalAttributes.HAVAL_192_BIT,
+                                HavalAttributes.HAVAL_3_ROUND },
+                        {
+                                MULTI_BLOCK_INPUT,
+                                "5c13bfe665ed472f4ba4e06fd91a53eaa4fd251a42b881d6",
+                                HavalAttributes.HAVAL_192_BIT,
+                                HavalAttributes.HAVAL_4_ROUND },
+                        {
+                                MULTI_BLOCK_INPUT,
+                                "a8d24501fddeed44c6a6f1d710bd56ff997ec799d2062d24",
+                                HavalAttributes.HAVAL_192_BIT,
+                                HavalAttributes.HAVAL_5_ROUND },
+                        {
+                                MULTI_BLOCK_INPUT,
+                                "02855947775f9595ef8790bd12d950e1f05184366b9c2fd93c66f5f7",
+                                HavalAttributes.HAVAL_224_BIT,
+                                HavalAttributes.HAVAL_3_ROUND },
+                        {
+                                MULTI_BLOCK_INPUT,
+                                "7725788525ffcf4ca13736a7137c0d95192986708e8cf35103cdb026",
+                                HavalAttributes.HAVAL_224_BIT,
+                                HavalAttributes.HAVAL_4_ROUND },
+                        {
+                                MULTI_BLOCK_INPUT,
+                                "30b28827a594e2d2e3203426a23e6ddcfbbee79a1972d8a9eafeed43",
+                                HavalAttributes.HAVAL_224_BIT,
+                                HavalAttributes.HAVAL_5_ROUND },
+                        {
+                                MULTI_BLOCK_INPUT,
+                                "d52e9d69790cb5a00e3e871af3a4583a9d43f64df8db637a5edbc90ca7bb44bf",
+                                HavalAttributes.HAVAL_256_BIT,
+                                HavalAttributes.HAVAL_3_ROUND },
+                        {
+                                MULTI_BLOCK_INPUT,
+                                "c22497b0d5af8b90f3cc018955b84b3ca50e90b13db1add7d1513ca9933d3c3d",
+                                HavalAttributes.HAVAL_256_BIT,
+                                HavalAttributes.HAVAL_4_ROUND },
+                        {
+                                MULTI_BLOCK_INPUT,
+                                "36611f7fe4a0fb051df4a69d7f22d1cf8db70638e1bd69e123980dd48665612f",
+                                HavalAttributes.HAVAL_256_BIT,
                                 HavalAttributes.HAVAL_5_ROUND } });
     }
 
+    private static String repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+
+        return builder.toString();
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private final String actualHash;
 
     private final String expectedHash;
@@ -129,6 +256,128 @@ public class HavalTest {
         assertThat(hash, is(equalTo(expectedHash)));
     }
 
+    @Test
+    public void testCheckStaticBatchHashing() {
+        // What
+        List<byte[]> inputs = new ArrayList<byte[]>();
+        for (int i = 0; i < 20; i++) {
+            inputs.add(i % 2 == 0 ? input.getBytes() : MULTI_BLOCK_INPUT
+                    .getBytes());
+        }
+        String other = Haval.hash(MULTI_BLOCK_INPUT.getBytes(), size, rounds);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        // When
+        byte[] small = Haval.hashAll(inputs, size, rounds, pool, 1);
+        byte[] large = Haval.hashAll(inputs, size, rounds);
+        pool.shutdown();
+        // Then
+        assertThat(small.length, is(20 * size));
+        assertThat(large, is(equalTo(small)));
+        for (int i = 0; i < 20; i++) {
+            assertThat(Util.toHex(Arrays.copyOfRange(small, i * size, (i + 1)
+                    * size), false), is(equalTo(i % 2 == 0 ? expectedHash
+                    : other)));
+        }
+    }
+
+    @Test
+    public void testCheckStaticBatchHashingOfBuffers() {
+        // What
+        byte[] bytes = input.getBytes();
+        ByteBuffer[] inputs = new ByteBuffer[7];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = ByteBuffer.allocateDirect(bytes.length + 2);
+            inputs[i].put(new byte[] { 1, 2 }).put(bytes).flip();
+            inputs[i].position(2);
+        }
+        // When
+        byte[] digests = Haval.hashAll(inputs, size, rounds,
+                ForkJoinPool.commonPool(), 1);
+        // Then
+        for (int i = 0; i < inputs.length; i++) {
+            assertThat(inputs[i].position(), is(2));
+            assertThat(Util.toHex(Arrays.copyOfRange(digests, i * size,
+                    (i + 1) * size), false), is(equalTo(expectedHash)));
+        }
+        assertThat(Haval.hashAll(new ByteBuffer[0], size, rounds).length,
+                is(0));
+    }
+
+    @Test
+    public void testCheckStaticFileHashing() throws IOException {
+        // What
+        File file = writeInputToFile();
+        // When
+        String hash = Haval.hashFile(file.toPath(), size, rounds);
+        // Then
+        assertThat(hash, is(equalTo(expectedHash)));
+    }
+
+    @Test
+    public void testCheckStaticHashingOfSeveralSizes() {
+        // What
+        int[] sizes = { HavalAttributes.HAVAL_256_BIT, size,
+                HavalAttributes.HAVAL_128_BIT };
+        // When
+        String[] hashes = Haval.hash(input.getBytes(), sizes, rounds);
+        // Then
+        assertThat(hashes.length, is(3));
+        assertThat(hashes[1], is(equalTo(expectedHash)));
+        assertThat(hashes[0], is(equalTo(Haval.hash(input.getBytes(),
+                HavalAttributes.HAVAL_256_BIT, rounds))));
+        assertThat(hashes[2], is(equalTo(Haval.hash(input.getBytes(),
+                HavalAttributes.HAVAL_128_BIT, rounds))));
+    }
+
+    @Test
+    public void testCheckStaticHashingAfterFailedCall() {
+        // What
+        int[] wrongSizes = { size, HavalAttributes.HAVAL_256_BIT + 1 };
+        for (int[] sizes : new int[][] { wrongSizes, null }) {
+            try {
+                Haval.hash(MULTI_BLOCK_INPUT.getBytes(), sizes, rounds);
+                fail("IllegalArgumentException expected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        // When
+        String hash = Haval.hash(input.getBytes(), size, rounds);
+        String[] hashes = Haval.hash(input.getBytes(), new int[] { size },
+                rounds);
+        // Then
+        assertThat(hash, is(equalTo(expectedHash)));
+        assertThat(hashes[0], is(equalTo(expectedHash)));
+    }
+
+    @Test
+    public void testCheckStaticHashingFromManyThreads() throws Exception {
+        // What
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        // When
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(new Callable<Boolean>() {
+                public Boolean call() {
+                    for (int j = 0; j < 50; j++) {
+                        Haval.hash(MULTI_BLOCK_INPUT.getBytes(), size, rounds);
+                        if (!Haval.hash(input.getBytes(), size, rounds).equals(
+                                expectedHash)) {
+                            return false;
+                        }
+                    }
+
+                    return true;
+                }
+            }));
+        }
+        executor.shutdown();
+        // Then
+        for (Future<Boolean> result : results) {
+            assertThat(result.get(), is(true));
+        }
+    }
+
     @Test
     public void testCloneMethod() {
         // What
@@ -142,6 +391,56 @@ public class HavalTest {
         assertThat(havalClone.getRounds(), is(haval.getRounds()));
     }
 
+    @Test
+    public void testDirectBufferUpdate() {
+        // What
+        byte[] bytes = input.getBytes();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 3);
+        buffer.put(new byte[] { 1, 2, 3 }).put(bytes).flip();
+        buffer.position(3);
+        Haval haval = new Haval(size, rounds);
+        // When
+        haval.update(buffer);
+        // Then
+        assertThat(buffer.remaining(), is(0));
+        assertThat(Util.toString(haval.digest()).toLowerCase(),
+                is(equalTo(expectedHash)));
+    }
+
+    @Test
+    public void testDirectBufferUpdateInPieces() {
+        // What
+        byte[] bytes = input.getBytes();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).order(
+                ByteOrder.LITTLE_ENDIAN);
+        buffer.put(bytes).flip();
+        Haval haval = new Haval(size, rounds);
+        // When
+        while (buffer.position() < bytes.length) {
+            buffer.limit(Math.min(bytes.length, buffer.position() + 77));
+            haval.update(buffer);
+        }
+        // Then
+        assertThat(Util.toString(haval.digest()).toLowerCase(),
+                is(equalTo(expectedHash)));
+    }
+
+    @Test
+    public void testFileChannelUpdateWithSmallWindows() throws IOException {
+        // What
+        File file = writeInputToFile();
+        Haval haval = new Haval(size, rounds);
+        // When
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            haval.update(channel, 100);
+            // Then
+            assertThat(channel.position(), is(channel.size()));
+        }
+        assertThat(Util.toString(haval.digest()).toLowerCase(),
+                is(equalTo(expectedHash)));
+    }
+
     @Test
     public void testHashIsNotNull() {
         assertThat(actualHash, is(notNullValue()));
@@ -152,6 +451,92 @@ public class HavalTest {
         assertThat(actualHash.toLowerCase(), is(equalTo(expectedHash)));
     }
 
+    @Test
+    public void testDigestIntoArrayAtOffset() {
+        // What
+        Haval haval = new Haval(input.getBytes(), size, rounds);
+        byte[] out = new byte[size + 5];
+        // When
+        int length = haval.digest(out, 5);
+        // Then
+        assertThat(length, is(size));
+        assertThat(Util.toString(out, 5, size).toLowerCase(),
+                is(equalTo(expectedHash)));
+        haval.update(input.getBytes());
+        assertThat(Util.toString(haval.digest()).toLowerCase(),
+                is(equalTo(expectedHash)));
+    }
+
+    @Test
+    public void testExportedStateResumesHash() {
+        byte[] bytes = input.getBytes();
+        for (int split : new int[] { 0, bytes.length / 3, bytes.length }) {
+            // What
+            Haval haval = new Haval(size, rounds);
+            haval.update(bytes, 0, split);
+            // When
+            byte[] state = haval.exportState();
+            Haval resumed = Haval.importState(state);
+            resumed.update(bytes, split, bytes.length - split);
+            haval.update(bytes, split, bytes.length - split);
+            // Then
+            assertThat(state.length, is(lessThanOrEqualTo(176)));
+            assertThat(resumed.hashSize(), is(size));
+            assertThat(resumed.getRounds(), is(rounds));
+            assertThat(Util.toHex(resumed.digest(), false),
+                    is(equalTo(expectedHash)));
+            assertThat(Util.toHex(haval.digest(), false),
+                    is(equalTo(expectedHash)));
+        }
+    }
+
+    @Test
+    public void testInBufferPaddingMatchesPadBuffer() {
+        int maxLength = 2 * HavalAttributes.BLOCK_SIZE;
+        for (int length = 0; length <= maxLength; length++) {
+            // What
+            byte[] bytes = repeat("x", length).getBytes();
+            Haval haval = new Haval(bytes, size, rounds);
+            Haval reference = new Haval(bytes, size, rounds);
+            byte[] out = new byte[size];
+            // When
+            haval.digest(out, 0);
+            byte[] tail = reference.padBuffer();
+            reference.update(tail, 0, tail.length);
+            // Then
+            assertThat(out, is(equalTo(reference.getResult())));
+        }
+    }
+
+    @Test
+    public void testDigestAllResetsInstance() {
+        // What
+        Haval haval = new Haval(input.getBytes(), size, rounds);
+        // When
+        haval.digestAll(HavalAttributes.HAVAL_160_BIT, size);
+        haval.update(input.getBytes());
+        // Then
+        assertThat(Util.toString(haval.digest()).toLowerCase(),
+                is(equalTo(expectedHash)));
+    }
+
+    @Test
+    public void testHeapBufferUpdate() {
+        // What
+        ByteBuffer buffer = ByteBuffer.wrap(input.getBytes());
+        Haval haval = new Haval(size, rounds);
+        // When
+        haval.update(buffer.asReadOnlyBuffer());
+        haval.update(ByteBuffer.allocate(0));
+        // Then
+        assertThat(Util.toString(haval.digest()).toLowerCase(),
+                is(equalTo(expectedHash)));
+        haval.update(buffer);
+        assertThat(buffer.remaining(), is(0));
+        assertThat(Util.toString(haval.digest()).toLowerCase(),
+                is(equalTo(expectedHash)));
+    }
+
     @Test
     public void testHavalWordProcessingOrders() {
         assertThat(HavalAttributes.WORD_PROCESSING_ORDER_1.length, is(32));
@@ -181,12 +566,87 @@ public class HavalTest {
         new Haval(HavalAttributes.HAVAL_128_BIT, rounds);
     }
 
+    @Test
+    public void testSetRoundsSelectsMatchingEngine() {
+        // What
+        Haval haval = new Haval(size, HavalAttributes.HAVAL_5_ROUND);
+        // When
+        haval.setRounds(rounds);
+        haval.update(input.getBytes());
+        // Then
+        assertThat(Util.toString(haval.digest()).toLowerCase(),
+                is(equalTo(expectedHash)));
+    }
+
+    @Test
+    public void testThrowsIfDigestDoesNotFitIntoArray() {
+        // What
+        Haval haval = new Haval(input.getBytes(), size, rounds);
+        // When
+        try {
+            haval.digest(new byte[size], 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Then
+            assertThat(Util.toString(haval.digest()).toLowerCase(),
+                    is(equalTo(expectedHash)));
+        }
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfBatchContainsNull() {
+        Haval.hashAll(Arrays.asList(input.getBytes(), null), size, rounds);
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfBatchChunkSizeIsWrong() {
+        Haval.hashAll(Arrays.asList(input.getBytes()), size, rounds,
+                ForkJoinPool.commonPool(), 0);
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfImportedStateIsDamaged() {
+        // What
+        byte[] state = new Haval(input.getBytes(), size, rounds)
+                .exportState();
+        // When
+        state[state.length / 2] ^= 0x01;
+        // Then
+        Haval.importState(state);
+    }
+
     @Test(
             expected = IllegalArgumentException.class)
     public void testThrowsIfInputIsNull() {
         new Haval(null, size, rounds);
     }
 
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfOneOfSizesIsWrong() {
+        new Haval(size, rounds).digestAll(size,
+                HavalAttributes.HAVAL_256_BIT + 1);
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfMappingWindowIsWrong() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(writeInputToFile(),
+                "r")) {
+            new Haval(size, rounds).update(raf.getChannel(), 0);
+        }
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfParametersAreWrong() {
+        Haval.checkParameters(size, rounds);
+        Haval.checkParameters(size, HavalAttributes.HAVAL_5_ROUND + 1);
+    }
+
     @Test(
             expected = IllegalArgumentException.class)
     public void testThrowsIfRoundsIsWrong() {
@@ -199,4 +659,12 @@ public class HavalTest {
         new Haval(HavalAttributes.HAVAL_128_BIT - 1, rounds);
     }
 
+    private File writeInputToFile() throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(input.getBytes());
+        }
+
+        return file;
+    }
 }
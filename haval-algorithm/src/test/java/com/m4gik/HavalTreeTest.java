@@ -0,0 +1,172 @@
+package com.m4gik;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.m4gik.util.Util;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link HavalTree}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class HavalTreeTest {
+
+    private static final int LEAF_SIZE = HavalAttributes.BLOCK_SIZE;
+
+    private static byte[] input(int length) {
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = (byte) (i * 31 + 7);
+        }
+
+        return result;
+    }
+
+    private static byte[] node(int prefix, byte[]... parts) {
+        Haval haval = new Haval(HavalAttributes.HAVAL_256_BIT,
+                HavalAttributes.HAVAL_4_ROUND);
+        haval.update((byte) prefix);
+        for (byte[] part : parts) {
+            haval.update(part);
+        }
+
+        return haval.digest();
+    }
+
+    private static byte[] slice(byte[] input, int from, int to) {
+        byte[] result = new byte[to - from];
+        System.arraycopy(input, from, result, 0, result.length);
+
+        return result;
+    }
+
+    private HavalTree tree(int parallelism) {
+        return new HavalTree(HavalAttributes.HAVAL_256_BIT,
+                HavalAttributes.HAVAL_4_ROUND, LEAF_SIZE,
+                HavalTree.DEFAULT_FAN_OUT, new ForkJoinPool(parallelism));
+    }
+
+    @Test
+    public void testCloneContinuesIndependently() {
+        // What
+        HavalTree tree = tree(2);
+        tree.update(input(700));
+        // When
+        HavalTree clone = (HavalTree) tree.clone();
+        clone.update((byte) 1);
+        tree.update((byte) 1);
+        // Then
+        assertThat(clone.digest(), is(equalTo(tree.digest())));
+    }
+
+    @Test
+    public void testDigestFollowsTreeLayout() {
+        // What
+        byte[] input = input(300);
+        byte[] leaf0 = node(0x00, slice(input, 0, 128));
+        byte[] leaf1 = node(0x00, slice(input, 128, 256));
+        byte[] leaf2 = node(0x00, slice(input, 256, 300));
+        byte[] top = node(0x01, node(0x01, leaf0, leaf1), leaf2);
+        byte[] expected = node(0x02, ByteBuffer.allocate(13).putInt(LEAF_SIZE)
+                .put((byte) 2).putLong(300).array(), top);
+        HavalTree tree = tree(2);
+        // When
+        tree.update(input);
+        // Then
+        assertThat(tree.digest(), is(equalTo(expected)));
+    }
+
+    @Test
+    public void testDigestIntoArrayAtOffset() {
+        // What
+        HavalTree tree = tree(2);
+        tree.update(input(1000));
+        byte[] expected = ((HavalTree) tree.clone()).digest();
+        byte[] out = new byte[expected.length + 7];
+        // When
+        int length = tree.digest(out, 7);
+        // Then
+        assertThat(length, is(expected.length));
+        assertThat(Arrays.copyOfRange(out, 7, out.length),
+                is(equalTo(expected)));
+    }
+
+    @Test
+    public void testDigestIsIndependentOfParallelismAndChunking() {
+        // What
+        byte[] input = input(LEAF_SIZE * 37 + 5);
+        HavalTree single = tree(1);
+        HavalTree parallel = tree(4);
+        // When
+        single.update(input);
+        for (int offset = 0; offset < input.length; offset += 100) {
+            parallel.update(ByteBuffer.wrap(input, offset,
+                    Math.min(100, input.length - offset)));
+        }
+        // Then
+        assertThat(parallel.digest(), is(equalTo(single.digest())));
+    }
+
+    @Test
+    public void testDigestResetsInstance() {
+        // What
+        HavalTree tree = tree(2);
+        tree.update(input(1000));
+        byte[] first = tree.digest();
+        // When
+        tree.update(input(1000));
+        // Then
+        assertThat(tree.digest(), is(equalTo(first)));
+    }
+
+    @Test
+    public void testStaticHashingDiffersFromPlainHaval() {
+        // What
+        byte[] input = "The quick brown fox jumps over the lazy dog"
+                .getBytes();
+        // When
+        String hash = HavalTree.hash(input, HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+        // Then
+        assertThat(hash.length(), is(32));
+        assertThat(hash, is(not(equalTo(Haval.hash(input)))));
+        HavalTree tree = new HavalTree(HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+        tree.update(input);
+        assertThat(hash,
+                is(equalTo(Util.toString(tree.digest()).toLowerCase())));
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfFanOutIsWrong() {
+        new HavalTree(HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND, LEAF_SIZE, 1,
+                ForkJoinPool.commonPool());
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfLeafSizeIsWrong() {
+        new HavalTree(HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND, LEAF_SIZE + 1,
+                HavalTree.DEFAULT_FAN_OUT, ForkJoinPool.commonPool());
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfRoundsIsWrong() {
+        new HavalTree(HavalAttributes.HAVAL_128_BIT, 6);
+    }
+}
@@ -0,0 +1,155 @@
+package com.m4gik;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+import com.m4gik.util.Util;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link MidstateCache}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class MidstateCacheTest {
+
+    private static final int ENTRY = HavalAttributes.BLOCK_SIZE
+            + MidstateCache.ENTRY_OVERHEAD;
+
+    private static byte[] message(int seed, int length) {
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = (byte) (i * 31 + seed);
+        }
+
+        return result;
+    }
+
+    private static String hex(byte[] digest) {
+        return Util.toString(digest).toLowerCase();
+    }
+
+    @Test
+    public void testDigestMatchesHavalWithAndWithoutCachedPrefix() {
+        // What
+        MidstateCache cache = new MidstateCache(1 << 20);
+        byte[] message = message(7, 1000);
+        String expected = Haval.hash(message, HavalAttributes.HAVAL_192_BIT,
+                HavalAttributes.HAVAL_4_ROUND);
+        // When
+        String missed = hex(cache.digest(message,
+                HavalAttributes.HAVAL_192_BIT, HavalAttributes.HAVAL_4_ROUND));
+        cache.put(message(7, 300), HavalAttributes.HAVAL_192_BIT,
+                HavalAttributes.HAVAL_4_ROUND);
+        String hit = hex(cache.digest(message, HavalAttributes.HAVAL_192_BIT,
+                HavalAttributes.HAVAL_4_ROUND));
+        // Then
+        assertThat(missed, is(equalTo(expected)));
+        assertThat(hit, is(equalTo(expected)));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(1L));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        // What
+        MidstateCache cache = new MidstateCache(2 * ENTRY);
+        cache.put(message(1, 128), HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+        cache.put(message(2, 128), HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+        cache.digest(message(1, 200), HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+        // When
+        cache.put(message(3, 128), HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+        cache.digest(message(1, 200), HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+        cache.digest(message(2, 200), HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+        // Then
+        assertThat(cache.getSize(), is(2));
+        assertThat(cache.getUsedBytes(), is(2L * ENTRY));
+        assertThat(cache.getHits(), is(2L));
+        assertThat(cache.getMisses(), is(1L));
+    }
+
+    @Test
+    public void testLongestPrefixIsUsed() {
+        // What
+        MidstateCache cache = new MidstateCache(1 << 20);
+        byte[] message = message(3, 600);
+        cache.put(message(3, 128), HavalAttributes.HAVAL_256_BIT,
+                HavalAttributes.HAVAL_5_ROUND);
+        cache.put(message(3, 512), HavalAttributes.HAVAL_256_BIT,
+                HavalAttributes.HAVAL_5_ROUND);
+        // When
+        Haval haval = cache.resume(message, HavalAttributes.HAVAL_256_BIT,
+                HavalAttributes.HAVAL_5_ROUND);
+        // Then
+        assertThat(hex(haval.digest()), is(equalTo(Haval.hash(message,
+                HavalAttributes.HAVAL_256_BIT, HavalAttributes.HAVAL_5_ROUND))));
+        assertThat(cache.getSize(), is(2));
+        assertThat(cache.getUsedBytes(), is(640L + 2
+                * MidstateCache.ENTRY_OVERHEAD));
+    }
+
+    @Test
+    public void testOtherParametersDoNotHit() {
+        // What
+        MidstateCache cache = new MidstateCache(1 << 20);
+        byte[] message = message(1, 300);
+        cache.put(message, HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+        // When
+        cache.digest(message, HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_4_ROUND);
+        cache.digest(message(2, 300), HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+        // Then
+        assertThat(cache.getHits(), is(0L));
+        assertThat(cache.getMisses(), is(2L));
+    }
+
+    @Test
+    public void testShorterPrefixIsUsedIfLongerOneDiffers() {
+        // What
+        MidstateCache cache = new MidstateCache(1 << 20);
+        byte[] message = message(3, 600);
+        cache.put(message(3, 256), HavalAttributes.HAVAL_160_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+        cache.put(message(4, 512), HavalAttributes.HAVAL_160_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+        cache.put(message(5, 384), HavalAttributes.HAVAL_160_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+        // When
+        String digest = hex(cache.digest(message,
+                HavalAttributes.HAVAL_160_BIT, HavalAttributes.HAVAL_3_ROUND));
+        // Then
+        assertThat(digest, is(equalTo(Haval.hash(message,
+                HavalAttributes.HAVAL_160_BIT, HavalAttributes.HAVAL_3_ROUND))));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(0L));
+    }
+
+    @Test
+    public void testShortPrefixIsNotCached() {
+        // What
+        MidstateCache cache = new MidstateCache(1 << 20);
+        // When
+        cache.put(message(1, 127), HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+        // Then
+        assertThat(cache.getSize(), is(0));
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfBoundIsWrong() {
+        new MidstateCache(0);
+    }
+}
@@ -0,0 +1,138 @@
+package com.m4gik.io;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.m4gik.Haval;
+import com.m4gik.HavalAttributes;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link ChunkingPipeline}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class ChunkingPipelineTest {
+
+    private static final ContentChunker CHUNKER = new ContentChunker(256,
+            1024, 4096);
+
+    private static final byte[] DATA = new byte[10 * 1024 * 1024 + 12345];
+
+    static {
+        new Random(7).nextBytes(DATA);
+    }
+
+    /**
+     * Chunks and hashes the data on the calling thread only.
+     */
+    private static List<Chunk> expected(byte[] data) {
+        List<Chunk> result = new ArrayList<Chunk>();
+        for (int start = 0, end; start < data.length; start = end) {
+            end = CHUNKER.cut(data, start, data.length, true);
+            Haval haval = new Haval(HavalAttributes.HAVAL_128_BIT,
+                    HavalAttributes.HAVAL_3_ROUND);
+            haval.update(data, start, end - start);
+            result.add(new Chunk(start, end - start, haval.digest()));
+        }
+
+        return result;
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testChunksMatchSequentialChunking() throws IOException {
+        // What
+        ForkJoinPool pool = new ForkJoinPool(3);
+        ChunkingPipeline pipeline = new ChunkingPipeline(CHUNKER,
+                HavalAttributes.HAVAL_128_BIT, HavalAttributes.HAVAL_3_ROUND,
+                pool);
+        // When
+        List<Chunk> chunks = pipeline.chunk(new ByteArrayInputStream(DATA));
+        pool.shutdown();
+        // Then
+        assertThat(chunks, is(equalTo(expected(DATA))));
+    }
+
+    @Test
+    public void testChunksOfFileAndOfShortReads() throws IOException {
+        // What
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(DATA);
+        }
+        ChunkingPipeline pipeline = new ChunkingPipeline(CHUNKER,
+                HavalAttributes.HAVAL_128_BIT, HavalAttributes.HAVAL_3_ROUND);
+        final List<Chunk> fromFile = new ArrayList<Chunk>();
+        InputStream trickle = new FilterInputStream(new ByteArrayInputStream(
+                DATA)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 100000));
+            }
+        };
+        // When
+        long length = pipeline.process(file.toPath(), new Consumer<Chunk>() {
+            public void accept(Chunk chunk) {
+                fromFile.add(chunk);
+            }
+        });
+        List<Chunk> fromTrickle = pipeline.chunk(trickle);
+        // Then
+        assertThat(length, is((long) DATA.length));
+        assertThat(fromFile, is(equalTo(expected(DATA))));
+        assertThat(fromTrickle, is(equalTo(fromFile)));
+    }
+
+    @Test
+    public void testShortAndEmptyStreams() throws IOException {
+        // What
+        ChunkingPipeline pipeline = new ChunkingPipeline(CHUNKER,
+                HavalAttributes.HAVAL_128_BIT, HavalAttributes.HAVAL_3_ROUND);
+        byte[] data = Arrays.copyOf(DATA, 100);
+        // When
+        List<Chunk> empty = pipeline.chunk(new ByteArrayInputStream(
+                new byte[0]));
+        List<Chunk> one = pipeline.chunk(new ByteArrayInputStream(data));
+        // Then
+        assertThat(empty.isEmpty(), is(true));
+        assertThat(one, is(equalTo(expected(data))));
+        assertThat(one.get(0).getOffset(), is(0L));
+        assertThat(one.get(0).getLength(), is(100));
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfChunkerIsNull() {
+        new ChunkingPipeline(null, HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfSizeIsWrong() {
+        new ChunkingPipeline(CHUNKER, HavalAttributes.HAVAL_128_BIT + 1,
+                HavalAttributes.HAVAL_3_ROUND);
+    }
+}
@@ -0,0 +1,139 @@
+package com.m4gik.io;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link ContentChunker}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class ContentChunkerTest {
+
+    private static List<String> chunks(ContentChunker chunker, byte[] data) {
+        List<String> result = new ArrayList<String>();
+        for (int start = 0, end; start < data.length; start = end) {
+            end = chunker.cut(data, start, data.length, true);
+            result.add(new String(data, start, end - start,
+                    StandardCharsets.ISO_8859_1));
+        }
+
+        return result;
+    }
+
+    private static byte[] random(int seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+
+        return data;
+    }
+
+    @Test
+    public void testChunkSizesAreWithinBounds() {
+        // What
+        ContentChunker chunker = new ContentChunker(256, 1024, 4096);
+        byte[] data = random(1, 1 << 20);
+        long chunks = 0;
+        // When
+        for (int start = 0, end; start < data.length; start = end) {
+            end = chunker.cut(data, start, data.length, true);
+            // Then
+            assertThat(end - start, is(lessThanOrEqualTo(4096)));
+            if (end < data.length) {
+                assertThat(end - start, is(greaterThanOrEqualTo(256)));
+            }
+            chunks++;
+        }
+        assertThat(chunks, is(greaterThan((1L << 20) / 4096)));
+        assertThat(chunks, is(lessThanOrEqualTo((1L << 20) / 256)));
+    }
+
+    @Test
+    public void testCutsConstantDataAtMaximumSize() {
+        // What
+        ContentChunker chunker = new ContentChunker();
+        byte[] data = new byte[200000];
+        // When
+        int end = chunker.cut(data, 0, data.length, false);
+        // Then
+        assertThat(end, is(ContentChunker.DEFAULT_MAX_SIZE));
+    }
+
+    @Test
+    public void testInsertionOnlyChangesNearbyChunks() {
+        // What
+        ContentChunker chunker = new ContentChunker(256, 1024, 4096);
+        byte[] data = random(2, 256 * 1024);
+        byte[] edited = new byte[data.length + 10];
+        System.arraycopy(data, 0, edited, 0, 5000);
+        System.arraycopy(data, 5000, edited, 5010, data.length - 5000);
+        // When
+        List<String> before = chunks(chunker, data);
+        Set<String> after = new HashSet<String>(chunks(chunker, edited));
+        // Then
+        int kept = 0;
+        for (String chunk : before) {
+            kept += after.contains(chunk) ? 1 : 0;
+        }
+        assertThat(kept, is(greaterThanOrEqualTo(before.size() - 3)));
+    }
+
+    @Test
+    public void testNeedsMoreDataUnlessLast() {
+        // What
+        ContentChunker chunker = new ContentChunker(256, 1024, 4096);
+        byte[] data = new byte[1000];
+        // When
+        int more = chunker.cut(data, 0, data.length, false);
+        int last = chunker.cut(data, 0, data.length, true);
+        // Then
+        assertThat(more, is(-1));
+        assertThat(last, is(data.length));
+    }
+
+    @Test
+    public void testSameBoundariesWithMoreData() {
+        // What
+        ContentChunker chunker = new ContentChunker(256, 1024, 4096);
+        byte[] data = random(3, 64 * 1024);
+        // When
+        int whole = chunker.cut(data, 100, data.length, false);
+        // Then
+        for (int end = 100; end <= data.length; end += 97) {
+            int cut = chunker.cut(data, 100, end, false);
+            assertThat(cut == -1 || cut == whole, is(true));
+        }
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfAverageSizeIsNotPowerOfTwo() {
+        new ContentChunker(256, 1000, 4096);
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfMinimumSizeIsTooSmall() {
+        new ContentChunker(16, 1024, 4096);
+    }
+
+    @Test(
+            expected = IndexOutOfBoundsException.class)
+    public void testThrowsIfRangeIsWrong() {
+        new ContentChunker().cut(new byte[10], 5, 11, true);
+    }
+}
@@ -0,0 +1,62 @@
+package com.m4gik.io;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.m4gik.Haval;
+import com.m4gik.HavalAttributes;
+import com.m4gik.util.Util;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link DigestInputStream}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class DigestInputStreamTest {
+
+    private static final byte[] INPUT = new byte[1000];
+
+    static {
+        for (int i = 0; i < INPUT.length; i++) {
+            INPUT[i] = (byte) (i * 31 + 7);
+        }
+    }
+
+    @Test
+    public void testDigestCoversReadAndSkippedBytes() throws IOException {
+        // What
+        DigestInputStream in = new DigestInputStream(new ByteArrayInputStream(
+                INPUT), new Haval(HavalAttributes.HAVAL_160_BIT,
+                HavalAttributes.HAVAL_4_ROUND));
+        byte[] buffer = new byte[300];
+        // When
+        int first = in.read();
+        int read = in.read(buffer, 0, buffer.length);
+        long skipped = in.skip(400);
+        while (in.read(buffer) >= 0) {
+        }
+        in.close();
+        // Then
+        assertThat(first, is(INPUT[0] & 0xFF));
+        assertThat(read, is(300));
+        assertThat(skipped, is(400L));
+        assertThat(Util.toString(in.getDigest()).toLowerCase(),
+                is(equalTo(Haval.hash(INPUT, HavalAttributes.HAVAL_160_BIT,
+                        HavalAttributes.HAVAL_4_ROUND))));
+    }
+
+    @Test(
+            expected = IllegalStateException.class)
+    public void testThrowsIfDigestIsTakenBeforeClose() {
+        new DigestInputStream(new ByteArrayInputStream(INPUT), new Haval())
+                .getDigest();
+    }
+}
@@ -0,0 +1,57 @@
+package com.m4gik.io;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.m4gik.Haval;
+import com.m4gik.HavalAttributes;
+import com.m4gik.util.Util;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link DigestOutputStream}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class DigestOutputStreamTest {
+
+    private static final byte[] INPUT = new byte[1000];
+
+    static {
+        for (int i = 0; i < INPUT.length; i++) {
+            INPUT[i] = (byte) (i * 31 + 7);
+        }
+    }
+
+    @Test
+    public void testBytesArePassedThroughAndDigested() throws IOException {
+        // What
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        DigestOutputStream out = new DigestOutputStream(sink, new Haval(
+                HavalAttributes.HAVAL_224_BIT, HavalAttributes.HAVAL_3_ROUND));
+        // When
+        out.write(INPUT[0]);
+        out.write(INPUT, 1, 599);
+        out.write(INPUT, 600, 400);
+        out.close();
+        // Then
+        assertThat(sink.toByteArray(), is(equalTo(INPUT)));
+        assertThat(Util.toString(out.getDigest()).toLowerCase(),
+                is(equalTo(Haval.hash(INPUT, HavalAttributes.HAVAL_224_BIT,
+                        HavalAttributes.HAVAL_3_ROUND))));
+    }
+
+    @Test(
+            expected = IllegalStateException.class)
+    public void testThrowsIfDigestIsTakenBeforeClose() {
+        new DigestOutputStream(new ByteArrayOutputStream(), new Haval())
+                .getDigest();
+    }
+}
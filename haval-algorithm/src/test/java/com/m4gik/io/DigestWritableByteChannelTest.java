@@ -0,0 +1,96 @@
+package com.m4gik.io;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import org.junit.Test;
+
+import com.m4gik.Haval;
+import com.m4gik.HavalAttributes;
+import com.m4gik.util.Util;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link DigestWritableByteChannel}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class DigestWritableByteChannelTest {
+
+    private static final byte[] INPUT = new byte[1000];
+
+    static {
+        for (int i = 0; i < INPUT.length; i++) {
+            INPUT[i] = (byte) (i * 31 + 7);
+        }
+    }
+
+    /**
+     * A channel which accepts at most 70 bytes per write.
+     */
+    private static WritableByteChannel slowChannel(
+            final ByteArrayOutputStream sink) {
+        return new WritableByteChannel() {
+
+            private boolean open = true;
+
+            public void close() {
+                open = false;
+            }
+
+            public boolean isOpen() {
+                return open;
+            }
+
+            public int write(ByteBuffer src) {
+                int n = Math.min(70, src.remaining());
+                for (int i = 0; i < n; i++) {
+                    sink.write(src.get());
+                }
+
+                return n;
+            }
+        };
+    }
+
+    @Test
+    public void testOnlyAcceptedBytesAreDigested() throws IOException {
+        // What
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        DigestWritableByteChannel channel = new DigestWritableByteChannel(
+                slowChannel(sink), new Haval(HavalAttributes.HAVAL_256_BIT,
+                        HavalAttributes.HAVAL_5_ROUND));
+        ByteBuffer direct = ByteBuffer.allocateDirect(500);
+        direct.put(INPUT, 500, 500).flip();
+        // When
+        ByteBuffer heap = ByteBuffer.wrap(INPUT, 0, 500);
+        while (heap.hasRemaining()) {
+            channel.write(heap);
+        }
+        while (direct.hasRemaining()) {
+            channel.write(direct);
+        }
+        channel.close();
+        // Then
+        assertThat(channel.isOpen(), is(false));
+        assertThat(direct.limit(), is(500));
+        assertThat(sink.toByteArray(), is(equalTo(INPUT)));
+        assertThat(Util.toString(channel.getDigest()).toLowerCase(),
+                is(equalTo(Haval.hash(INPUT, HavalAttributes.HAVAL_256_BIT,
+                        HavalAttributes.HAVAL_5_ROUND))));
+    }
+
+    @Test(
+            expected = IllegalStateException.class)
+    public void testThrowsIfDigestIsTakenBeforeClose() {
+        new DigestWritableByteChannel(slowChannel(new ByteArrayOutputStream()),
+                new Haval()).getDigest();
+    }
+}
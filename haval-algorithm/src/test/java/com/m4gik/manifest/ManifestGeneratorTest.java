@@ -0,0 +1,120 @@
+package com.m4gik.manifest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.m4gik.Haval;
+import com.m4gik.HavalAttributes;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link ManifestGenerator}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class ManifestGeneratorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String line(Path root, String relative) throws IOException {
+        return Haval.hashFile(root.resolve(relative),
+                HavalAttributes.HAVAL_160_BIT, HavalAttributes.HAVAL_4_ROUND)
+                + "  " + relative + "\n";
+    }
+
+    private void write(Path root, String relative, int length)
+            throws IOException {
+        Path file = root.resolve(relative);
+        Files.createDirectories(file.getParent());
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * 31 + relative.length());
+        }
+        Files.write(file, content);
+    }
+
+    @Test
+    public void testLinesAreInPathOrder() throws IOException {
+        // What
+        Path root = folder.getRoot().toPath();
+        String[] files = { "b", "a/y/z", "a-b", "a/x", "empty", "a.txt",
+                "c/big" };
+        for (String file : files) {
+            write(root, file, file.equals("empty") ? 0
+                    : file.equals("c/big") ? 300000 : 1000);
+        }
+        Files.createDirectories(root.resolve("d/e"));
+        List<String> paths = new ArrayList<String>();
+        Collections.addAll(paths, files);
+        Collections.sort(paths);
+        StringBuilder expected = new StringBuilder();
+        for (String path : paths) {
+            expected.append(line(root, path));
+        }
+        StringWriter out = new StringWriter();
+        // When
+        long count = new ManifestGenerator(HavalAttributes.HAVAL_160_BIT,
+                HavalAttributes.HAVAL_4_ROUND, 2).generate(root, out);
+        // Then
+        assertThat(count, is((long) files.length));
+        assertThat(out.toString(), is(equalTo(expected.toString())));
+    }
+
+    @Test
+    public void testManyFilesWithSmallConcurrency() throws IOException {
+        // What
+        Path root = folder.getRoot().toPath();
+        List<String> paths = new ArrayList<String>();
+        for (int i = 0; i < 300; i++) {
+            String path = "dir" + (i % 7) + "/file" + i;
+            write(root, path, i * 13);
+            paths.add(path);
+        }
+        Collections.sort(paths);
+        StringBuilder expected = new StringBuilder();
+        for (String path : paths) {
+            expected.append(line(root, path));
+        }
+        StringWriter one = new StringWriter();
+        StringWriter many = new StringWriter();
+        // When
+        new ManifestGenerator(HavalAttributes.HAVAL_160_BIT,
+                HavalAttributes.HAVAL_4_ROUND, 1).generate(root, one);
+        new ManifestGenerator(HavalAttributes.HAVAL_160_BIT,
+                HavalAttributes.HAVAL_4_ROUND).generate(root, many);
+        // Then
+        assertThat(one.toString(), is(equalTo(expected.toString())));
+        assertThat(many.toString(), is(equalTo(expected.toString())));
+    }
+
+    @Test(
+            expected = IllegalArgumentException.class)
+    public void testThrowsIfConcurrencyIsWrong() {
+        new ManifestGenerator(HavalAttributes.HAVAL_160_BIT,
+                HavalAttributes.HAVAL_4_ROUND, 0);
+    }
+
+    @Test(
+            expected = IOException.class)
+    public void testThrowsIfRootIsMissing() throws IOException {
+        new ManifestGenerator(HavalAttributes.HAVAL_160_BIT,
+                HavalAttributes.HAVAL_4_ROUND).generate(new File(
+                folder.getRoot(), "missing").toPath(), new StringWriter());
+    }
+}
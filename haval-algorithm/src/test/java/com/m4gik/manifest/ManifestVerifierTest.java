@@ -0,0 +1,196 @@
+package com.m4gik.manifest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.m4gik.HavalAttributes;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link ManifestVerifier}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class ManifestVerifierTest {
+
+    private static final String[] FILES = { "a/x", "a/y", "b", "c/d/e" };
+
+    private Path cache;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path manifest;
+
+    private Path root;
+
+    private ManifestVerifier verifier() {
+        return new ManifestVerifier(cache, HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_3_ROUND);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        root = folder.newFolder("tree").toPath();
+        for (String file : FILES) {
+            Path path = root.resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.write(path, file.getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System
+                    .currentTimeMillis() - 3600000L));
+        }
+        manifest = folder.getRoot().toPath().resolve("manifest");
+        try (Writer out = Files.newBufferedWriter(manifest,
+                StandardCharsets.UTF_8)) {
+            new ManifestGenerator(HavalAttributes.HAVAL_128_BIT,
+                    HavalAttributes.HAVAL_3_ROUND).generate(root, out);
+        }
+        cache = folder.getRoot().toPath().resolve("cache");
+    }
+
+    @Test
+    public void testChangedFilesAreRehashed() throws IOException {
+        // What
+        verifier().verify(root, manifest);
+        Path touched = root.resolve("a/y");
+        Files.setLastModifiedTime(touched, FileTime.fromMillis(Files
+                .getLastModifiedTime(touched).toMillis() + 5000));
+        Files.write(root.resolve("b"), "changed".getBytes());
+        Files.delete(root.resolve("c/d/e"));
+        // When
+        VerificationReport report = verifier().verify(root, manifest);
+        // Then
+        assertThat(report.getSkipped(), contains("a/x"));
+        assertThat(report.getRehashed(), contains("a/y", "b"));
+        assertThat(report.getMismatched(), contains("b"));
+        assertThat(report.getMissing(), contains("c/d/e"));
+        assertThat(report.isValid(), is(false));
+    }
+
+    @Test
+    public void testDamagedCacheIsIgnored() throws IOException {
+        // What
+        verifier().verify(root, manifest);
+        byte[] damaged = Files.readAllBytes(cache);
+        damaged = Arrays.copyOf(damaged, damaged.length - 7);
+        Files.write(cache, damaged);
+        // When
+        VerificationReport report = verifier().verify(root, manifest);
+        VerificationReport otherDigests = new ManifestVerifier(cache,
+                HavalAttributes.HAVAL_128_BIT, HavalAttributes.HAVAL_4_ROUND)
+                .verify(root, new BufferedReader(new StringReader("")));
+        // Then
+        assertThat(report.getSkipped(), contains("a/x", "a/y", "b"));
+        assertThat(report.getRehashed(), contains("c/d/e"));
+        assertThat(report.isValid(), is(true));
+        assertThat(otherDigests.getSkipped(), is(empty()));
+    }
+
+    @Test
+    public void testFilesTruncatedBeforeHashingAreNotCached()
+            throws IOException {
+        // What
+        final Path truncated = root.resolve("c/d/e");
+        byte[] content = Files.readAllBytes(truncated);
+        FileTime time = Files.getLastModifiedTime(truncated);
+        ManifestVerifier verifier = new ManifestVerifier(cache,
+                HavalAttributes.HAVAL_128_BIT, HavalAttributes.HAVAL_3_ROUND) {
+            @Override
+            byte[] hash(Path file) throws IOException {
+                if (file.equals(truncated)) {
+                    try (FileChannel channel = FileChannel.open(file,
+                            StandardOpenOption.WRITE)) {
+                        channel.truncate(2);
+                    }
+                }
+
+                return super.hash(file);
+            }
+        };
+        // When
+        VerificationReport first = verifier.verify(root, manifest);
+        Files.write(truncated, content);
+        Files.setLastModifiedTime(truncated, time);
+        VerificationReport second = verifier().verify(root, manifest);
+        // Then
+        assertThat(first.getRehashed(), is(equalTo(Arrays.asList(FILES))));
+        assertThat(first.getMismatched(), contains("c/d/e"));
+        assertThat(second.getSkipped(), contains("a/x", "a/y", "b"));
+        assertThat(second.getRehashed(), contains("c/d/e"));
+        assertThat(second.isValid(), is(true));
+    }
+
+    @Test
+    public void testRacilyCleanFilesAreNotCached() throws IOException {
+        // What
+        Files.setLastModifiedTime(root.resolve("b"), FileTime.fromMillis(System
+                .currentTimeMillis()));
+        // When
+        VerificationReport first = verifier().verify(root, manifest);
+        VerificationReport second = verifier().verify(root, manifest);
+        // Then
+        assertThat(first.getRehashed(), is(equalTo(Arrays.asList(FILES))));
+        assertThat(second.getSkipped(), contains("a/x", "a/y", "c/d/e"));
+        assertThat(second.getRehashed(), contains("b"));
+        assertThat(second.isValid(), is(true));
+    }
+
+    @Test
+    public void testRemovedPathsLeaveTheCache() throws IOException {
+        // What
+        verifier().verify(root, manifest);
+        long before = Files.size(cache);
+        String kept = Files.readAllLines(manifest, StandardCharsets.UTF_8)
+                .get(0);
+        // When
+        verifier().verify(root, new BufferedReader(new StringReader(kept)));
+        long after = Files.size(cache);
+        VerificationReport report = verifier().verify(root, manifest);
+        // Then
+        assertThat(after < before, is(true));
+        assertThat(report.getSkipped(), contains("a/x"));
+        assertThat(report.getRehashed(), contains("a/y", "b", "c/d/e"));
+    }
+
+    @Test
+    public void testSecondRunSkipsUnchangedFiles() throws IOException {
+        // When
+        VerificationReport first = verifier().verify(root, manifest);
+        VerificationReport second = verifier().verify(root, manifest);
+        // Then
+        assertThat(first.getRehashed(), is(equalTo(Arrays.asList(FILES))));
+        assertThat(first.getSkipped(), is(empty()));
+        assertThat(first.isValid(), is(true));
+        assertThat(second.getSkipped(), is(equalTo(Arrays.asList(FILES))));
+        assertThat(second.getRehashed(), is(empty()));
+        assertThat(second.isValid(), is(true));
+    }
+
+    @Test(
+            expected = IOException.class)
+    public void testThrowsIfManifestIsMalformed() throws IOException {
+        verifier().verify(root,
+                new BufferedReader(new StringReader("abc  a/x")));
+    }
+}
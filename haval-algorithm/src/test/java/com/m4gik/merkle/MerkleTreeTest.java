@@ -0,0 +1,196 @@
+package com.m4gik.merkle;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.m4gik.HavalAttributes;
+import com.m4gik.HavalTree;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link MerkleTree}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class MerkleTreeTest {
+
+    private static final int PAGE = 256;
+
+    private static final int ROUNDS = HavalAttributes.HAVAL_4_ROUND;
+
+    private static final int SIZE = HavalAttributes.HAVAL_224_BIT;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] data(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+
+        return data;
+    }
+
+    private MerkleTree build(byte[] data) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, data);
+
+        return MerkleTree.build(file, folder.newFile().toPath(), PAGE, SIZE,
+                ROUNDS);
+    }
+
+    private static void overwrite(Path file, long position, byte[] bytes)
+            throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file.toFile(), "rw")) {
+            out.seek(position);
+            out.write(bytes);
+        }
+    }
+
+    @Test
+    public void testCheckDigestEqualsHavalTree() throws IOException {
+        for (int length : new int[] { 0, 1, PAGE, 3 * PAGE, 5 * PAGE + 17,
+                8 * PAGE, 13 * PAGE + 1 }) {
+            // What
+            byte[] data = data(length, length);
+            HavalTree expected = new HavalTree(SIZE, ROUNDS, PAGE, 2,
+                    ForkJoinPool.commonPool());
+            expected.update(data, 0, data.length);
+
+            // When
+            try (MerkleTree tree = build(data)) {
+
+                // Then
+                assertThat(tree.getDataLength(), is(equalTo((long) length)));
+                assertThat(tree.getLeafCount(), is(equalTo(Math.max(1L,
+                        (length + PAGE - 1L) / PAGE))));
+                assertThat(tree.getDigest(), is(equalTo(expected.digest())));
+            }
+        }
+    }
+
+    @Test
+    public void testCheckIncrementalUpdate() throws IOException {
+        // What
+        byte[] data = data(21 * PAGE + 100, 1);
+        Path file = folder.newFile().toPath();
+        Files.write(file, data);
+        Path treeFile = folder.newFile().toPath();
+        MerkleTree tree = MerkleTree.build(file, treeFile, PAGE, SIZE, ROUNDS);
+        byte[] root = tree.getRoot();
+        byte[] leaf = tree.getLeaf(7);
+        tree.close();
+
+        // When
+        byte[] change = data(40, 2);
+        overwrite(file, 7L * PAGE + 10, change);
+        overwrite(file, 21L * PAGE + 50, change);
+        System.arraycopy(change, 0, data, 7 * PAGE + 10, change.length);
+        System.arraycopy(change, 0, data, 21 * PAGE + 50, change.length);
+        tree = MerkleTree.open(treeFile);
+        tree.update(file, 21, 7, 21);
+
+        // Then
+        try (MerkleTree expected = build(data)) {
+            assertThat(tree.getRoot(), is(not(equalTo(root))));
+            assertThat(tree.getLeaf(7), is(not(equalTo(leaf))));
+            assertThat(tree.getRoot(), is(equalTo(expected.getRoot())));
+            assertThat(tree.getDigest(), is(equalTo(expected.getDigest())));
+        }
+        tree.close();
+    }
+
+    @Test
+    public void testCheckOpenKeepsTree() throws IOException {
+        // What
+        Path file = folder.newFile().toPath();
+        Files.write(file, data(10 * PAGE, 3));
+        Path treeFile = folder.newFile().toPath();
+        byte[] root;
+        try (MerkleTree tree = MerkleTree.build(file, treeFile, PAGE, SIZE,
+                ROUNDS)) {
+            root = tree.getRoot();
+        }
+
+        // When
+        try (MerkleTree tree = MerkleTree.open(treeFile)) {
+
+            // Then
+            assertThat(tree.getRoot(), is(equalTo(root)));
+            assertThat(tree.getPageSize(), is(equalTo(PAGE)));
+            assertThat(tree.hashSize(), is(equalTo(SIZE)));
+            assertThat(tree.getRounds(), is(equalTo(ROUNDS)));
+            assertThat(Files.size(treeFile), is(equalTo(32L + (10 + 5 + 3 + 2
+                    + 1) * SIZE)));
+        }
+    }
+
+    @Test
+    public void testCheckProofsOfEveryPage() throws IOException {
+        // What
+        byte[] data = data(11 * PAGE + 30, 4);
+
+        // When
+        try (MerkleTree tree = build(data)) {
+            byte[] root = tree.getRoot();
+
+            // Then
+            for (long page = 0; page < tree.getLeafCount(); page++) {
+                MerkleProof proof = tree.prove(page);
+                int offset = (int) page * PAGE;
+                int length = Math.min(PAGE, data.length - offset);
+                assertThat(proof.getPage(), is(equalTo(page)));
+                assertThat(proof.verify(root, data, offset, length), is(true));
+                assertThat(proof.verify(root, data, offset, length - 1),
+                        is(false));
+            }
+            assertThat(tree.prove(3).verify(root, data, 4 * PAGE, PAGE),
+                    is(false));
+            assertThat(tree.prove(11).getSiblings().length, is(equalTo(3)));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testThrowsIfDataLengthChanged() throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, data(4 * PAGE, 5));
+        try (MerkleTree tree = MerkleTree.build(file, folder.newFile()
+                .toPath(), PAGE, SIZE, ROUNDS)) {
+            Files.write(file, data(5 * PAGE, 5));
+            tree.update(file, 0);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testThrowsIfFileIsNotATree() throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, data(100, 6));
+        MerkleTree.open(file);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThrowsIfPageIsOutOfData() throws IOException {
+        try (MerkleTree tree = build(data(2 * PAGE, 7))) {
+            tree.prove(2);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThrowsIfPageSizeIsWrong() throws IOException {
+        MerkleTree.build(folder.newFile().toPath(), folder.newFile().toPath(),
+                100, SIZE, ROUNDS);
+    }
+}
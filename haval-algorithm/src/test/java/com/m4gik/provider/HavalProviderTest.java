@@ -0,0 +1,116 @@
+package com.m4gik.provider;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import com.m4gik.Haval;
+import com.m4gik.HavalAttributes;
+import com.m4gik.util.Util;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link HavalProvider}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+@RunWith(Parameterized.class)
+public class HavalProviderTest {
+
+    private static final byte[] INPUT =
+            "The quick brown fox jumps over the lazy dog".getBytes();
+
+    private static final HavalProvider PROVIDER = new HavalProvider();
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> data() {
+        List<Object[]> result = new ArrayList<Object[]>();
+        int[] sizes = { HavalAttributes.HAVAL_128_BIT,
+                HavalAttributes.HAVAL_160_BIT, HavalAttributes.HAVAL_192_BIT,
+                HavalAttributes.HAVAL_224_BIT, HavalAttributes.HAVAL_256_BIT };
+        int[] rounds = { HavalAttributes.HAVAL_3_ROUND,
+                HavalAttributes.HAVAL_4_ROUND, HavalAttributes.HAVAL_5_ROUND };
+        for (int size : sizes) {
+            for (int passes : rounds) {
+                result.add(new Object[] { size, passes });
+            }
+        }
+
+        return result;
+    }
+
+    private final String expectedHash;
+
+    private final int rounds;
+
+    private final int size;
+
+    public HavalProviderTest(int size, int rounds) {
+        this.size = size;
+        this.rounds = rounds;
+        this.expectedHash = Haval.hash(INPUT, size, rounds);
+    }
+
+    private MessageDigest messageDigest() throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance(
+                HavalProvider.algorithmName(size, rounds), PROVIDER);
+    }
+
+    @Test
+    public void testByteBufferUpdateAndDigestIntoArray() throws Exception {
+        // What
+        MessageDigest md = messageDigest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(INPUT.length);
+        buffer.put(INPUT).flip();
+        byte[] out = new byte[size + 2];
+        // When
+        md.update(buffer);
+        int length = md.digest(out, 2, size);
+        // Then
+        assertThat(length, is(size));
+        assertThat(Util.toString(out, 2, size).toLowerCase(),
+                is(equalTo(expectedHash)));
+    }
+
+    @Test
+    public void testCloneKeepsState() throws Exception {
+        // What
+        MessageDigest md = messageDigest();
+        md.update(INPUT, 0, 10);
+        // When
+        MessageDigest clone = (MessageDigest) md.clone();
+        clone.update(INPUT, 10, INPUT.length - 10);
+        md.update(INPUT, 10, INPUT.length - 10);
+        // Then
+        assertThat(Util.toString(clone.digest()).toLowerCase(),
+                is(equalTo(expectedHash)));
+        assertThat(Util.toString(md.digest()).toLowerCase(),
+                is(equalTo(expectedHash)));
+    }
+
+    @Test
+    public void testDigestMatchesHaval() throws Exception {
+        // What
+        MessageDigest md = messageDigest();
+        // When
+        byte[] digest = md.digest(INPUT);
+        // Then
+        assertThat(md.getDigestLength(), is(size));
+        assertThat(md.getAlgorithm(),
+                is(equalTo("HAVAL-" + size * 8 + "/" + rounds)));
+        assertThat(Util.toString(digest).toLowerCase(),
+                is(equalTo(expectedHash)));
+    }
+}
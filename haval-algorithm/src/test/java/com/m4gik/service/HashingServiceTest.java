@@ -0,0 +1,256 @@
+package com.m4gik.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import com.m4gik.Haval;
+import com.m4gik.HavalAttributes;
+
+/**
+ * 
+ * This class contains JUnit tests for class {@link HashingService}.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+public class HashingServiceTest {
+
+    private static final int SIZE = HavalAttributes.HAVAL_192_BIT;
+
+    private static final int ROUNDS = HavalAttributes.HAVAL_4_ROUND;
+
+    private static byte[] expected(byte[] input) {
+        Haval haval = new Haval(SIZE, ROUNDS);
+        haval.update(input, 0, input.length);
+
+        return haval.digest();
+    }
+
+    private static byte[] payload(int i) {
+        byte[] payload = new byte[i % 200];
+        for (int j = 0; j < payload.length; j++) {
+            payload[j] = (byte) (i * 31 + j);
+        }
+
+        return payload;
+    }
+
+    private static void checkStrategy(WaitStrategy strategy, long batchDelay)
+            throws InterruptedException {
+        // What
+        final int threads = 4;
+        final int requests = 5000;
+        final AtomicReferenceArray<byte[]> digests =
+                new AtomicReferenceArray<byte[]>(threads * requests);
+        final CountDownLatch latch = new CountDownLatch(threads * requests);
+
+        // When
+        try (final HashingService service = new HashingService(SIZE, ROUNDS,
+                2, 64, 16, batchDelay, strategy)) {
+            List<Thread> producers = new ArrayList<Thread>();
+            for (int t = 0; t < threads; t++) {
+                final int first = t * requests;
+                Thread producer = new Thread(new Runnable() {
+                    public void run() {
+                        for (int i = first; i < first + requests; i++) {
+                            final int index = i;
+                            service.submit(payload(i), new Consumer<byte[]>() {
+                                public void accept(byte[] digest) {
+                                    digests.set(index, digest);
+                                    latch.countDown();
+                                }
+                            });
+                        }
+                    }
+                });
+                producers.add(producer);
+                producer.start();
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            assertThat(latch.await(30, TimeUnit.SECONDS), is(true));
+        }
+
+        // Then
+        for (int i = 0; i < threads * requests; i++) {
+            assertThat(digests.get(i), is(equalTo(expected(payload(i)))));
+        }
+    }
+
+    @Test
+    public void testCheckBlockingStrategy() throws InterruptedException {
+        checkStrategy(WaitStrategy.BLOCKING, 0L);
+    }
+
+    @Test
+    public void testCheckBusySpinStrategy() throws InterruptedException {
+        checkStrategy(WaitStrategy.BUSY_SPIN, 0L);
+    }
+
+    @Test
+    public void testCheckCallbackExceptionsAreIsolated()
+            throws InterruptedException {
+        // What
+        final List<byte[]> digests = new ArrayList<byte[]>();
+        HashingService service = new HashingService(SIZE, ROUNDS, 1, 16, 4,
+                0L, WaitStrategy.BLOCKING);
+        service.submit(new byte[1], new Consumer<byte[]>() {
+            public void accept(byte[] digest) {
+                Thread.currentThread().setUncaughtExceptionHandler(
+                        new Thread.UncaughtExceptionHandler() {
+                            public void uncaughtException(Thread t,
+                                    Throwable e) {
+                                // ignores the failure of the callback
+                            }
+                        });
+                throw new IllegalStateException("callback failure");
+            }
+        });
+
+        // When
+        service.submit(new byte[2], new Consumer<byte[]>() {
+            public void accept(byte[] digest) {
+                digests.add(digest);
+            }
+        });
+        service.close();
+
+        // Then
+        assertThat(digests.size(), is(equalTo(1)));
+        assertThat(digests.get(0), is(equalTo(expected(new byte[2]))));
+    }
+
+    @Test
+    public void testCheckCloseHashesAcceptedRequests()
+            throws InterruptedException {
+        // What
+        final List<byte[]> digests = new ArrayList<byte[]>();
+        HashingService service = new HashingService(SIZE, ROUNDS, 1, 1024,
+                64, TimeUnit.MILLISECONDS.toNanos(50), WaitStrategy.SLEEPING);
+
+        // When
+        for (int i = 0; i < 1000; i++) {
+            service.submit(payload(i), new Consumer<byte[]>() {
+                public void accept(byte[] digest) {
+                    digests.add(digest);
+                }
+            });
+        }
+        service.close();
+
+        // Then
+        assertThat(digests.size(), is(equalTo(1000)));
+        for (int i = 0; i < 1000; i++) {
+            assertThat(digests.get(i), is(equalTo(expected(payload(i)))));
+        }
+    }
+
+    @Test
+    public void testCheckDefaultConfiguration() {
+        // What
+        HashingService service = new HashingService(SIZE, ROUNDS);
+
+        // When
+        service.close();
+
+        // Then
+        assertThat(service.hashSize(), is(equalTo(SIZE)));
+        assertThat(service.getRounds(), is(equalTo(ROUNDS)));
+        assertThat(service.getConsumers(),
+                is(equalTo(HashingService.DEFAULT_CONSUMERS)));
+        assertThat(service.getCapacity(),
+                is(equalTo(HashingService.DEFAULT_CAPACITY)));
+        assertThat(service.getBatchSize(),
+                is(equalTo(HashingService.DEFAULT_BATCH_SIZE)));
+        assertThat(service.getBatchDelay(), is(equalTo(0L)));
+        assertThat(service.getWaitStrategy(), is(WaitStrategy.BLOCKING));
+    }
+
+    @Test
+    public void testCheckSleepingStrategyWithBatchDelay()
+            throws InterruptedException {
+        checkStrategy(WaitStrategy.SLEEPING, TimeUnit.MICROSECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testCheckSubmitOfBuffersAndSlices()
+            throws InterruptedException {
+        // What
+        final byte[][] digests = new byte[2][];
+        final CountDownLatch latch = new CountDownLatch(2);
+        byte[] data = payload(150);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+        buffer.position(10);
+
+        // When
+        try (HashingService service = new HashingService(SIZE, ROUNDS)) {
+            service.submit(buffer, new Consumer<byte[]>() {
+                public void accept(byte[] digest) {
+                    digests[0] = digest;
+                    latch.countDown();
+                }
+            });
+            service.submit(data, 10, data.length - 10, new Consumer<byte[]>() {
+                public void accept(byte[] digest) {
+                    digests[1] = digest;
+                    latch.countDown();
+                }
+            });
+            assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+        }
+
+        // Then
+        byte[] expected = expected(java.util.Arrays.copyOfRange(data, 10,
+                data.length));
+        assertThat(digests[0], is(equalTo(expected)));
+        assertThat(digests[1], is(equalTo(expected)));
+        assertThat(buffer.position(), is(equalTo(10)));
+    }
+
+    @Test
+    public void testCheckYieldingStrategyWithBatchDelay()
+            throws InterruptedException {
+        checkStrategy(WaitStrategy.YIELDING, TimeUnit.MICROSECONDS.toNanos(20));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThrowsIfCapacityIsNotPowerOfTwo() {
+        new HashingService(SIZE, ROUNDS, 1, 100, 10, 0L,
+                WaitStrategy.BLOCKING);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThrowsIfSliceIsOutOfBounds() {
+        try (HashingService service = new HashingService(SIZE, ROUNDS)) {
+            service.submit(new byte[10], 5, 6, new Consumer<byte[]>() {
+                public void accept(byte[] digest) {
+                    // never called
+                }
+            });
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testThrowsIfSubmittedAfterClose() {
+        HashingService service = new HashingService(SIZE, ROUNDS);
+        service.close();
+        service.submit(new byte[10], new Consumer<byte[]>() {
+            public void accept(byte[] digest) {
+                // never called
+            }
+        });
+    }
+}
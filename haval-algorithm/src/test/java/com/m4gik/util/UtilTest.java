@@ -5,6 +5,10 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 
@@ -56,6 +60,31 @@ public class UtilTest {
 
     }
 
+    @Test
+    public void testFromHexReversesToHexInEitherCase() {
+        // What
+        byte[] bytes = (byte[]) input;
+        // When
+        byte[] lower = Util.fromHex(Util.toHex(bytes, false));
+        byte[] upper = Util.fromHex(Util.toString(bytes));
+        // Then
+        assertThat(lower, is(equalTo(bytes)));
+        assertThat(upper, is(equalTo(bytes)));
+    }
+
+    @Test
+    public void testFromHexIntoArrayRange() {
+        // What
+        String hex = "xx" + Util.toHex((byte[]) input, true) + "yy";
+        byte[] out = new byte[((byte[]) input).length + 1];
+        // When
+        int length = Util.fromHex(hex, 2, hex.length() - 2, out, 1);
+        // Then
+        assertThat(length, is(((byte[]) input).length));
+        assertThat(Arrays.copyOfRange(out, 1, out.length),
+                is(equalTo((byte[]) input)));
+    }
+
     @Test
     public void testInputIsNotNull() {
         assertThat(input, is(notNullValue()));
@@ -65,4 +94,46 @@ public class UtilTest {
     public void testPositiveScenarioGivenStingIsHexValue() {
         Util.toString((byte[]) input);
     }
+
+    @Test(
+            expected = NumberFormatException.class)
+    public void testThrowsIfHexHasOddLength() {
+        Util.fromHex(Util.toHex((byte[]) input, false).substring(1));
+    }
+
+    @Test(
+            expected = NumberFormatException.class)
+    public void testThrowsIfHexHasWrongDigit() {
+        Util.fromHex(Util.toHex((byte[]) input, false).replace('3', 'g'));
+    }
+
+    @Test
+    public void testToHexTargetsAgree() throws IOException {
+        // What
+        byte[] bytes = (byte[]) input;
+        String expected = Util.toString(bytes).toLowerCase();
+        char[] chars = new char[2 * bytes.length + 1];
+        ByteBuffer heap = ByteBuffer.allocate(2 * bytes.length);
+        ByteBuffer direct = ByteBuffer.allocateDirect(2 * bytes.length);
+        byte[] fromDirect = new byte[2 * bytes.length];
+        // When
+        Util.toHex(bytes, 0, bytes.length, chars, 1, false);
+        StringBuilder builder = Util.toHex(bytes, 0, bytes.length,
+                new StringBuilder(), false);
+        Writer writer = Util.toHex(bytes, 0, bytes.length, new StringWriter(),
+                false);
+        Util.toHex(bytes, 0, bytes.length, heap, false);
+        Util.toHex(bytes, 0, bytes.length, direct, false);
+        direct.flip();
+        direct.get(fromDirect);
+        // Then
+        assertThat(new String(chars, 1, chars.length - 1),
+                is(equalTo(expected)));
+        assertThat(builder.toString(), is(equalTo(expected)));
+        assertThat(writer.toString(), is(equalTo(expected)));
+        assertThat(heap.remaining(), is(0));
+        assertThat(new String(heap.array(), "US-ASCII"), is(equalTo(expected)));
+        assertThat(new String(fromDirect, "US-ASCII"), is(equalTo(expected)));
+        assertThat(Util.toHex(bytes, true), is(equalTo(Util.toString(bytes))));
+    }
 }
@@ -0,0 +1,95 @@
+package com.m4gik.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.m4gik.BloomFilter;
+
+/**
+ * Measures putting and testing keys of 16 bytes in a {@link BloomFilter} of
+ * a million keys, for several false positive probabilities, one key at a
+ * time and in bulk. Every operation is one key.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+public class BloomFilterBenchmark {
+
+    /**
+     * The number of keys of a batch.
+     */
+    private static final int BATCH = 1024;
+
+    /**
+     * The expected number of keys of the filter.
+     */
+    private static final long INSERTIONS = 1000000L;
+
+    private BloomFilter filter;
+
+    /**
+     * The false positive probability of the filter.
+     */
+    @Param({ "0.01", "0.0001" })
+    private double fpp;
+
+    private List<byte[]> keys;
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean[] mightContainAll() {
+        return filter.mightContainAll(keys);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int mightContainEach() {
+        int found = 0;
+        for (byte[] key : keys) {
+            if (filter.mightContain(key)) {
+                found++;
+            }
+        }
+
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int putAll() {
+        return filter.putAll(keys);
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        filter = new BloomFilter(INSERTIONS, fpp);
+        keys = new ArrayList<byte[]>();
+        for (int i = 0; i < BATCH; i++) {
+            byte[] key = new byte[16];
+            random.nextBytes(key);
+            keys.add(key);
+        }
+    }
+}
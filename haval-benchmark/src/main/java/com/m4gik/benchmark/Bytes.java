@@ -0,0 +1,30 @@
+package com.m4gik.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The number of bytes hashed by a benchmark. Reported as an operation count,
+ * so the throughput results show the hashed bytes per time unit next to the
+ * digests per time unit.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+@State(Scope.Thread)
+public class Bytes {
+
+    /**
+     * The number of bytes hashed during the current iteration.
+     */
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        bytes = 0L;
+    }
+}
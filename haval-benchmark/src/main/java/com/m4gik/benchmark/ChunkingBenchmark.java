@@ -0,0 +1,79 @@
+package com.m4gik.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.m4gik.io.ChunkingPipeline;
+import com.m4gik.io.ContentChunker;
+
+/**
+ * Measures the content-defined chunking of a 64 MB stream, with the
+ * boundaries alone and with the whole {@link ChunkingPipeline}. The
+ * {@link Bytes} counter reports the chunked bytes per second.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+public class ChunkingBenchmark {
+
+    /**
+     * The chunker with the default sizes.
+     */
+    private ContentChunker chunker;
+
+    /**
+     * The bytes of the stream.
+     */
+    private byte[] data;
+
+    /**
+     * The pipeline which fingerprints the chunks with HAVAL-128/3.
+     */
+    private ChunkingPipeline pipeline;
+
+    @Benchmark
+    public int boundaries(Bytes bytes) {
+        int chunks = 0;
+        for (int start = 0; start < data.length; chunks++) {
+            start = chunker.cut(data, start, data.length, true);
+        }
+        bytes.bytes += data.length;
+
+        return chunks;
+    }
+
+    @Benchmark
+    public long pipeline(Bytes bytes) throws IOException {
+        long length = pipeline.chunk(new ByteArrayInputStream(data)).size();
+        bytes.bytes += data.length;
+
+        return length;
+    }
+
+    @Setup
+    public void setUp() {
+        data = new byte[64 * 1024 * 1024];
+        new Random(0x4841564131L).nextBytes(data);
+        chunker = new ContentChunker();
+        pipeline = new ChunkingPipeline(chunker, 16, 3);
+    }
+}
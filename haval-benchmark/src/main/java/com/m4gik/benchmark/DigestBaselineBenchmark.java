@@ -0,0 +1,78 @@
+package com.m4gik.benchmark;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.m4gik.provider.HavalProvider;
+
+/**
+ * The baseline for {@link HavalBenchmark}: the digests of the JDK, measured
+ * through {@link MessageDigest} with the same messages and settings. The
+ * Haval digests of the {@link HavalProvider} are measured the same way, so
+ * the cost of the JCA layer itself can be told apart.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+public class DigestBaselineBenchmark {
+
+    /**
+     * The provider of the Haval digests.
+     */
+    private static final HavalProvider PROVIDER = new HavalProvider();
+
+    /**
+     * The standard name of the digest.
+     */
+    @Param({ "MD5", "SHA-1", "SHA-256", "SHA-512", "HAVAL-256/3",
+            "HAVAL-256/5" })
+    private String algorithm;
+
+    /**
+     * The digest which hashes the messages; reset by every digest.
+     */
+    private MessageDigest messageDigest;
+
+    /**
+     * Hashes the whole message and returns its digest.
+     * 
+     * @param message
+     *            the message to hash.
+     * @param bytes
+     *            the counter of hashed bytes.
+     * @return the digest, consumed by the harness.
+     */
+    @Benchmark
+    public byte[] digest(Message message, Bytes bytes) {
+        messageDigest.update(message.bytes);
+        bytes.bytes += message.length;
+
+        return messageDigest.digest();
+    }
+
+    @Setup
+    public void setUp() throws NoSuchAlgorithmException {
+        messageDigest = algorithm.startsWith("HAVAL") ? MessageDigest
+                .getInstance(algorithm, PROVIDER) : MessageDigest
+                .getInstance(algorithm);
+    }
+}
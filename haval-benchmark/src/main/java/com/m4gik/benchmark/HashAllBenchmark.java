@@ -0,0 +1,102 @@
+package com.m4gik.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.m4gik.Haval;
+
+/**
+ * Measures {@link Haval#hashAll} on a batch of messages of the same length,
+ * for several chunk sizes, against hashing the batch on the calling thread.
+ * Every operation is one message.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+public class HashAllBenchmark {
+
+    /**
+     * The number of messages of a batch.
+     */
+    private static final int BATCH = 1024;
+
+    /**
+     * The number of bytes hashed by one task.
+     */
+    @Param({ "1024", "65536", "262144" })
+    private int chunkSize;
+
+    /**
+     * The instance which hashes the messages one at a time.
+     */
+    private Haval haval;
+
+    /**
+     * The length in bytes of every message.
+     */
+    @Param({ "64", "1024", "16384" })
+    private int length;
+
+    /**
+     * The messages of the batch.
+     */
+    private List<byte[]> messages;
+
+    /**
+     * The digests of the batch, one after another.
+     */
+    private byte[] out;
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] hashAll() {
+        return Haval.hashAll(messages, 32, 5, ForkJoinPool.commonPool(),
+                chunkSize);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] sequential() {
+        for (int i = 0; i < BATCH; i++) {
+            haval.update(messages.get(i));
+            haval.digest(out, i * 32);
+        }
+
+        return out;
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(length);
+        messages = new ArrayList<byte[]>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            byte[] message = new byte[length];
+            random.nextBytes(message);
+            messages.add(message);
+        }
+        haval = new Haval(32, 5);
+        out = new byte[BATCH * 32];
+    }
+}
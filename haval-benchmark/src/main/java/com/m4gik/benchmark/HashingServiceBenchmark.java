@@ -0,0 +1,125 @@
+package com.m4gik.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.m4gik.Haval;
+import com.m4gik.service.HashingService;
+import com.m4gik.service.WaitStrategy;
+
+/**
+ * Measures many threads hashing tiny payloads through a
+ * {@link HashingService}, for every wait strategy, against every thread
+ * hashing with a new {@link Haval} instance per call, as
+ * {@link Haval#hash(byte[], int, int)} does, without the hexadecimal
+ * encoding. Every operation is one payload; a thread submits a burst of
+ * payloads and waits for their digests.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+public class HashingServiceBenchmark {
+
+    /**
+     * The number of payloads a thread submits before waiting for them.
+     */
+    private static final int BURST = 256;
+
+    /**
+     * The service and the payloads, shared by all threads.
+     */
+    @State(Scope.Benchmark)
+    public static class Service {
+
+        /**
+         * The length in bytes of every payload.
+         */
+        @Param({ "16", "64", "256" })
+        private int length;
+
+        private byte[][] payloads;
+
+        private HashingService service;
+
+        @Param({ "BLOCKING", "YIELDING" })
+        private WaitStrategy strategy;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Random random = new Random(42);
+            payloads = new byte[BURST][length];
+            for (byte[] payload : payloads) {
+                random.nextBytes(payload);
+            }
+            service = new HashingService(32, 5,
+                    HashingService.DEFAULT_CONSUMERS,
+                    HashingService.DEFAULT_CAPACITY,
+                    HashingService.DEFAULT_BATCH_SIZE, 0L, strategy);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            service.close();
+        }
+    }
+
+    /**
+     * The count of digests a thread still waits for.
+     */
+    @State(Scope.Thread)
+    public static class Pending implements Consumer<byte[]> {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public void accept(byte[] digest) {
+            count.decrementAndGet();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void hashPerCall(Service state, Blackhole blackhole) {
+        for (byte[] payload : state.payloads) {
+            Haval haval = new Haval(32, 5);
+            haval.update(payload, 0, payload.length);
+            blackhole.consume(haval.digest());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void hashingService(Service state, Pending pending) {
+        pending.count.addAndGet(BURST);
+        for (byte[] payload : state.payloads) {
+            state.service.submit(payload, pending);
+        }
+        while (pending.count.get() > 0) {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.m4gik.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.m4gik.Haval;
+
+/**
+ * Measures the throughput and the latency of {@link Haval#update(byte[])}
+ * followed by {@link Haval#digest()}, or by {@link Haval#digest(byte[], int)}
+ * which allocates nothing, for every output size and number of rounds and for
+ * every {@link Message} length. The {@link Bytes} counter
+ * reports the throughput in bytes per second next to the operations per
+ * second.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+public class HavalBenchmark {
+
+    /**
+     * The instance which hashes the messages; reset by every digest.
+     */
+    private Haval haval;
+
+    /**
+     * The array which receives the digests of {@link #digestInto}.
+     */
+    private byte[] out;
+
+    /**
+     * The number of rounds to apply when transforming data.
+     */
+    @Param({ "3", "4", "5" })
+    private int rounds;
+
+    /**
+     * The output size in bytes.
+     */
+    @Param({ "16", "20", "24", "28", "32" })
+    private int size;
+
+    /**
+     * Hashes the whole message and returns its digest.
+     * 
+     * @param message
+     *            the message to hash.
+     * @param bytes
+     *            the counter of hashed bytes.
+     * @return the digest, consumed by the harness.
+     */
+    @Benchmark
+    public byte[] digest(Message message, Bytes bytes) {
+        haval.update(message.bytes);
+        bytes.bytes += message.length;
+
+        return haval.digest();
+    }
+
+    /**
+     * Hashes the whole message into a reused array and returns the array.
+     * 
+     * @param message
+     *            the message to hash.
+     * @param bytes
+     *            the counter of hashed bytes.
+     * @return the array holding the digest, consumed by the harness.
+     */
+    @Benchmark
+    public byte[] digestInto(Message message, Bytes bytes) {
+        haval.update(message.bytes);
+        bytes.bytes += message.length;
+        haval.digest(out, 0);
+
+        return out;
+    }
+
+    @Setup
+    public void setUp() {
+        haval = new Haval(size, rounds);
+        out = new byte[size];
+    }
+}
@@ -0,0 +1,93 @@
+package com.m4gik.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.m4gik.util.Util;
+
+/**
+ * Measures the formatting and the parsing of digests as hexadecimal digits
+ * with {@link Util}, for every {@link com.m4gik.Haval} output size.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+public class HexBenchmark {
+
+    /**
+     * The array which receives the decoded digests.
+     */
+    private byte[] bytes;
+
+    /**
+     * The array which receives the encoded digests.
+     */
+    private char[] chars;
+
+    /**
+     * The digest to format.
+     */
+    private byte[] digest;
+
+    /**
+     * The hexadecimal digits of the digest to parse.
+     */
+    private String hex;
+
+    /**
+     * The digest size in bytes.
+     */
+    @Param({ "16", "20", "24", "28", "32" })
+    private int size;
+
+    @Benchmark
+    public byte[] fromHex() {
+        Util.fromHex(hex, 0, hex.length(), bytes, 0);
+
+        return bytes;
+    }
+
+    @Setup
+    public void setUp() {
+        digest = new byte[size];
+        new Random(size).nextBytes(digest);
+        hex = Util.toHex(digest, false);
+        bytes = new byte[size];
+        chars = new char[2 * size];
+    }
+
+    @Benchmark
+    public char[] toHexIntoArray() {
+        Util.toHex(digest, 0, size, chars, 0, false);
+
+        return chars;
+    }
+
+    @Benchmark
+    public String toHexString() {
+        return Util.toHex(digest, false);
+    }
+
+    @Benchmark
+    public String toStringLowerCase() {
+        return Util.toString(digest).toLowerCase();
+    }
+}
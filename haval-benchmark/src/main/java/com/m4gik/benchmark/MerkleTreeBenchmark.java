@@ -0,0 +1,111 @@
+package com.m4gik.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.m4gik.merkle.MerkleTree;
+
+/**
+ * Measures updating the {@link MerkleTree} of a 256 MB file after some of its
+ * 8 KB pages changed, against building the tree again. Every operation is one
+ * update or one build.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+public class MerkleTreeBenchmark {
+
+    /**
+     * The length of the data file.
+     */
+    private static final int LENGTH = 256 * 1024 * 1024;
+
+    private FileChannel channel;
+
+    private Path data;
+
+    /**
+     * The number of pages changed between two updates.
+     */
+    @Param({ "1", "64", "4096" })
+    private int dirty;
+
+    private long[] pages;
+
+    private MerkleTree tree;
+
+    private Path treeFile;
+
+    @Benchmark
+    public MerkleTree build() throws IOException {
+        tree.close();
+        tree = MerkleTree.build(data, treeFile, MerkleTree.DEFAULT_PAGE_SIZE,
+                32, 3);
+
+        return tree;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        byte[] chunk = new byte[1024 * 1024];
+        data = Files.createTempFile("merkle", ".data");
+        treeFile = Files.createTempFile("merkle", ".tree");
+        try (FileChannel out = FileChannel.open(data,
+                StandardOpenOption.WRITE)) {
+            for (int i = 0; i < LENGTH / chunk.length; i++) {
+                random.nextBytes(chunk);
+                out.write(ByteBuffer.wrap(chunk));
+            }
+        }
+
+        pages = new long[dirty];
+        long count = LENGTH / MerkleTree.DEFAULT_PAGE_SIZE;
+        for (int i = 0; i < dirty; i++) {
+            pages[i] = (long) (random.nextDouble() * count);
+        }
+        channel = FileChannel.open(data, StandardOpenOption.READ);
+        tree = MerkleTree.build(data, treeFile, MerkleTree.DEFAULT_PAGE_SIZE,
+                32, 3);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        tree.close();
+        channel.close();
+        Files.delete(data);
+        Files.delete(treeFile);
+    }
+
+    @Benchmark
+    public MerkleTree update() throws IOException {
+        tree.update(channel, pages);
+
+        return tree;
+    }
+}
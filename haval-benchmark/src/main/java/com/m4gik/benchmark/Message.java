@@ -0,0 +1,42 @@
+package com.m4gik.benchmark;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The message hashed by every benchmark invocation. Its bytes are random,
+ * drawn from a fixed seed, so every run and every digest hashes the same
+ * input. The lengths span single short messages up to large files.
+ * 
+ * @author Michał Szczygieł <michal.szczygiel@wp.pl>
+ * 
+ */
+@State(Scope.Thread)
+public class Message {
+
+    /**
+     * The seed of the message bytes.
+     */
+    private static final long SEED = 0x4841564131L;
+
+    /**
+     * The message bytes.
+     */
+    byte[] bytes;
+
+    /**
+     * The message length in bytes.
+     */
+    @Param({ "16", "256", "4096", "65536", "1048576", "67108864" })
+    int length;
+
+    @Setup
+    public void setUp() {
+        bytes = new byte[length];
+        new Random(SEED).nextBytes(bytes);
+    }
+}